@@ -0,0 +1,218 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A persistent cache for aggregated (average) paths. Since the aggregation is deterministic, its
+ * result only depends on the input trajectories and the parameters of the algorithm. The cache is
+ * therefore content-addressed: the key is a hash of the fingerprints of all inputs and the
+ * parameters, so that changed inputs automatically lead to a new entry.
+ * <p>
+ * Every entry is one file in the cache directory. The least recently used entries are deleted
+ * once the cache holds more than the maximum number of entries.
+ */
+public class AverageCache {
+    private static final int MAGIC = 0x41564731; // "AVG1"
+    // Increment whenever the aggregation or the file format changes, to invalidate old entries.
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".avg";
+
+    private final File dir;
+    private final int maxEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param dir        The directory holding the entries, e.g. in app-private storage.
+     * @param maxEntries The maximum number of entries to keep.
+     */
+    public AverageCache(File dir, int maxEntries) {
+        this.dir = dir;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Computes the key of an aggregation.
+     *
+     * @param tracks     The input trajectories, in the order they are aggregated.
+     * @param parameters A description of the algorithm and its parameters.
+     * @return The key, as a hexadecimal string.
+     */
+    public static String key(List<Trajectory> tracks, String parameters) {
+        MessageDigest digest = sha1();
+        digest.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+        digest.update(utf8(parameters));
+        for (Trajectory track : tracks) {
+            digest.update(fingerprint(track));
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Computes a fingerprint of a trajectory, i.e. a hash of all its points. The positions are
+     * hashed at the resolution of a {@link TrajectoryFile}, so a track has the same fingerprint
+     * whether it was parsed from GPX or read back from its cached copy.
+     *
+     * @param trajectory The trajectory.
+     * @return The SHA-1 hash of the trajectory.
+     */
+    public static byte[] fingerprint(Trajectory trajectory) {
+        MessageDigest digest = sha1();
+        ByteBuffer point = ByteBuffer.allocate(16);
+        digest.update(ByteBuffer.allocate(4).putInt(trajectory.size()).array());
+        for (int i = 0; i < trajectory.size(); i++) {
+            point.clear();
+            point.putInt(TrajectoryFile.toFixed(trajectory.getLongitude(i)))
+                    .putInt(TrajectoryFile.toFixed(trajectory.getLatitude(i)))
+                    .putLong(trajectory.getTime(i));
+            digest.update(point.array());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Gets a cached result.
+     *
+     * @param key The key, see {@link #key(List, String)}.
+     * @return The average path, or null if it is not cached (or the entry is unreadable).
+     */
+    public Trajectory get(String key) {
+        File file = new File(dir, key + SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    file.delete();
+                    return null;
+                }
+                Trajectory average = new TrajectoryFile(buffer.slice()).read();
+                // Mark the entry as recently used. Some file systems do not support setting the
+                // modification time, in which case the entry is written again instead.
+                if (!file.setLastModified(System.currentTimeMillis())) {
+                    byte[] data = new byte[(int) channel.size()];
+                    buffer.position(0);
+                    buffer.get(data);
+                    try {
+                        write(file, data);
+                    } catch (IOException e) {
+                        // The entry is still valid, it is only evicted earlier.
+                    }
+                }
+                return average;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a result, and evicts the least recently used entries if the cache is full.
+     *
+     * @param key     The key, see {@link #key(List, String)}.
+     * @param average The average path.
+     * @throws IOException If the entry cannot be written.
+     */
+    public void put(String key, Trajectory average) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir + ".");
+        }
+        byte[] trajectory = TrajectoryFile.encode(average, 0);
+        ByteBuffer data = ByteBuffer.allocate(8 + trajectory.length);
+        data.putInt(MAGIC).putInt(VERSION).put(trajectory);
+        write(new File(dir, key + SUFFIX), data.array());
+        evict();
+    }
+
+    /**
+     * Atomically replaces an entry, which also makes it the most recently used one.
+     *
+     * @param file The file of the entry.
+     * @param data The content of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    private static void write(File file, byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + file + ".");
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries, until at most maxEntries are left.
+     */
+    private void evict() {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        int count = 0;
+        for (File entry : entries) {
+            if (entry.getName().endsWith(SUFFIX)) {
+                entries[count++] = entry;
+            }
+        }
+        if (count <= maxEntries) {
+            return;
+        }
+        entries = Arrays.copyOf(entries, count);
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < count - maxEntries; i++) {
+            entries[i].delete();
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A symmetric matrix of distances between n trajectories, stored as its lower triangle of floats
+ * in a memory-mapped file. The distance between i and j (i &gt; j) is stored at index
+ * i * (i - 1) / 2 + j, so adding a trajectory only appends its row to the end of the file. Missing
+ * distances are NaN.
+ * <p>
+ * The header counts the rows which have been initialized. When the matrix grows, the new rows are
+ * filled with NaN and written before the count is updated, so rows half-initialized by a crash are
+ * initialized again and never mistaken for distances.
+ * <p>
+ * Layout (big endian): magic, version, number of rows, reserved int, then the distances.
+ */
+class DistanceMatrixFile implements Closeable {
+    private static final int MAGIC = 0x444D5831; // "DMX1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /**
+     * The largest number of rows, whose triangle still fits into one mapping of at most 2 GB.
+     */
+    static final int MAX_SIZE = 32768;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int size;
+
+    private DistanceMatrixFile(RandomAccessFile file) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        if (channel.size() == 0) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0).putInt(12, 0);
+            buffer.force();
+        } else if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Not a distance matrix file.");
+        } else {
+            size = readSize();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length(size));
+        }
+    }
+
+    /**
+     * Opens a distance matrix file, or creates an empty one if it does not exist.
+     *
+     * @param file The file.
+     * @return The opened file, which must be closed.
+     * @throws IOException If the file cannot be read or written, or is not a valid matrix file.
+     */
+    static DistanceMatrixFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return new DistanceMatrixFile(raf);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private int readSize() throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a distance matrix file.");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported distance matrix version " + header.getInt(4) + ".");
+        }
+        int rows = header.getInt(8);
+        if (rows < 0 || rows > MAX_SIZE || channel.size() < length(rows)) {
+            throw new IOException("Corrupt distance matrix file.");
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the number of rows, i.e. of trajectories.
+     *
+     * @return The number of rows.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets a distance.
+     *
+     * @param i The index of the first trajectory.
+     * @param j The index of the second trajectory.
+     * @return The distance, 0 if both indices are the same, or NaN if it has not been stored.
+     */
+    float get(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        return buffer.getFloat(offset(i, j));
+    }
+
+    /**
+     * Stores a distance. Distances of different pairs may be stored from different threads.
+     *
+     * @param i     The index of the first trajectory.
+     * @param j     The index of the second trajectory, different from i.
+     * @param value The distance.
+     */
+    void set(int i, int j, float value) {
+        buffer.putFloat(offset(i, j), value);
+    }
+
+    /**
+     * Grows the matrix to the given number of rows, with all new distances missing.
+     *
+     * @param rows The new number of rows. Nothing is done if the matrix is not smaller.
+     * @throws IOException If the file cannot be written, or the matrix would be too large.
+     */
+    void grow(int rows) throws IOException {
+        if (rows <= size) {
+            return;
+        }
+        if (rows > MAX_SIZE) {
+            throw new IOException("A distance matrix can hold at most " + MAX_SIZE + " trajectories.");
+        }
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length(rows));
+        for (int offset = (int) length(size); offset < length(rows); offset += 4) {
+            buffer.putFloat(offset, Float.NaN);
+        }
+        buffer.force();
+        buffer.putInt(8, rows);
+        buffer.force();
+        size = rows;
+    }
+
+    /**
+     * Writes all stored distances to the storage.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Writes all stored distances and closes the file. The mapping is released by the garbage
+     * collector.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private int offset(int i, int j) {
+        if (i < j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        if (j < 0 || i >= size || i == j) {
+            throw new IndexOutOfBoundsException("Pair (" + i + ", " + j + ") out of range for size " + size);
+        }
+        return HEADER_SIZE + 4 * (int) ((long) i * (i - 1) / 2 + j);
+    }
+
+    private static long length(int rows) {
+        return HEADER_SIZE + 4 * ((long) rows * (rows - 1) / 2);
+    }
+}
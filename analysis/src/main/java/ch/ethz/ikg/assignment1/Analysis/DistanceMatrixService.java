@@ -0,0 +1,376 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the dynamic time warping costs between all pairs of a library of trajectories, e.g. to
+ * cluster the recorded rides, and keeps them in a directory, so that they are computed only once:
+ * <ul>
+ * <li>The costs are stored in a {@link DistanceMatrixFile}, i.e. only one triangle of the
+ * symmetric matrix, which is written while the pairs are computed.</li>
+ * <li>The trajectories are identified by their {@link AverageCache#fingerprint(Trajectory)}, which
+ * are stored in a side file in the order of the rows of the matrix. When the library is processed
+ * again, known trajectories keep their row, new ones are appended, and only the missing pairs are
+ * computed. This includes the pairs left over by an interrupted run.</li>
+ * <li>The rows are computed in parallel. As in {@link SimilaritySearch}, the LB_Kim and LB_Keogh
+ * lower bounds are evaluated first, and pairs whose cost exceeds a threshold are abandoned and
+ * stored as infinite.</li>
+ * </ul>
+ * If the directory was written with other parameters (window, metric or threshold), it is
+ * discarded and all pairs are computed again.
+ */
+public class DistanceMatrixService implements Closeable {
+    private static final int MAGIC = 0x444D4931; // "DMI1"
+    private static final int VERSION = 1;
+    private static final String MATRIX = "matrix.bin";
+    private static final String IDS = "matrix.ids";
+    private static final int FINGERPRINT_SIZE = 20;
+
+    private final File directory;
+    private final int radius;
+    private final DistanceMetric metric;
+    private final double abandonAbove;
+    private final ExecutorService executor;
+
+    private final DistanceMatrixFile matrix;
+    // the fingerprints of all rows of the matrix, and the length of the header of the ids file
+    private final List<ByteBuffer> ids = new ArrayList<>();
+    private final Map<ByteBuffer, Integer> rows = new HashMap<>();
+    private long idsHeaderSize;
+
+    /**
+     * Constructor. Opens the matrix in the directory, or creates it.
+     *
+     * @param directory    The directory holding the matrix.
+     * @param radius       The radius of the Sakoe-Chiba band used for the dynamic time warping, or
+     *                     a negative value to use the unconstrained dynamic time warping.
+     * @param metric       The distance metric between points.
+     * @param abandonAbove The (normalized) cost above which a pair is abandoned, or
+     *                     {@link Double#POSITIVE_INFINITY} to compute all costs exactly.
+     * @param executor     The executor computing the rows. It is not shut down by the service.
+     * @throws IOException If the matrix cannot be opened or created.
+     */
+    public DistanceMatrixService(File directory, int radius, DistanceMetric metric, double abandonAbove,
+                                 ExecutorService executor) throws IOException {
+        this.directory = directory;
+        this.radius = radius;
+        this.metric = metric;
+        this.abandonAbove = abandonAbove;
+        this.executor = executor;
+        directory.mkdirs();
+        if (!readIds()) {
+            // Another version or other parameters: start from scratch.
+            new File(directory, MATRIX).delete();
+            writeIdsHeader();
+        }
+        DistanceMatrixFile file = DistanceMatrixFile.open(new File(directory, MATRIX));
+        if (file.size() > ids.size()) {
+            // The fingerprints of some rows are lost, so these rows cannot be used any more.
+            file.close();
+            new File(directory, MATRIX).delete();
+            ids.clear();
+            rows.clear();
+            writeIdsHeader();
+            file = DistanceMatrixFile.open(new File(directory, MATRIX));
+        }
+        // Rows whose fingerprint was written before a crash may not have been initialized.
+        file.grow(ids.size());
+        this.matrix = file;
+    }
+
+    /**
+     * Describes the parameters, which must match the ones a directory was written with.
+     *
+     * @return The description of the window, the metric and the threshold.
+     */
+    @Override
+    public String toString() {
+        return (radius < 0 ? "exact" : "sakoeChiba(" + radius + ")") + "[" + metric + "] <= " + abandonAbove;
+    }
+
+    /**
+     * Computes all missing costs between the given trajectories, and writes them to the matrix.
+     *
+     * @param tracks The trajectories, e.g. all rides of the library. Trajectories which have been
+     *               processed before are recognized by their points, in any order.
+     * @return The costs between the trajectories, which can be read until the service is closed.
+     * @throws IOException          If the matrix cannot be written.
+     * @throws InterruptedException If the thread is interrupted while waiting for the rows. The
+     *                              costs computed so far are kept.
+     */
+    public DistanceMatrix compute(List<Trajectory> tracks) throws IOException, InterruptedException {
+        // Find the row of every trajectory, and append the new ones.
+        int[] indices = new int[tracks.size()];
+        List<ByteBuffer> added = new ArrayList<>();
+        for (int t = 0; t < tracks.size(); t++) {
+            ByteBuffer id = ByteBuffer.wrap(AverageCache.fingerprint(tracks.get(t)));
+            Integer row = rows.get(id);
+            if (row == null) {
+                row = ids.size();
+                ids.add(id);
+                rows.put(id, row);
+                added.add(id);
+            }
+            indices[t] = row;
+        }
+        appendIds(added);
+        matrix.grow(ids.size());
+
+        // The trajectory of every row, if it is part of this computation.
+        Trajectory[] byRow = new Trajectory[ids.size()];
+        SimilaritySearch.Projection[] projections = new SimilaritySearch.Projection[ids.size()];
+        for (int t = 0; t < tracks.size(); t++) {
+            if (byRow[indices[t]] == null && !tracks.get(t).isEmpty()) {
+                byRow[indices[t]] = tracks.get(t);
+                projections[indices[t]] = new SimilaritySearch.Projection(tracks.get(t));
+            }
+        }
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        int reused = 0;
+        for (int i = 1; i < byRow.length; i++) {
+            if (byRow[i] == null) {
+                continue;
+            }
+            List<Integer> missing = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (byRow[j] != null) {
+                    if (Float.isNaN(matrix.get(i, j))) {
+                        missing.add(j);
+                    } else {
+                        reused++;
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                tasks.add(rowTask(i, missing, byRow, projections));
+            }
+        }
+
+        int computed = 0;
+        try {
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                computed += get(future);
+            }
+        } finally {
+            matrix.force();
+        }
+        return new DistanceMatrix(indices, computed, reused);
+    }
+
+    /**
+     * Writes all costs and closes the matrix.
+     *
+     * @throws IOException If the matrix cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        matrix.close();
+    }
+
+    /**
+     * Creates the task computing the missing costs of a row.
+     */
+    private Callable<Integer> rowTask(final int i, final List<Integer> missing, final Trajectory[] byRow,
+                                      final SimilaritySearch.Projection[] projections) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                for (int j : missing) {
+                    // The banded warping is not symmetric, so the longer trajectory is always the
+                    // source, independent of the order in which the trajectories were added.
+                    boolean swap = byRow[j].size() > byRow[i].size() || (byRow[j].size() == byRow[i].size()
+                            && ids.get(j).compareTo(ids.get(i)) > 0);
+                    double cost = swap ? cost(byRow[j], projections[j], byRow[i], projections[i])
+                            : cost(byRow[i], projections[i], byRow[j], projections[j]);
+                    matrix.set(i, j, (float) cost);
+                }
+                return missing.size();
+            }
+        };
+    }
+
+    /**
+     * Computes the cost of a pair, or infinity if it exceeds the threshold.
+     */
+    private double cost(Trajectory source, SimilaritySearch.Projection sourceProjection, Trajectory target,
+                        SimilaritySearch.Projection targetProjection) {
+        Window window = radius < 0 ? Window.full(source.size(), target.size())
+                : Window.sakoeChiba(source.size(), target.size(), radius);
+        if (abandonAbove == Double.POSITIVE_INFINITY) {
+            return DynamicTimeWarp.cost(source, target, window, metric, abandonAbove);
+        }
+        if (SimilaritySearch.lbKim(source, target, metric) > abandonAbove) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[] rowBounds = SimilaritySearch.lbKeogh(sourceProjection, targetProjection, window, metric);
+        double[] remaining = new double[source.size()];
+        for (int i = source.size() - 2; i >= 0; i--) {
+            remaining[i] = remaining[i + 1] + rowBounds[i + 1];
+        }
+        if ((remaining[0] + rowBounds[0]) / (source.size() + target.size()) > abandonAbove) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = DynamicTimeWarp.cost(source, target, window, metric, abandonAbove, remaining);
+        // A cost slightly above the threshold may be completed before it can be abandoned.
+        return cost > abandonAbove ? Double.POSITIVE_INFINITY : cost;
+    }
+
+    /**
+     * Reads the fingerprints of the rows.
+     *
+     * @return False if there are no fingerprints, or they were written with other parameters.
+     */
+    private boolean readIds() throws IOException {
+        File file = new File(directory, IDS);
+        if (!file.exists()) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(toString())) {
+                return false;
+            }
+            idsHeaderSize = file.length() - in.available();
+            byte[] id = new byte[FINGERPRINT_SIZE];
+            while (in.available() >= FINGERPRINT_SIZE) {
+                in.readFully(id);
+                ByteBuffer key = ByteBuffer.wrap(id.clone());
+                rows.put(key, ids.size());
+                ids.add(key);
+            }
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+        // Drop a fingerprint which was only partially written.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(idsHeaderSize + (long) ids.size() * FINGERPRINT_SIZE);
+        } finally {
+            raf.close();
+        }
+        return true;
+    }
+
+    private void writeIdsHeader() throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(directory, IDS));
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeUTF(toString());
+            data.flush();
+            idsHeaderSize = data.size();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Appends fingerprints to the side file. They are written before the matrix grows, so a row
+     * never exists without its fingerprint.
+     */
+    private void appendIds(List<ByteBuffer> added) throws IOException {
+        if (added.isEmpty()) {
+            return;
+        }
+        FileOutputStream out = new FileOutputStream(new File(directory, IDS), true);
+        try {
+            byte[] data = new byte[added.size() * FINGERPRINT_SIZE];
+            for (int k = 0; k < added.size(); k++) {
+                System.arraycopy(added.get(k).array(), 0, data, k * FINGERPRINT_SIZE, FINGERPRINT_SIZE);
+            }
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * The costs between the trajectories of one computation.
+     */
+    public class DistanceMatrix {
+        private final int[] indices;
+        private final int computed;
+        private final int reused;
+
+        DistanceMatrix(int[] indices, int computed, int reused) {
+            this.indices = indices;
+            this.computed = computed;
+            this.reused = reused;
+        }
+
+        /**
+         * Gets the number of trajectories.
+         *
+         * @return The number of trajectories.
+         */
+        public int size() {
+            return indices.length;
+        }
+
+        /**
+         * Gets the cost between two trajectories. It is the normalized cost of the dynamic time
+         * warping, in single precision, with the longer trajectory as source.
+         *
+         * @param a The index of the first trajectory, in the list given to {@link #compute(List)}.
+         * @param b The index of the second trajectory.
+         * @return The cost, {@link Double#POSITIVE_INFINITY} if it exceeds the threshold, or NaN if
+         * one of the trajectories is empty.
+         */
+        public double getDistance(int a, int b) {
+            return matrix.get(indices[a], indices[b]);
+        }
+
+        /**
+         * Gets the number of pairs computed by this computation.
+         *
+         * @return The number of pairs.
+         */
+        public int getComputedCount() {
+            return computed;
+        }
+
+        /**
+         * Gets the number of pairs which were already stored.
+         *
+         * @return The number of pairs.
+         */
+        public int getReusedCount() {
+            return reused;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+/**
+ * A way of measuring the distance between two positions, selectable by the dynamic time warping
+ * and the similarity search. Single pairs of positions are compared directly with
+ * {@link #distance(double, double, double, double)}. Algorithms which compare the same points many
+ * times (e.g. the n * m cells of a dynamic time warping) first {@link #prepare(Trajectory)} the
+ * trajectories, which converts every point once to the form the metric needs (radians, cosines or
+ * projected meters), so that no trigonometric function has to be evaluated for the conversion per
+ * pair of points.
+ * <p>
+ * The available metrics, from most to least accurate:
+ * <ul>
+ * <li>{@link #HAVERSINE}: the great circle distance, the same as {@link Trackpoint#distance}.</li>
+ * <li>{@link #EQUIRECTANGULAR}: Pythagoras on an equirectangular projection around both points,
+ * which needs no trigonometric function at all. The error is below 0.1% for distances up to a few
+ * kilometers away from the poles, so it is well suited for consecutive fixes or aligned tracks.</li>
+ * <li>{@link #squaredPlanar(double)}: the squared euclidean distance on a fixed equirectangular
+ * projection. It is the cheapest metric and preserves the order of distances close to the
+ * reference latitude, but its values are square meters.</li>
+ * </ul>
+ */
+public abstract class DistanceMetric {
+    // Earth radius in meters, the same as used by Trackpoint.distance.
+    static final double RADIUS = 6371000;
+
+    /**
+     * The great circle distance in meters, using the haversine formula.
+     */
+    public static final DistanceMetric HAVERSINE = new Haversine();
+
+    /**
+     * The equirectangular approximation of the great circle distance, in meters.
+     */
+    public static final DistanceMetric EQUIRECTANGULAR = new Equirectangular();
+
+    /**
+     * The squared euclidean distance on an equirectangular projection centered at the given
+     * latitude, in square meters.
+     *
+     * @param referenceLatitude The latitude at which the projection is true to scale, e.g. the
+     *                          mean latitude of the data.
+     * @return The metric.
+     */
+    public static DistanceMetric squaredPlanar(double referenceLatitude) {
+        return new SquaredPlanar(referenceLatitude);
+    }
+
+    /**
+     * Computes the distance between two positions, without allocating anything. The result is the
+     * same as the one of the prepared points.
+     *
+     * @param sLongitude The longitude of the first position.
+     * @param sLatitude  The latitude of the first position.
+     * @param tLongitude The longitude of the second position.
+     * @param tLatitude  The latitude of the second position.
+     * @return The distance.
+     */
+    public abstract double distance(double sLongitude, double sLatitude, double tLongitude, double tLatitude);
+
+    /**
+     * Converts all points of a trajectory to the form needed by this metric.
+     *
+     * @param trajectory The trajectory.
+     * @return The prepared points, which can only be compared with points prepared by the same
+     * metric.
+     */
+    public Points prepare(Trajectory trajectory) {
+        Points points = new Points(trajectory.size(), hasCos());
+        for (int i = 0; i < trajectory.size(); i++) {
+            set(points, i, trajectory.getLongitude(i), trajectory.getLatitude(i));
+        }
+        return points;
+    }
+
+    /**
+     * Computes the distance between two prepared points.
+     *
+     * @param s The points containing the first point, prepared by this metric.
+     * @param i The index of the first point.
+     * @param t The points containing the second point, prepared by this metric.
+     * @param j The index of the second point.
+     * @return The distance.
+     */
+    public abstract double distance(Points s, int i, Points t, int j);
+
+    /**
+     * Computes the distances between one point and a contiguous range of points, e.g. a row of
+     * the cost matrix of a dynamic time warping. The implementations are simple loops over the
+     * primitive arrays without branches or calls (apart from intrinsics), which the JIT compiler
+     * can unroll and, for the equirectangular and planar metrics, vectorize.
+     *
+     * @param s      The points containing the first point, prepared by this metric.
+     * @param i      The index of the first point.
+     * @param t      The points containing the range, prepared by this metric.
+     * @param from   The first index of the range (inclusive).
+     * @param to     The last index of the range (exclusive).
+     * @param out    Receives the distance to point j of the range at index offset + j - from.
+     * @param offset The index in out of the distance to the first point of the range.
+     */
+    public abstract void distances(Points s, int i, Points t, int from, int to, double[] out, int offset);
+
+    /**
+     * Computes a lower bound of the distance between two positions, given lower bounds of their
+     * coordinate differences. This allows bounding boxes (e.g. the envelopes of LB_Keogh) to be
+     * used with any metric.
+     *
+     * @param dx        A lower bound of the difference in longitude, in meters at the equator.
+     * @param dy        A lower bound of the difference in latitude, in meters.
+     * @param maxAbsLat The largest absolute latitude of both positions, in radians.
+     * @return A value which is not larger than the distance of the positions.
+     */
+    abstract double lowerBound(double dx, double dy, double maxAbsLat);
+
+    abstract boolean hasCos();
+
+    abstract void set(Points points, int i, double longitude, double latitude);
+
+    /**
+     * Points converted to the form needed by a metric. Depending on the metric, x and y hold the
+     * longitude and latitude in radians or in projected meters, and cos the cosine of the latitude.
+     */
+    public static final class Points {
+        final double[] x;
+        final double[] y;
+        final double[] cos;
+
+        Points(int size, boolean hasCos) {
+            x = new double[size];
+            y = new double[size];
+            cos = hasCos ? new double[size] : null;
+        }
+
+        /**
+         * Gets the number of points.
+         *
+         * @return The number of points.
+         */
+        public int size() {
+            return x.length;
+        }
+    }
+
+    private static class Haversine extends DistanceMetric {
+        @Override
+        public double distance(double sLongitude, double sLatitude, double tLongitude, double tLatitude) {
+            double sLat = Math.toRadians(sLatitude);
+            double tLat = Math.toRadians(tLatitude);
+            double sinLat = Math.sin((tLat - sLat) / 2);
+            double sinLon = Math.sin((Math.toRadians(tLongitude) - Math.toRadians(sLongitude)) / 2);
+            double h = sinLat * sinLat + Math.cos(sLat) * Math.cos(tLat) * sinLon * sinLon;
+            return 2 * RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+        }
+
+        @Override
+        public double distance(Points s, int i, Points t, int j) {
+            double sinLat = Math.sin((t.y[j] - s.y[i]) / 2);
+            double sinLon = Math.sin((t.x[j] - s.x[i]) / 2);
+            double h = sinLat * sinLat + s.cos[i] * t.cos[j] * sinLon * sinLon;
+            return 2 * RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+        }
+
+        @Override
+        public void distances(Points s, int i, Points t, int from, int to, double[] out, int offset) {
+            double sx = s.x[i];
+            double sy = s.y[i];
+            double sCos = s.cos[i];
+            double[] tx = t.x;
+            double[] ty = t.y;
+            double[] tCos = t.cos;
+            int shift = offset - from;
+            for (int j = from; j < to; j++) {
+                double sinLat = Math.sin((ty[j] - sy) / 2);
+                double sinLon = Math.sin((tx[j] - sx) / 2);
+                double h = sinLat * sinLat + sCos * tCos[j] * sinLon * sinLon;
+                out[j + shift] = 2 * RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+            }
+        }
+
+        @Override
+        double lowerBound(double dx, double dy, double maxAbsLat) {
+            // The haversine with the product of both cosines replaced by the squared cosine of the
+            // larger latitude, which is not larger. A planar bound would exceed the great circle
+            // distance for long distances, since the chord is shorter than the arc.
+            double sinLat = Math.sin(dy / (2 * RADIUS));
+            double sinLon = Math.sin(dx / (2 * RADIUS));
+            double cos = Math.cos(maxAbsLat);
+            double h = sinLat * sinLat + cos * cos * sinLon * sinLon;
+            return 2 * RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+        }
+
+        @Override
+        boolean hasCos() {
+            return true;
+        }
+
+        @Override
+        void set(Points points, int i, double longitude, double latitude) {
+            points.x[i] = Math.toRadians(longitude);
+            points.y[i] = Math.toRadians(latitude);
+            points.cos[i] = Math.cos(points.y[i]);
+        }
+
+        @Override
+        public String toString() {
+            return "haversine";
+        }
+    }
+
+    private static class Equirectangular extends DistanceMetric {
+        @Override
+        public double distance(double sLongitude, double sLatitude, double tLongitude, double tLatitude) {
+            double sLat = Math.toRadians(sLatitude);
+            double tLat = Math.toRadians(tLatitude);
+            double dx = (Math.toRadians(tLongitude) - Math.toRadians(sLongitude))
+                    * (Math.cos(sLat) + Math.cos(tLat)) / 2;
+            double dy = tLat - sLat;
+            return RADIUS * Math.sqrt(dx * dx + dy * dy);
+        }
+
+        @Override
+        public double distance(Points s, int i, Points t, int j) {
+            // The mean of the cosines instead of the cosine of the mean latitude, which differs
+            // only in the order of the squared latitude difference.
+            double dx = (t.x[j] - s.x[i]) * (s.cos[i] + t.cos[j]) / 2;
+            double dy = t.y[j] - s.y[i];
+            return RADIUS * Math.sqrt(dx * dx + dy * dy);
+        }
+
+        @Override
+        public void distances(Points s, int i, Points t, int from, int to, double[] out, int offset) {
+            double sx = s.x[i];
+            double sy = s.y[i];
+            double sCos = s.cos[i];
+            double[] tx = t.x;
+            double[] ty = t.y;
+            double[] tCos = t.cos;
+            int shift = offset - from;
+            for (int j = from; j < to; j++) {
+                double dx = (tx[j] - sx) * (sCos + tCos[j]) * 0.5;
+                double dy = ty[j] - sy;
+                out[j + shift] = RADIUS * Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+
+        @Override
+        double lowerBound(double dx, double dy, double maxAbsLat) {
+            // The mean of both cosines is at least the cosine of the larger latitude.
+            double scaled = dx * Math.cos(maxAbsLat);
+            return Math.sqrt(scaled * scaled + dy * dy);
+        }
+
+        @Override
+        boolean hasCos() {
+            return true;
+        }
+
+        @Override
+        void set(Points points, int i, double longitude, double latitude) {
+            points.x[i] = Math.toRadians(longitude);
+            points.y[i] = Math.toRadians(latitude);
+            points.cos[i] = Math.cos(points.y[i]);
+        }
+
+        @Override
+        public String toString() {
+            return "equirectangular";
+        }
+    }
+
+    private static class SquaredPlanar extends DistanceMetric {
+        private final double referenceLatitude;
+        private final double scaleX;
+
+        SquaredPlanar(double referenceLatitude) {
+            this.referenceLatitude = referenceLatitude;
+            this.scaleX = RADIUS * Math.cos(Math.toRadians(referenceLatitude));
+        }
+
+        @Override
+        public double distance(double sLongitude, double sLatitude, double tLongitude, double tLatitude) {
+            double dx = Math.toRadians(tLongitude) * scaleX - Math.toRadians(sLongitude) * scaleX;
+            double dy = Math.toRadians(tLatitude) * RADIUS - Math.toRadians(sLatitude) * RADIUS;
+            return dx * dx + dy * dy;
+        }
+
+        @Override
+        public double distance(Points s, int i, Points t, int j) {
+            double dx = t.x[j] - s.x[i];
+            double dy = t.y[j] - s.y[i];
+            return dx * dx + dy * dy;
+        }
+
+        @Override
+        public void distances(Points s, int i, Points t, int from, int to, double[] out, int offset) {
+            double sx = s.x[i];
+            double sy = s.y[i];
+            double[] tx = t.x;
+            double[] ty = t.y;
+            int shift = offset - from;
+            for (int j = from; j < to; j++) {
+                double dx = tx[j] - sx;
+                double dy = ty[j] - sy;
+                out[j + shift] = dx * dx + dy * dy;
+            }
+        }
+
+        @Override
+        double lowerBound(double dx, double dy, double maxAbsLat) {
+            double scaled = dx * scaleX / RADIUS;
+            return scaled * scaled + dy * dy;
+        }
+
+        @Override
+        boolean hasCos() {
+            return false;
+        }
+
+        @Override
+        void set(Points points, int i, double longitude, double latitude) {
+            points.x[i] = Math.toRadians(longitude) * scaleX;
+            points.y[i] = Math.toRadians(latitude) * RADIUS;
+        }
+
+        @Override
+        public String toString() {
+            return "squaredPlanar(" + referenceLatitude + ")";
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.util.List;
+
+/**
+ * Implements the dynamic time warping algorithm. This algorithm aligns multiple trajectories
+ * by a non-linear warping of time, which minimizes the distances between points.
+ * <p>
+ * The alignment can be restricted to a {@link Window} (e.g. a Sakoe-Chiba band or an Itakura
+ * parallelogram), in which case only the cells inside the window are evaluated. Only two rows of
+ * costs are kept; for the warping path, the cheapest predecessor of every cell is stored in 2 bits.
+ */
+public class DynamicTimeWarp {
+    // the predecessors of a cell, as recorded in 2 bits per cell
+    static final int DIAGONAL = 1;
+    static final int UP = 2;
+    static final int LEFT = 3;
+    private static final int CELLS_PER_WORD = 32;
+
+    /**
+     * Computes the dynamic time warping between two trajectories.
+     *
+     * @param source The source trajectory, given as a list of trackpoints.
+     * @param target The target trajectory, given as a list of trackpoints.
+     * @return A {@link DTWResult}, which encapsulates both the similarity of the trajectories
+     * as well as the mapping of target points to source points.
+     */
+    public static DTWResult compute(List<Trackpoint> source, List<Trackpoint> target) {
+        return compute(Trajectory.fromTrackpoints(source), Trajectory.fromTrackpoints(target));
+    }
+
+    /**
+     * Computes the dynamic time warping between two trajectories.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @return A {@link DTWResult}, which encapsulates both the similarity of the trajectories
+     * as well as the mapping of target points to source points.
+     */
+    public static DTWResult compute(Trajectory source, Trajectory target) {
+        return compute(source, target, Window.full(source.size(), target.size()));
+    }
+
+    /**
+     * Computes the dynamic time warping between two trajectories, only considering alignments
+     * inside the given window. The memory needed is proportional to the number of cells in the
+     * window.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @param window The window, which must have as many rows as the source and as many columns as
+     *               the target has points.
+     * @return A {@link DTWResult}, which encapsulates both the similarity of the trajectories
+     * as well as the mapping of target points to source points.
+     */
+    public static DTWResult compute(Trajectory source, Trajectory target, Window window) {
+        return compute(source, target, window, DistanceMetric.HAVERSINE);
+    }
+
+    /**
+     * Computes the dynamic time warping between two trajectories inside the given window, using
+     * the given distance metric between points.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @param window The window, which must have as many rows as the source and as many columns as
+     *               the target has points.
+     * @param metric The distance metric.
+     * @return A {@link DTWResult}, which encapsulates both the similarity of the trajectories
+     * as well as the mapping of target points to source points.
+     */
+    public static DTWResult compute(Trajectory source, Trajectory target, Window window,
+                                    DistanceMetric metric) {
+        checkWindow(source, target, window);
+        // For every cell inside the window, only the chosen predecessor is stored, in 2 bits.
+        long[] rowStart = rowStarts(window);
+        long[] directions = new long[(int) ((rowStart[source.size()] + CELLS_PER_WORD - 1) / CELLS_PER_WORD)];
+        double total = forward(source, target, window, metric, rowStart, directions);
+
+        // The path is only backtracked through the directions if it is needed.
+        return new DTWResult(total / (source.size() + target.size()), directions, rowStart, window);
+    }
+
+    /**
+     * Computes the index of the first cell of every row within the flat matrix of all cells inside
+     * the window.
+     *
+     * @param window The window.
+     * @return The start of every row, and the number of cells at index {@link Window#getRows()}.
+     */
+    static long[] rowStarts(Window window) {
+        int rows = window.getRows();
+        long[] rowStart = new long[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            rowStart[i + 1] = rowStart[i] + window.getMax(i) - window.getMin(i) + 1;
+        }
+        return rowStart;
+    }
+
+    /**
+     * Builds up the accumulated costs row by row, keeping only the previous row, and records for
+     * every cell from which of its three predecessors it is reached most cheaply (preferring the
+     * diagonal, then the cell above on ties).
+     *
+     * @param source     The source trajectory.
+     * @param target     The target trajectory.
+     * @param window     The window.
+     * @param metric     The distance metric.
+     * @param rowStart   The start of every row, see {@link #rowStarts(Window)}.
+     * @param directions Receives the predecessor of every cell, 2 bits per cell, see
+     *                   {@link #direction(long[], long)}.
+     * @return The accumulated (not normalized) cost of the last cell.
+     */
+    static double forward(Trajectory source, Trajectory target, Window window, DistanceMetric metric,
+                          long[] rowStart, long[] directions) {
+        int srcLength = source.size();
+        DistanceMetric.Points src = metric.prepare(source);
+        DistanceMetric.Points tar = metric.prepare(target);
+        int width = window.getMaxWidth();
+
+        // The previous and current row, each starting at the first column of its row.
+        double[] prev = new double[width];
+        double[] cur = new double[width];
+        int prevMin = 0;
+        int prevMax = -1;
+
+        for (int i = 0; i < srcLength; i++) {
+            int min = window.getMin(i);
+            int max = window.getMax(i);
+            long cell = rowStart[i];
+            metric.distances(src, i, tar, min, max + 1, cur, 0);
+            for (int j = min; j <= max; j++, cell++) {
+                if (i == 0 && j == 0) {
+                    continue;
+                }
+                double up = j >= prevMin && j <= prevMax ? prev[j - prevMin] : Double.POSITIVE_INFINITY;
+                double diag = j - 1 >= prevMin && j - 1 <= prevMax ? prev[j - 1 - prevMin] : Double.POSITIVE_INFINITY;
+                double left = j > min ? cur[j - 1 - min] : Double.POSITIVE_INFINITY;
+                double best;
+                long direction;
+                if (diag <= up && diag <= left) {
+                    best = diag;
+                    direction = DIAGONAL;
+                } else if (up <= left) {
+                    best = up;
+                    direction = UP;
+                } else {
+                    best = left;
+                    direction = LEFT;
+                }
+                cur[j - min] += best;
+                directions[(int) (cell >>> 5)] |= direction << ((cell & (CELLS_PER_WORD - 1)) << 1);
+            }
+            double[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+            prevMin = min;
+            prevMax = max;
+        }
+        return prev[target.size() - 1 - prevMin];
+    }
+
+    /**
+     * Gets the predecessor of a cell, as recorded by the forward pass.
+     *
+     * @return {@link #DIAGONAL}, {@link #UP} or {@link #LEFT}, or 0 for the first cell.
+     */
+    private static int direction(long[] directions, long cell) {
+        return (int) (directions[(int) (cell >>> 5)] >>> ((cell & (CELLS_PER_WORD - 1)) << 1)) & 3;
+    }
+
+    /**
+     * Computes the dynamic time warping between two trajectories with the given strategy, e.g. an
+     * exact, a banded or an approximated ({@link FastDynamicTimeWarp}) alignment.
+     *
+     * @param source   The source trajectory.
+     * @param target   The target trajectory.
+     * @param strategy The strategy to use.
+     * @return A {@link DTWResult}, which encapsulates both the similarity of the trajectories
+     * as well as the mapping of target points to source points.
+     */
+    public static DTWResult compute(Trajectory source, Trajectory target, Strategy strategy) {
+        return strategy.compute(source, target);
+    }
+
+    /**
+     * Computes only the cost of the dynamic time warping between two trajectories, without the
+     * mapping. Since no backtracking is needed, only two rows of the cost matrix are kept, so the
+     * memory needed is proportional to the width of the window.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @param window The window, which must have as many rows as the source and as many columns as
+     *               the target has points.
+     * @return The cost, or similarity value, between the two trajectories. This is the same value
+     * as {@link DTWResult#getCost()} of {@link #compute(Trajectory, Trajectory, Window)}.
+     */
+    public static double cost(Trajectory source, Trajectory target, Window window) {
+        return cost(source, target, window, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Computes only the cost of the dynamic time warping between two trajectories, abandoning the
+     * computation as soon as the cost is known to exceed a threshold. Since all distances are
+     * positive, the cheapest cell of a row is a lower bound of the final cost, so the computation
+     * can stop once that bound exceeds the threshold.
+     *
+     * @param source       The source trajectory.
+     * @param target       The target trajectory.
+     * @param window       The window, which must have as many rows as the source and as many
+     *                     columns as the target has points.
+     * @param abandonAbove The (normalized) cost above which the computation is abandoned.
+     * @return The cost between the two trajectories, or {@link Double#POSITIVE_INFINITY} if it
+     * exceeds the threshold.
+     */
+    public static double cost(Trajectory source, Trajectory target, Window window, double abandonAbove) {
+        return cost(source, target, window, DistanceMetric.HAVERSINE, abandonAbove, null);
+    }
+
+    /**
+     * Computes only the cost of the dynamic time warping between two trajectories, like
+     * {@link #cost(Trajectory, Trajectory, Window, double)}, using the given distance metric.
+     *
+     * @param source       The source trajectory.
+     * @param target       The target trajectory.
+     * @param window       The window.
+     * @param metric       The distance metric.
+     * @param abandonAbove The (normalized) cost above which the computation is abandoned.
+     * @return The cost between the two trajectories, or {@link Double#POSITIVE_INFINITY} if it
+     * exceeds the threshold.
+     */
+    public static double cost(Trajectory source, Trajectory target, Window window, DistanceMetric metric,
+                              double abandonAbove) {
+        return cost(source, target, window, metric, abandonAbove, null);
+    }
+
+    /**
+     * Computes only the cost of the dynamic time warping, like
+     * {@link #cost(Trajectory, Trajectory, Window, double)}, but tightens the early abandoning with
+     * lower bounds for the rows which have not been computed yet.
+     *
+     * @param source       The source trajectory.
+     * @param target       The target trajectory.
+     * @param window       The window.
+     * @param metric       The distance metric.
+     * @param abandonAbove The (normalized) cost above which the computation is abandoned.
+     * @param remaining    For every row i, a lower bound (in units of the metric) of the cost
+     *                     added by the rows after i, or null if not known.
+     * @return The cost between the two trajectories, or {@link Double#POSITIVE_INFINITY} if it
+     * exceeds the threshold.
+     */
+    static double cost(Trajectory source, Trajectory target, Window window, DistanceMetric metric,
+                       double abandonAbove, double[] remaining) {
+        checkWindow(source, target, window);
+        int srcLength = source.size();
+        int tarLength = target.size();
+        DistanceMetric.Points src = metric.prepare(source);
+        DistanceMetric.Points tar = metric.prepare(target);
+        int width = window.getMaxWidth();
+
+        // The previous and current row, each starting at the first column of its row.
+        double[] prev = new double[width];
+        double[] cur = new double[width];
+        int prevMin = 0;
+        int prevMax = -1;
+        double abandonSum = abandonAbove * (srcLength + tarLength);
+
+        for (int i = 0; i < srcLength; i++) {
+            int min = window.getMin(i);
+            int max = window.getMax(i);
+            // The distances of the row are computed in one batch, and accumulated afterwards.
+            metric.distances(src, i, tar, min, max + 1, cur, 0);
+            for (int j = min; j <= max; j++) {
+                double best;
+                if (i == 0 && j == 0) {
+                    best = 0.0;
+                } else {
+                    double up = j >= prevMin && j <= prevMax ? prev[j - prevMin] : Double.POSITIVE_INFINITY;
+                    double diag = j - 1 >= prevMin && j - 1 <= prevMax ? prev[j - 1 - prevMin] : Double.POSITIVE_INFINITY;
+                    double left = j > min ? cur[j - 1 - min] : Double.POSITIVE_INFINITY;
+                    best = Math.min(Math.min(up, diag), left);
+                }
+                cur[j - min] += best;
+            }
+            if (abandonSum < Double.POSITIVE_INFINITY) {
+                double rowMin = Double.POSITIVE_INFINITY;
+                for (int j = 0; j <= max - min; j++) {
+                    rowMin = Math.min(rowMin, cur[j]);
+                }
+                if (remaining != null) {
+                    rowMin += remaining[i];
+                }
+                if (rowMin > abandonSum) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+            double[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+            prevMin = min;
+            prevMax = max;
+        }
+
+        return prev[tarLength - 1 - prevMin] / (srcLength + tarLength);
+    }
+
+    /**
+     * Tracks backwards through the recorded predecessors, starting in the last cell.
+     *
+     * @param directions The predecessors of all cells inside the window, see
+     *                   {@link #forward(Trajectory, Trajectory, Window, DistanceMetric, long[], long[])}.
+     * @param rowStart   The index of the first cell of every row.
+     * @param window     The window.
+     * @return The warping path.
+     */
+    static WarpPath backtrack(long[] directions, long[] rowStart, Window window) {
+        int srcLength = window.getRows();
+        int[] first = new int[srcLength];
+        int[] last = new int[srcLength];
+
+        int i = srcLength - 1;
+        int j = window.getCols() - 1;
+        last[i] = j;
+        while (i > 0 || j > 0) {
+            int direction = i == 0 ? LEFT : (j == 0 ? UP : direction(directions, rowStart[i] + j - window.getMin(i)));
+            if (direction == LEFT) {
+                j--;
+            } else {
+                // Leaving the row, whose first target point is therefore known.
+                first[i] = j;
+                if (direction == DIAGONAL) {
+                    j--;
+                }
+                i--;
+                last[i] = j;
+            }
+        }
+        return new WarpPath(first, last, window.getCols());
+    }
+
+    private static void checkWindow(Trajectory source, Trajectory target, Window window) {
+        if (window.getRows() != source.size() || window.getCols() != target.size()) {
+            throw new IllegalArgumentException("The window does not match the trajectories.");
+        }
+    }
+
+    /**
+     * A way of computing the dynamic time warping, selectable per call of
+     * {@link #compute(Trajectory, Trajectory, Strategy)}. The {@link #toString()} of a strategy
+     * describes it including its parameters, e.g. to be used as part of a cache key.
+     * <p>
+     * All strategies use the {@link DistanceMetric#HAVERSINE} distance, unless another metric is
+     * selected with {@link #withMetric(DistanceMetric)}.
+     */
+    public static abstract class Strategy {
+        /**
+         * Computes the dynamic time warping between two trajectories.
+         *
+         * @param source The source trajectory.
+         * @param target The target trajectory.
+         * @return The result of the dynamic time warping.
+         */
+        DTWResult compute(Trajectory source, Trajectory target) {
+            return compute(source, target, DistanceMetric.HAVERSINE);
+        }
+
+        /**
+         * Computes the dynamic time warping between two trajectories with the given metric.
+         *
+         * @param source The source trajectory.
+         * @param target The target trajectory.
+         * @param metric The distance metric.
+         * @return The result of the dynamic time warping.
+         */
+        abstract DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric);
+
+        /**
+         * Creates the same strategy, using another distance metric.
+         *
+         * @param metric The distance metric.
+         * @return The strategy.
+         */
+        public Strategy withMetric(DistanceMetric metric) {
+            return new WithMetric(this, metric);
+        }
+
+        /**
+         * The exact, unconstrained dynamic time warping.
+         *
+         * @return The strategy.
+         */
+        public static Strategy exact() {
+            return new Strategy() {
+                @Override
+                DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric) {
+                    return DynamicTimeWarp.compute(source, target,
+                            Window.full(source.size(), target.size()), metric);
+                }
+
+                @Override
+                public String toString() {
+                    return "exact";
+                }
+            };
+        }
+
+        /**
+         * The dynamic time warping restricted to a Sakoe-Chiba band.
+         *
+         * @param radius The radius of the band, see {@link Window#sakoeChiba(int, int, int)}.
+         * @return The strategy.
+         */
+        public static Strategy sakoeChiba(final int radius) {
+            return new Strategy() {
+                @Override
+                DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric) {
+                    return DynamicTimeWarp.compute(source, target,
+                            Window.sakoeChiba(source.size(), target.size(), radius), metric);
+                }
+
+                @Override
+                public String toString() {
+                    return "sakoeChiba(" + radius + ")";
+                }
+            };
+        }
+
+        /**
+         * The dynamic time warping restricted to an Itakura parallelogram.
+         *
+         * @param slope The maximum slope, see {@link Window#itakura(int, int, double)}.
+         * @return The strategy.
+         */
+        public static Strategy itakura(final double slope) {
+            return new Strategy() {
+                @Override
+                DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric) {
+                    return DynamicTimeWarp.compute(source, target,
+                            Window.itakura(source.size(), target.size(), slope), metric);
+                }
+
+                @Override
+                public String toString() {
+                    return "itakura(" + slope + ")";
+                }
+            };
+        }
+
+        /**
+         * The multi-resolution approximation implemented by {@link FastDynamicTimeWarp}.
+         *
+         * @param radius The refinement radius, see
+         *               {@link FastDynamicTimeWarp#compute(Trajectory, Trajectory, int)}.
+         * @return The strategy.
+         */
+        public static Strategy fast(final int radius) {
+            return new Strategy() {
+                @Override
+                DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric) {
+                    return FastDynamicTimeWarp.compute(source, target, radius, metric);
+                }
+
+                @Override
+                public String toString() {
+                    return "fast(" + radius + ")";
+                }
+            };
+        }
+    }
+
+    /**
+     * A strategy using another distance metric than the haversine distance.
+     */
+    private static class WithMetric extends Strategy {
+        private final Strategy strategy;
+        private final DistanceMetric metric;
+
+        WithMetric(Strategy strategy, DistanceMetric metric) {
+            // Unwrap, so that the metric is only selected once.
+            this.strategy = strategy instanceof WithMetric ? ((WithMetric) strategy).strategy : strategy;
+            this.metric = metric;
+        }
+
+        @Override
+        DTWResult compute(Trajectory source, Trajectory target) {
+            return strategy.compute(source, target, metric);
+        }
+
+        @Override
+        DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric) {
+            return strategy.compute(source, target, metric);
+        }
+
+        @Override
+        public String toString() {
+            return strategy + "[" + metric + "]";
+        }
+    }
+
+    /**
+     * Wraps the result of a dynamic time warping.
+     */
+    public static class DTWResult {
+        private final double cost;
+        // the recorded predecessors, until the path has been backtracked
+        private long[] directions;
+        private long[] rowStart;
+        private Window window;
+        private WarpPath warpPath;
+        private List<List<Integer>> path;
+
+        /**
+         * Constructor.
+         *
+         * @param cost       The cost, or similarity value, between two trajectories.
+         * @param directions The predecessors of all cells, from which the path is backtracked.
+         * @param rowStart   The index of the first cell of every row.
+         * @param window     The window.
+         */
+        DTWResult(double cost, long[] directions, long[] rowStart, Window window) {
+            this.cost = cost;
+            this.directions = directions;
+            this.rowStart = rowStart;
+            this.window = window;
+        }
+
+        /**
+         * Gets the cost, or similarity value of the result.
+         *
+         * @return The similarity value between trajectory one and two.
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        /**
+         * Gets the path, or mapping, between trajectory one and two. It is backtracked when it
+         * is requested for the first time, after which the recorded predecessors are released.
+         *
+         * @return The warping path.
+         */
+        public WarpPath getWarpPath() {
+            if (warpPath == null) {
+                warpPath = backtrack(directions, rowStart, window);
+                directions = null;
+                rowStart = null;
+                window = null;
+            }
+            return warpPath;
+        }
+
+        /**
+         * Gets the path, or mapping, between trajectory one and two, as lists of boxed indices.
+         * {@link #getWarpPath()} gives the same path with much less memory.
+         *
+         * @return For every source point, the list of target points mapped to it.
+         */
+        public List<List<Integer>> getPath() {
+            if (path == null) {
+                path = getWarpPath().toLists();
+            }
+            return path;
+        }
+    }
+}
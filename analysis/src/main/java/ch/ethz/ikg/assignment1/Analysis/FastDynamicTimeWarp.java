@@ -0,0 +1,118 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+/**
+ * Implements the FastDTW approximation of the dynamic time warping (Salvador and Chan, 2007).
+ * Both trajectories are recursively coarsened to half their resolution, the warping is solved at
+ * the lowest resolution, and the resulting path is projected to the next finer resolution, where
+ * it is refined inside a narrow window around the projected path. This needs O(n * radius) time
+ * and memory instead of O(n * m), at the price of possibly missing the optimal alignment.
+ */
+public class FastDynamicTimeWarp {
+    /**
+     * Computes an approximation of the dynamic time warping between two trajectories.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @param radius How many points the window around the projected path is widened on every
+     *               resolution. Larger values give results closer to the exact warping.
+     * @return A {@link DynamicTimeWarp.DTWResult}, which encapsulates both the similarity of the
+     * trajectories as well as the mapping of target points to source points.
+     */
+    public static DynamicTimeWarp.DTWResult compute(Trajectory source, Trajectory target, int radius) {
+        return compute(source, target, radius, DistanceMetric.HAVERSINE);
+    }
+
+    /**
+     * Computes an approximation of the dynamic time warping between two trajectories, using the
+     * given distance metric between points.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @param radius How many points the window around the projected path is widened on every
+     *               resolution.
+     * @param metric The distance metric.
+     * @return A {@link DynamicTimeWarp.DTWResult}, which encapsulates both the similarity of the
+     * trajectories as well as the mapping of target points to source points.
+     */
+    public static DynamicTimeWarp.DTWResult compute(Trajectory source, Trajectory target, int radius,
+                                                    DistanceMetric metric) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("The radius must not be negative.");
+        }
+        int minSize = radius + 2;
+        if (source.size() <= minSize || target.size() <= minSize) {
+            // The trajectories are short enough to be solved exactly.
+            return DynamicTimeWarp.compute(source, target,
+                    Window.full(source.size(), target.size()), metric);
+        }
+
+        // Solve the problem at half the resolution, and use the result to constrain this one.
+        DynamicTimeWarp.DTWResult coarse = compute(coarsen(source), coarsen(target), radius, metric);
+        Window window = project(coarse.getWarpPath(), source.size(), target.size(), radius);
+        return DynamicTimeWarp.compute(source, target, window, metric);
+    }
+
+    /**
+     * Halves the resolution of a trajectory by averaging every two consecutive points.
+     *
+     * @param trajectory The trajectory to coarsen.
+     * @return A trajectory with half the number of points (rounded up).
+     */
+    static Trajectory coarsen(Trajectory trajectory) {
+        int size = trajectory.size();
+        Trajectory.Builder builder = new Trajectory.Builder((size + 1) / 2);
+        for (int i = 0; i < size; i += 2) {
+            if (i + 1 < size) {
+                builder.add((trajectory.getLongitude(i) + trajectory.getLongitude(i + 1)) / 2,
+                        (trajectory.getLatitude(i) + trajectory.getLatitude(i + 1)) / 2,
+                        (trajectory.getTime(i) + trajectory.getTime(i + 1)) / 2);
+            } else {
+                builder.add(trajectory.getLongitude(i), trajectory.getLatitude(i), trajectory.getTime(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Projects a warping path found at half the resolution to the full resolution. Every cell of
+     * the coarse path covers 2x2 cells at full resolution, which are additionally widened by the
+     * radius in all directions.
+     *
+     * @param path   The coarse path.
+     * @param rows   The number of source points at full resolution.
+     * @param cols   The number of target points at full resolution.
+     * @param radius The number of cells to widen the projected path by.
+     * @return The window to use at full resolution.
+     */
+    static Window project(WarpPath path, int rows, int cols, int radius) {
+        int[] min = new int[rows];
+        int[] max = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            min[i] = Integer.MAX_VALUE;
+            max[i] = -1;
+        }
+
+        for (int i = 0; i < path.getSourceCount(); i++) {
+            int firstRow = Math.max(0, 2 * i - radius);
+            int lastRow = Math.min(rows - 1, 2 * i + 1 + radius);
+            // The target points of a source point are contiguous, so only the first and the last
+            // one widen the bounds.
+            int firstCol = Math.max(0, 2 * path.getFirstTarget(i) - radius);
+            int lastCol = Math.min(cols - 1, 2 * path.getLastTarget(i) + 1 + radius);
+            for (int row = firstRow; row <= lastRow; row++) {
+                min[row] = Math.min(min[row], firstCol);
+                max[row] = Math.max(max[row], lastCol);
+            }
+        }
+
+        // Rows that were not reached (which can only happen at the very end) inherit the
+        // bounds of the previous row; the window normalizes the rest.
+        for (int i = 1; i < rows; i++) {
+            if (max[i] < 0) {
+                min[i] = min[i - 1];
+                max[i] = max[i - 1];
+            }
+        }
+        return new Window(cols, min, max);
+    }
+}
@@ -0,0 +1,408 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A streaming reader for GPX files. Instead of building an object model of the whole file, it
+ * scans the bytes once and copies the position and time of every track point ({@code <trkpt>})
+ * directly into a {@link Trajectory.Builder}. Apart from the builder, no objects are created per
+ * point; numbers and ISO-8601 timestamps are decoded in place.
+ * <p>
+ * Only the parts of GPX needed for trajectories are understood: the {@code lat} and {@code lon}
+ * attributes and the {@code <time>} element of track points. Everything else is skipped. Points
+ * without a time get the time 0.
+ */
+public class GpxReader {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_TOKEN = 64;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    // holds the current tag name, attribute name or value
+    private final byte[] token = new byte[MAX_TOKEN];
+    private int tokenLength;
+
+    private GpxReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads all track points of a GPX file. The stream is not closed.
+     *
+     * @param in The GPX file.
+     * @return A trajectory containing the track points of all tracks and segments, in the order of
+     * the file.
+     * @throws IOException If the stream cannot be read, or the file is malformed.
+     */
+    public static Trajectory read(InputStream in) throws IOException {
+        return new GpxReader(in).readTrajectory();
+    }
+
+    private Trajectory readTrajectory() throws IOException {
+        Trajectory.Builder builder = new Trajectory.Builder(1024);
+        boolean inPoint = false;
+        double lat = 0;
+        double lon = 0;
+        long time = 0;
+
+        int c;
+        while ((c = next()) >= 0) {
+            if (c != '<') {
+                continue;
+            }
+            c = next();
+            if (c < 0) {
+                break;
+            } else if (c == '!' || c == '?') {
+                skipDeclaration(c);
+                continue;
+            }
+            boolean closing = c == '/';
+            if (!closing) {
+                pos--;
+            }
+            readName();
+
+            if (!closing && isName("trkpt")) {
+                // Read the attributes of the track point.
+                lat = Double.NaN;
+                lon = Double.NaN;
+                time = 0;
+                boolean empty = false;
+                while (true) {
+                    c = skipWhitespace();
+                    if (c == '>' || c < 0) {
+                        break;
+                    } else if (c == '/') {
+                        empty = true;
+                        continue;
+                    }
+                    pos--;
+                    readName();
+                    boolean isLat = isName("lat");
+                    boolean isLon = isName("lon");
+                    if (skipWhitespace() != '=') {
+                        throw new IOException("Malformed attribute in <trkpt>.");
+                    }
+                    readQuoted();
+                    if (isLat) {
+                        lat = parseDouble();
+                    } else if (isLon) {
+                        lon = parseDouble();
+                    }
+                }
+                if (Double.isNaN(lat) || Double.isNaN(lon)) {
+                    throw new IOException("<trkpt> without lat or lon.");
+                }
+                if (empty) {
+                    builder.add(lon, lat, time);
+                } else {
+                    inPoint = true;
+                }
+            } else if (closing && isName("trkpt")) {
+                if (inPoint) {
+                    builder.add(lon, lat, time);
+                    inPoint = false;
+                }
+                skipTag();
+            } else if (!closing && inPoint && isName("time")) {
+                skipTag();
+                readText();
+                time = parseTime(token, 0, tokenLength);
+            } else {
+                skipTag();
+            }
+        }
+        return builder.build();
+    }
+
+    private int next() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buffer, 0, BUFFER_SIZE);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+        return c;
+    }
+
+    /**
+     * Reads a tag or attribute name into the token, dropping any namespace prefix.
+     */
+    private void readName() throws IOException {
+        tokenLength = 0;
+        int c;
+        while ((c = next()) >= 0) {
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '>' || c == '/' || c == '=') {
+                pos--;
+                return;
+            } else if (c == ':') {
+                tokenLength = 0;
+            } else if (tokenLength < MAX_TOKEN) {
+                token[tokenLength++] = (byte) c;
+            }
+        }
+    }
+
+    /**
+     * Reads a quoted attribute value into the token. Track points only have the lat and lon
+     * attributes, so a value which does not fit into the token is an error rather than cut off.
+     */
+    private void readQuoted() throws IOException {
+        int quote = skipWhitespace();
+        if (quote != '"' && quote != '\'') {
+            throw new IOException("Attribute value is not quoted.");
+        }
+        tokenLength = 0;
+        int c;
+        while ((c = next()) >= 0 && c != quote) {
+            if (tokenLength == MAX_TOKEN) {
+                throw new IOException("Value too long.");
+            }
+            token[tokenLength++] = (byte) c;
+        }
+    }
+
+    /**
+     * Reads the text up to the next tag into the token, without surrounding whitespace. A text
+     * which does not fit into the token is an error rather than cut off.
+     */
+    private void readText() throws IOException {
+        tokenLength = 0;
+        int c = skipWhitespace();
+        while (c >= 0 && c != '<') {
+            if (tokenLength < MAX_TOKEN) {
+                token[tokenLength++] = (byte) c;
+            } else if (c > ' ') {
+                // Only trailing whitespace may be dropped.
+                throw new IOException("Value too long.");
+            }
+            c = next();
+        }
+        if (c == '<') {
+            pos--;
+        }
+        while (tokenLength > 0 && token[tokenLength - 1] <= ' ') {
+            tokenLength--;
+        }
+    }
+
+    /**
+     * Skips the rest of a tag, respecting quoted attribute values.
+     */
+    private void skipTag() throws IOException {
+        int quote = 0;
+        int c;
+        while ((c = next()) >= 0) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips comments, CDATA sections, processing instructions and declarations.
+     */
+    private void skipDeclaration(int first) throws IOException {
+        if (first == '!') {
+            int c = next();
+            if (c == '-') {
+                // A comment, which ends with "-->".
+                int dashes = 0;
+                next();
+                while ((c = next()) >= 0) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            } else if (c == '[') {
+                // A CDATA section, which ends with "]]>".
+                int brackets = 0;
+                while ((c = next()) >= 0) {
+                    if (c == '>' && brackets >= 2) {
+                        return;
+                    }
+                    brackets = c == ']' ? brackets + 1 : 0;
+                }
+                return;
+            }
+        }
+        skipTag();
+    }
+
+    private boolean isName(String name) {
+        if (tokenLength != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the token as a decimal number, like "47.40868972" or "-8.5".
+     *
+     * @throws IOException If the token is not a number, e.g. empty.
+     */
+    private double parseDouble() throws IOException {
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean negative = false;
+        boolean fraction = false;
+        boolean seen = false;
+        int i = 0;
+        if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+            negative = token[i] == '-';
+            i++;
+        }
+        for (; i < tokenLength; i++) {
+            int c = token[i];
+            if (c >= '0' && c <= '9') {
+                seen = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits += mantissa > 0 ? 1 : 0;
+                    if (fraction) {
+                        decimals++;
+                    }
+                } else if (!fraction) {
+                    return parseDoubleSlow();
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                // Exponents and other rare notations are left to the JDK.
+                return parseDoubleSlow();
+            }
+        }
+        if (!seen) {
+            // An empty token, or only a sign or point.
+            throw new IOException("Invalid number: " + new String(token, 0, tokenLength, "US-ASCII"));
+        }
+        double value = decimals < POWERS_OF_TEN.length
+                ? mantissa / POWERS_OF_TEN[decimals]
+                : mantissa / Math.pow(10, decimals);
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlow() throws IOException {
+        try {
+            return Double.parseDouble(new String(token, 0, tokenLength, "US-ASCII"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number: " + new String(token, 0, tokenLength, "US-ASCII"));
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    /**
+     * Decodes an ISO-8601 timestamp of the form {@code yyyy-MM-ddTHH:mm:ss[.SSS][Z|+hh:mm|-hh:mm]}.
+     * Timestamps without zone are interpreted as UTC, as GPX requires.
+     *
+     * @param text   The characters of the timestamp.
+     * @param offset The index of the first character.
+     * @param length The number of characters.
+     * @return The time in milliseconds since the epoch.
+     * @throws IOException If the timestamp is malformed.
+     */
+    static long parseTime(byte[] text, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (length < 19 || text[offset + 4] != '-' || text[offset + 7] != '-'
+                || (text[offset + 10] != 'T' && text[offset + 10] != ' ')
+                || text[offset + 13] != ':' || text[offset + 16] != ':') {
+            throw new IOException("Invalid timestamp.");
+        }
+        int year = digits(text, offset, 4, end);
+        int month = digits(text, offset + 5, 2, end);
+        int day = digits(text, offset + 8, 2, end);
+        int hour = digits(text, offset + 11, 2, end);
+        int minute = digits(text, offset + 14, 2, end);
+        int second = digits(text, offset + 17, 2, end);
+
+        // Fractional seconds, of which only the milliseconds are kept.
+        int i = offset + 19;
+        int millis = 0;
+        if (i < end && text[i] == '.') {
+            i++;
+            int scale = 100;
+            while (i < end && text[i] >= '0' && text[i] <= '9') {
+                millis += (text[i] - '0') * scale;
+                scale /= 10;
+                i++;
+            }
+        }
+
+        // Time zone.
+        int zoneOffset = 0;
+        if (i < end && (text[i] == '+' || text[i] == '-')) {
+            int sign = text[i] == '-' ? -1 : 1;
+            int hours = digits(text, i + 1, 2, end);
+            int minutes = 0;
+            if (i + 3 < end) {
+                minutes = digits(text, text[i + 3] == ':' ? i + 4 : i + 3, 2, end);
+            }
+            zoneOffset = sign * (hours * 60 + minutes) * 60000;
+        } else if (i < end && text[i] != 'Z') {
+            throw new IOException("Invalid timestamp.");
+        }
+
+        long days = daysFromCivil(year, month, day);
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis - zoneOffset;
+    }
+
+    /**
+     * Decodes a fixed number of digits, which must all lie before the end of the timestamp.
+     */
+    private static int digits(byte[] text, int offset, int count, int end) throws IOException {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int c = i < end ? text[i] - '0' : -1;
+            if (c < 0 || c > 9) {
+                throw new IOException("Invalid timestamp.");
+            }
+            value = value * 10 + c;
+        }
+        return value;
+    }
+
+    /**
+     * Computes the number of days since 1970-01-01 of a date in the proleptic Gregorian calendar
+     * (H. Hinnant's algorithm).
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,43 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes trajectories as GPX files with one track, which {@link GpxReader} reads back, e.g. to
+ * hand an average path computed on a server to the app.
+ */
+public class GpxWriter {
+    private GpxWriter() {
+    }
+
+    /**
+     * Writes a trajectory as a GPX file. Coordinates are written with 7 decimals (about 1 cm),
+     * times in UTC with milliseconds.
+     *
+     * @param trajectory The trajectory.
+     * @param out        The writer, which is not closed.
+     * @throws IOException If the writer fails.
+     */
+    public static void write(Trajectory trajectory, Writer out) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"Bikr\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<trk><trkseg>\n");
+        StringBuilder point = new StringBuilder(128);
+        for (int i = 0; i < trajectory.size(); i++) {
+            point.setLength(0);
+            point.append("<trkpt lat=\"").append(String.format(Locale.US, "%.7f", trajectory.getLatitude(i)))
+                    .append("\" lon=\"").append(String.format(Locale.US, "%.7f", trajectory.getLongitude(i)))
+                    .append("\"><time>").append(format.format(new Date(trajectory.getTime(i))))
+                    .append("</time></trkpt>\n");
+            out.write(point.toString());
+        }
+        out.write("</trkseg></trk>\n</gpx>\n");
+    }
+}
@@ -0,0 +1,219 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the cost of the dynamic time warping of two long trajectories on several cores. The cost
+ * matrix is divided into square tiles. A tile depends only on the tiles above, to the left and
+ * diagonally above-left of it, so all tiles on the same anti-diagonal of tiles are independent and
+ * are computed in parallel, one anti-diagonal after the other (a wavefront).
+ * <p>
+ * Only the borders of the tiles are kept: the last row of every column of tiles, the last column of
+ * every row of tiles, and the bottom right cell of every tile. The memory needed is therefore
+ * proportional to the length of the trajectories, as for
+ * {@link DynamicTimeWarp#cost(Trajectory, Trajectory, Window)}, whose result this is.
+ * <p>
+ * Matrices with fewer cells than {@link #PARALLEL_THRESHOLD} are computed sequentially, as the
+ * synchronization between the anti-diagonals costs more than it saves. {@link ForkJoinPool} is only
+ * available from Android 5.0 on, so this is meant for the batch processing on servers.
+ */
+public class ParallelDynamicTimeWarp {
+    /**
+     * The number of cells inside the window below which the cost is computed sequentially.
+     */
+    public static final long PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+    // the side length of a tile; a tile of doubles and its borders stay in the L2 cache
+    private static final int TILE_SIZE = 256;
+
+    private ParallelDynamicTimeWarp() {
+    }
+
+    /**
+     * Computes the cost of the dynamic time warping between two trajectories in parallel.
+     *
+     * @param source The source trajectory.
+     * @param target The target trajectory.
+     * @param window The window, which must have as many rows as the source and as many columns as
+     *               the target has points.
+     * @param metric The distance metric.
+     * @param pool   The pool running the tiles.
+     * @return The cost between the two trajectories, the same as
+     * {@link DynamicTimeWarp#cost(Trajectory, Trajectory, Window, DistanceMetric, double)} without
+     * a threshold.
+     */
+    public static double cost(Trajectory source, Trajectory target, Window window, DistanceMetric metric,
+                              ForkJoinPool pool) {
+        return cost(source, target, window, metric, pool, TILE_SIZE, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Computes the cost of the dynamic time warping in parallel, with the given tile size and
+     * threshold (which allows testing the tiling on small trajectories).
+     */
+    static double cost(Trajectory source, Trajectory target, Window window, DistanceMetric metric,
+                       ForkJoinPool pool, int tileSize, long threshold) {
+        if (window.getRows() != source.size() || window.getCols() != target.size()) {
+            throw new IllegalArgumentException("The window does not match the trajectories.");
+        }
+        if (window.getCellCount() < threshold || pool.getParallelism() < 2) {
+            return DynamicTimeWarp.cost(source, target, window, metric, Double.POSITIVE_INFINITY);
+        }
+        Wavefront wavefront = new Wavefront(metric.prepare(source), metric.prepare(target), window,
+                metric, tileSize);
+        pool.invoke(wavefront);
+        return wavefront.getCost() / (source.size() + target.size());
+    }
+
+    /**
+     * Processes the anti-diagonals of tiles one after the other, and the tiles of an anti-diagonal
+     * in parallel.
+     */
+    private static class Wavefront extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DistanceMetric.Points src;
+        private final DistanceMetric.Points tar;
+        private final Window window;
+        private final DistanceMetric metric;
+        private final int tileSize;
+        private final int tileRows;
+        private final int tileCols;
+        // the range of columns of tiles which intersect the window, per row of tiles
+        private final int[] firstTile;
+        private final int[] lastTile;
+
+        // the last row computed in every column, i.e. the bottom border of the last computed tile
+        private final double[] bottom;
+        // the last column computed in every row, i.e. the right border of the last computed tile
+        private final double[] right;
+        // the bottom right cell of every tile, stored for the tile diagonally below it
+        private final double[] corners;
+
+        Wavefront(DistanceMetric.Points src, DistanceMetric.Points tar, Window window,
+                  DistanceMetric metric, int tileSize) {
+            this.src = src;
+            this.tar = tar;
+            this.window = window;
+            this.metric = metric;
+            this.tileSize = tileSize;
+            this.tileRows = (window.getRows() + tileSize - 1) / tileSize;
+            this.tileCols = (window.getCols() + tileSize - 1) / tileSize;
+            this.firstTile = new int[tileRows];
+            this.lastTile = new int[tileRows];
+            // As the bounds of the window increase monotonically, so do the ranges of tiles.
+            for (int ti = 0; ti < tileRows; ti++) {
+                int lastRow = Math.min(window.getRows(), (ti + 1) * tileSize) - 1;
+                firstTile[ti] = window.getMin(ti * tileSize) / tileSize;
+                lastTile[ti] = window.getMax(lastRow) / tileSize;
+            }
+            this.bottom = new double[window.getCols()];
+            this.right = new double[window.getRows()];
+            this.corners = new double[(tileRows + 1) * (tileCols + 1)];
+            Arrays.fill(bottom, Double.POSITIVE_INFINITY);
+            Arrays.fill(right, Double.POSITIVE_INFINITY);
+            Arrays.fill(corners, Double.POSITIVE_INFINITY);
+        }
+
+        @Override
+        protected void compute() {
+            List<Tile> tiles = new ArrayList<>();
+            for (int d = 0; d < tileRows + tileCols - 1; d++) {
+                tiles.clear();
+                for (int ti = Math.max(0, d - tileCols + 1); ti <= Math.min(d, tileRows - 1); ti++) {
+                    int tj = d - ti;
+                    if (tj >= firstTile[ti] && tj <= lastTile[ti]) {
+                        tiles.add(new Tile(this, ti, tj));
+                    }
+                }
+                // The tiles left and above of the window keep infinite borders, which is their
+                // correct content. The ranges being monotonic, no tile reads the border of a tile
+                // which was skipped after computed tiles wrote it.
+                if (tiles.size() == 1) {
+                    tiles.get(0).invoke();
+                } else {
+                    invokeAll(tiles);
+                }
+            }
+        }
+
+        /**
+         * Gets the result, once all anti-diagonals are computed.
+         *
+         * @return The accumulated (not normalized) cost of the last cell.
+         */
+        double getCost() {
+            return bottom[bottom.length - 1];
+        }
+
+        /**
+         * Computes one tile from its borders, and replaces the borders with its own last row and
+         * column.
+         */
+        void computeTile(int ti, int tj) {
+            int r0 = ti * tileSize;
+            int r1 = Math.min(window.getRows(), r0 + tileSize);
+            int c0 = tj * tileSize;
+            int c1 = Math.min(window.getCols(), c0 + tileSize);
+            int width = c1 - c0;
+
+            // Index 0 holds the cell left of the row, index k + 1 the cell in column c0 + k.
+            double[] prev = new double[width + 1];
+            double[] cur = new double[width + 1];
+            prev[0] = corners[ti * (tileCols + 1) + tj];
+            System.arraycopy(bottom, c0, prev, 1, width);
+
+            for (int i = r0; i < r1; i++) {
+                cur[0] = right[i];
+                int min = Math.max(c0, window.getMin(i));
+                int max = Math.min(c1 - 1, window.getMax(i));
+                Arrays.fill(cur, 1, width + 1, Double.POSITIVE_INFINITY);
+                if (min <= max) {
+                    metric.distances(src, i, tar, min, max + 1, cur, min - c0 + 1);
+                }
+                for (int j = min; j <= max; j++) {
+                    int k = j - c0 + 1;
+                    double best;
+                    if (i == 0 && j == 0) {
+                        best = 0.0;
+                    } else {
+                        best = Math.min(Math.min(prev[k], prev[k - 1]), cur[k - 1]);
+                    }
+                    cur[k] += best;
+                }
+                // This row's left border has been read, so it can be replaced by the right one.
+                right[i] = cur[width];
+                double[] tmp = prev;
+                prev = cur;
+                cur = tmp;
+            }
+            System.arraycopy(prev, 1, bottom, c0, width);
+            corners[(ti + 1) * (tileCols + 1) + tj + 1] = prev[width];
+        }
+    }
+
+    /**
+     * The computation of one tile.
+     */
+    private static class Tile extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Wavefront wavefront;
+        private final int ti;
+        private final int tj;
+
+        Tile(Wavefront wavefront, int ti, int tj) {
+            this.wavefront = wavefront;
+            this.ti = ti;
+            this.tj = tj;
+        }
+
+        @Override
+        protected void compute() {
+            wavefront.computeTile(ti, tj);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+/**
+ * A static spatial index over the points of a path, answering nearest point and nearest segment
+ * queries in O(log n). The points are projected once to a local planar coordinate system (an
+ * equirectangular projection around the mean latitude of the path, in meters), and stored in an
+ * implicit k-d tree, i.e. a permutation of the point indices where the median of every range is
+ * the splitting node.
+ * <p>
+ * The segments are stored in a second k-d tree over their midpoints. Every node also stores the
+ * largest half length of the segments below it, which bounds how much closer than their midpoints
+ * these segments can be. A long segment (e.g. a gap in the GPS recording) therefore only widens
+ * the search in the few nodes above it, instead of in the whole tree.
+ * <p>
+ * The index is meant to be built once, after the average path is computed.
+ */
+public class PathIndex {
+    private final int size;
+    private final double[] x;
+    private final double[] y;
+    private final int[] tree;
+    // the midpoints and half lengths of the segments, the k-d tree over the midpoints, and per
+    // node of that tree the largest half length within its range
+    private final double[] midX;
+    private final double[] midY;
+    private final double[] halfLength;
+    private final int[] segmentTree;
+    private final double[] maxHalfLength;
+    private final double originLon;
+    private final double scaleX;
+
+    /**
+     * Constructor. Builds the index in O(n log n).
+     *
+     * @param path The path to index, must not be empty.
+     */
+    public PathIndex(Trajectory path) {
+        size = path.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("Cannot index an empty path.");
+        }
+        double meanLat = 0;
+        for (int i = 0; i < size; i++) {
+            meanLat += path.getLatitude(i) / size;
+        }
+        originLon = path.getLongitude(0);
+        scaleX = DistanceMetric.RADIUS * Math.cos(Math.toRadians(meanLat));
+
+        x = new double[size];
+        y = new double[size];
+        tree = new int[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = projectX(path.getLongitude(i));
+            y[i] = projectY(path.getLatitude(i));
+            tree[i] = i;
+        }
+        build(tree, x, y, 0, size, 0);
+
+        int segments = size - 1;
+        midX = new double[segments];
+        midY = new double[segments];
+        halfLength = new double[segments];
+        segmentTree = new int[segments];
+        maxHalfLength = new double[segments];
+        for (int i = 0; i < segments; i++) {
+            midX[i] = (x[i] + x[i + 1]) / 2;
+            midY[i] = (y[i] + y[i + 1]) / 2;
+            halfLength[i] = Math.hypot(x[i + 1] - x[i], y[i + 1] - y[i]) / 2;
+            segmentTree[i] = i;
+        }
+        build(segmentTree, midX, midY, 0, segments, 0);
+        collectHalfLengths(0, segments);
+    }
+
+    /**
+     * Gets the number of points in the index.
+     *
+     * @return The number of points of the path.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the point of the path closest to a position.
+     *
+     * @param lon The longitude of the position.
+     * @param lat The latitude of the position.
+     * @return The index of the closest point within the path.
+     */
+    public int nearestPoint(double lon, double lat) {
+        Nearest nearest = new Nearest(projectX(lon), projectY(lat));
+        nearestPoint(0, size, 0, nearest);
+        return nearest.index;
+    }
+
+    /**
+     * Finds the segment of the path closest to a position. Segment i connects the points i and
+     * i + 1. For a path with a single point, the "segment" 0 is that point.
+     *
+     * @param lon The longitude of the position.
+     * @param lat The latitude of the position.
+     * @return The closest segment, and the position on it closest to the given position.
+     */
+    public SegmentMatch nearestSegment(double lon, double lat) {
+        double px = projectX(lon);
+        double py = projectY(lat);
+        if (size == 1) {
+            return new SegmentMatch(0, 0, Math.hypot(x[0] - px, y[0] - py));
+        }
+        SegmentSearch search = new SegmentSearch(px, py);
+        nearestSegment(0, size - 1, 0, search);
+        return new SegmentMatch(search.segment, search.fraction, Math.sqrt(search.distSq));
+    }
+
+    /**
+     * Computes the squared distance between a projected position and a segment.
+     *
+     * @param segment The index of the segment.
+     * @param px      The projected x coordinate of the position.
+     * @param py      The projected y coordinate of the position.
+     * @param result  Receives the fraction along the segment at index 0, and the squared distance
+     *                at index 1.
+     */
+    void segmentDistance(int segment, double px, double py, double[] result) {
+        int next = Math.min(segment + 1, size - 1);
+        double dx = x[next] - x[segment];
+        double dy = y[next] - y[segment];
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq > 0 ? ((px - x[segment]) * dx + (py - y[segment]) * dy) / lengthSq : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x[segment] + t * dx - px;
+        double ey = y[segment] + t * dy - py;
+        result[0] = t;
+        result[1] = ex * ex + ey * ey;
+    }
+
+    /**
+     * Projects a longitude to the local planar coordinate system.
+     *
+     * @param lon The longitude.
+     * @return The x coordinate, in meters.
+     */
+    double projectX(double lon) {
+        return Math.toRadians(lon - originLon) * scaleX;
+    }
+
+    /**
+     * Projects a latitude to the local planar coordinate system.
+     *
+     * @param lat The latitude.
+     * @return The y coordinate, in meters.
+     */
+    double projectY(double lat) {
+        return Math.toRadians(lat) * DistanceMetric.RADIUS;
+    }
+
+    /**
+     * Arranges tree[from, to) such that the median (by xs on even, by ys on odd depths) is in the
+     * middle, with smaller values left and larger values right, and recurses into both halves.
+     */
+    private static void build(int[] tree, double[] xs, double[] ys, int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        double[] coords = depth % 2 == 0 ? xs : ys;
+        int mid = (from + to) >>> 1;
+        select(tree, coords, from, to - 1, mid);
+        build(tree, xs, ys, from, mid, depth + 1);
+        build(tree, xs, ys, mid + 1, to, depth + 1);
+    }
+
+    /**
+     * Stores the largest half length of the segments in segmentTree[from, to) at the node of the
+     * range, i.e. in the middle.
+     *
+     * @return The largest half length, or 0 for an empty range.
+     */
+    private double collectHalfLengths(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int mid = (from + to) >>> 1;
+        double max = Math.max(halfLength[segmentTree[mid]],
+                Math.max(collectHalfLengths(from, mid), collectHalfLengths(mid + 1, to)));
+        maxHalfLength[mid] = max;
+        return max;
+    }
+
+    /**
+     * Quickselect: moves the k-th smallest element of tree[lo, hi] to position k.
+     */
+    private static void select(int[] tree, double[] coords, int lo, int hi, int k) {
+        while (hi > lo) {
+            double pivot = coords[tree[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coords[tree[i]] < pivot) {
+                    i++;
+                }
+                while (coords[tree[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = tree[i];
+                    tree[i] = tree[j];
+                    tree[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void nearestPoint(int from, int to, int depth, Nearest nearest) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        int node = tree[mid];
+        double dx = x[node] - nearest.x;
+        double dy = y[node] - nearest.y;
+        double distSq = dx * dx + dy * dy;
+        if (distSq < nearest.distSq || (distSq == nearest.distSq && node < nearest.index)) {
+            nearest.distSq = distSq;
+            nearest.index = node;
+        }
+
+        // Descend into the side of the position first, and into the other side only if the
+        // splitting line is closer than the best point found so far.
+        double diff = depth % 2 == 0 ? -dx : -dy;
+        if (diff < 0) {
+            nearestPoint(from, mid, depth + 1, nearest);
+            if (diff * diff <= nearest.distSq) {
+                nearestPoint(mid + 1, to, depth + 1, nearest);
+            }
+        } else {
+            nearestPoint(mid + 1, to, depth + 1, nearest);
+            if (diff * diff <= nearest.distSq) {
+                nearestPoint(from, mid, depth + 1, nearest);
+            }
+        }
+    }
+
+    private void nearestSegment(int from, int to, int depth, SegmentSearch search) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        int node = segmentTree[mid];
+        search.check(node);
+
+        // The midpoints on the other side of the splitting line are at least |diff| away, so their
+        // segments at least |diff| minus their largest half length.
+        double diff = depth % 2 == 0 ? search.x - midX[node] : search.y - midY[node];
+        if (diff < 0) {
+            nearestSegment(from, mid, depth + 1, search);
+            if (isCloser(-diff, mid + 1, to, search)) {
+                nearestSegment(mid + 1, to, depth + 1, search);
+            }
+        } else {
+            nearestSegment(mid + 1, to, depth + 1, search);
+            if (isCloser(diff, from, mid, search)) {
+                nearestSegment(from, mid, depth + 1, search);
+            }
+        }
+    }
+
+    /**
+     * Checks if a segment in segmentTree[from, to), whose midpoints are at least the given
+     * distance away, may be as close as the best segment found so far.
+     */
+    private boolean isCloser(double distance, int from, int to, SegmentSearch search) {
+        if (from >= to) {
+            return false;
+        }
+        double bound = distance - maxHalfLength[(from + to) >>> 1];
+        return bound <= 0 || bound * bound <= search.distSq;
+    }
+
+    /**
+     * The state of a nearest point query.
+     */
+    private static class Nearest {
+        final double x;
+        final double y;
+        double distSq = Double.POSITIVE_INFINITY;
+        int index = -1;
+
+        Nearest(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * The state of a nearest segment query.
+     */
+    private class SegmentSearch {
+        final double x;
+        final double y;
+        final double[] result = new double[2];
+        double distSq = Double.POSITIVE_INFINITY;
+        int segment = -1;
+        double fraction = 0;
+
+        SegmentSearch(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        void check(int candidate) {
+            segmentDistance(candidate, x, y, result);
+            if (result[1] < distSq || (result[1] == distSq && candidate < segment)) {
+                distSq = result[1];
+                segment = candidate;
+                fraction = result[0];
+            }
+        }
+    }
+
+    /**
+     * The result of a nearest segment query.
+     */
+    public static class SegmentMatch {
+        private final int segment;
+        private final double fraction;
+        private final double distance;
+
+        /**
+         * Constructor.
+         *
+         * @param segment  The index of the segment.
+         * @param fraction The position along the segment, from 0 (start) to 1 (end).
+         * @param distance The distance between the position and the segment.
+         */
+        SegmentMatch(int segment, double fraction, double distance) {
+            this.segment = segment;
+            this.fraction = fraction;
+            this.distance = distance;
+        }
+
+        /**
+         * Gets the index of the segment, which connects the points with this and the next index.
+         *
+         * @return The index of the segment.
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * Gets the position of the match along the segment.
+         *
+         * @return A value from 0 (at the start of the segment) to 1 (at its end).
+         */
+        public double getFraction() {
+            return fraction;
+        }
+
+        /**
+         * Gets the distance between the queried position and the segment, in the local projection.
+         *
+         * @return The distance in meters.
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * Gets the index of the path point closest to the match, i.e. the start or the end of the
+         * segment.
+         *
+         * @return The index of the point.
+         */
+        public int getNearestPoint() {
+            return fraction <= 0.5 ? segment : segment + 1;
+        }
+    }
+}
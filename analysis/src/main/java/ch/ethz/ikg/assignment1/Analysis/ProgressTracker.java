@@ -0,0 +1,152 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+/**
+ * Follows the progress of a user along a path, by matching every position to a segment of the
+ * path. In contrast to matching every position on its own, the tracker remembers the last matched
+ * segment and only searches a small window around it, mostly ahead of it. This keeps the matching
+ * in amortized O(1) per position, and prevents the match from jumping to another part of the path
+ * which happens to pass close by (e.g. on routes with loops or out-and-back sections).
+ * <p>
+ * Only if the user is far away from the window (e.g. after leaving the path, or at the first
+ * position), the whole path is searched with the {@link PathIndex}.
+ */
+public class ProgressTracker {
+    // the number of segments behind the last match which are searched, to tolerate GPS noise
+    private static final int WINDOW_BEHIND = 1;
+    // the number of segments ahead of the last match which are searched
+    private static final int WINDOW_AHEAD = 8;
+    // if the best match within the window is further away than this (in meters), the user is
+    // considered to have left the window, and the whole path is searched
+    private static final double MAX_OFFSET = 50;
+
+    private final PathIndex index;
+    private final RouteProfile profile;
+    private final int segments;
+    private final double[] result = new double[2];
+
+    private int segment = -1;
+    private double fraction = 0;
+    private double offset = Double.POSITIVE_INFINITY;
+
+    /**
+     * Constructor.
+     *
+     * @param index   The spatial index over the path to follow.
+     * @param profile The profile of the same path.
+     */
+    public ProgressTracker(PathIndex index, RouteProfile profile) {
+        this.index = index;
+        this.profile = profile;
+        this.segments = Math.max(1, profile.size() - 1);
+    }
+
+    /**
+     * Matches a new position of the user to the path.
+     *
+     * @param lon The longitude of the position.
+     * @param lat The latitude of the position.
+     * @return The along-track distance of the matched position from the start of the path, in
+     * meters.
+     */
+    public double update(double lon, double lat) {
+        double px = index.projectX(lon);
+        double py = index.projectY(lat);
+        if (segment < 0 || !matchWindow(px, py)) {
+            PathIndex.SegmentMatch match = index.nearestSegment(lon, lat);
+            segment = match.getSegment();
+            fraction = match.getFraction();
+            offset = match.getDistance();
+        }
+        return getDistanceAlong();
+    }
+
+    /**
+     * Forgets the last match, so the next position is matched against the whole path.
+     */
+    public void reset() {
+        segment = -1;
+        fraction = 0;
+        offset = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Searches the window around the last matched segment. If the best match is at the end of
+     * the window, the window is moved ahead as long as the matches get closer, so that fast
+     * movements (or missed positions) are still followed.
+     *
+     * @return True if a match within {@link #MAX_OFFSET} was found.
+     */
+    private boolean matchWindow(double px, double py) {
+        int best = -1;
+        double bestDistSq = Double.POSITIVE_INFINITY;
+        double bestFraction = 0;
+        int end = Math.min(segments, segment + WINDOW_AHEAD + 1);
+        for (int s = Math.max(0, segment - WINDOW_BEHIND); s < end; s++) {
+            index.segmentDistance(s, px, py, result);
+            if (result[1] < bestDistSq) {
+                bestDistSq = result[1];
+                bestFraction = result[0];
+                best = s;
+            }
+        }
+        while (best == end - 1 && end < segments) {
+            index.segmentDistance(end, px, py, result);
+            if (result[1] >= bestDistSq) {
+                break;
+            }
+            bestDistSq = result[1];
+            bestFraction = result[0];
+            best = end++;
+        }
+
+        if (bestDistSq > MAX_OFFSET * MAX_OFFSET) {
+            return false;
+        }
+        segment = best;
+        fraction = bestFraction;
+        offset = Math.sqrt(bestDistSq);
+        return true;
+    }
+
+    /**
+     * Gets the along-track distance of the last matched position from the start of the path.
+     *
+     * @return The distance in meters, or 0 if no position was matched yet.
+     */
+    public double getDistanceAlong() {
+        if (segment < 0) {
+            return 0;
+        }
+        return profile.getDistance(segment, fraction);
+    }
+
+    /**
+     * Gets the segment of the last match. Segment i connects the points i and i + 1.
+     *
+     * @return The index of the segment, or -1 if no position was matched yet.
+     */
+    public int getSegment() {
+        return segment;
+    }
+
+    /**
+     * Gets the point of the path closest to the last match, i.e. the start or end of the segment.
+     *
+     * @return The index of the point, or -1 if no position was matched yet.
+     */
+    public int getNearestPoint() {
+        if (segment < 0) {
+            return -1;
+        }
+        return fraction <= 0.5 ? segment : Math.min(segment + 1, profile.size() - 1);
+    }
+
+    /**
+     * Gets the distance between the last position and the path.
+     *
+     * @return The distance in meters, or infinity if no position was matched yet.
+     */
+    public double getOffset() {
+        return offset;
+    }
+}
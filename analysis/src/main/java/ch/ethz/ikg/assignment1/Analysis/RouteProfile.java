@@ -0,0 +1,234 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+/**
+ * Precomputed measures along a path: the cumulative along-track distance and elapsed time at
+ * every point, and the speed on every segment. They are computed once when the path is built, so
+ * that the remaining distance, the remaining time and the speed at any point of the path are
+ * simple array reads. The turns of the path are detected as well, so that the distance to the
+ * next turn can be looked up while following the path.
+ */
+public class RouteProfile {
+    // the direction of the path at a point is measured between the points this far (in meters)
+    // before and after it, so that GPS noise between close points is not mistaken for a turn
+    private static final double TURN_WINDOW = 20;
+    // the smallest change of direction (in degrees) which is a turn
+    private static final double TURN_ANGLE = 45;
+
+    private final double[] distance;
+    private final long[] elapsed;
+    private final double[] speed;
+    // the along-track distances of the turns, ascending
+    private final double[] turns;
+
+    /**
+     * Constructor. Computes all measures in O(n).
+     *
+     * @param path The path, must not be empty.
+     */
+    public RouteProfile(Trajectory path) {
+        int size = path.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("Cannot profile an empty path.");
+        }
+        distance = new double[size];
+        elapsed = new long[size];
+        speed = new double[Math.max(1, size - 1)];
+        for (int i = 1; i < size; i++) {
+            double length = path.distance(i - 1, path, i);
+            long duration = Math.abs(path.getTime(i) - path.getTime(i - 1));
+            distance[i] = distance[i - 1] + length;
+            elapsed[i] = path.getTime(i) - path.getTime(0);
+            // km/h, like Trackpoint.speed; segments without duration get no speed
+            speed[i - 1] = duration > 0 ? length / duration * 3600 : 0;
+        }
+        turns = findTurns(path);
+    }
+
+    /**
+     * Finds the turns of the path in O(n): for every point, the direction from the point
+     * {@link #TURN_WINDOW} before it and the direction to the point {@link #TURN_WINDOW} after it
+     * are compared. Consecutive points which turn by more than {@link #TURN_ANGLE} form one turn,
+     * located at the point which turns the most.
+     */
+    private double[] findTurns(Trajectory path) {
+        int size = path.size();
+        double[] found = new double[size];
+        int count = 0;
+        int before = 0;
+        int after = 0;
+        // the open turn: the point turning the most so far, and its angle
+        int turn = -1;
+        double turnAngle = 0;
+        for (int i = 1; i < size - 1; i++) {
+            while (before + 1 < i && distance[i] - distance[before + 1] >= TURN_WINDOW) {
+                before++;
+            }
+            while (after < size - 1 && (after <= i || distance[after] - distance[i] < TURN_WINDOW)) {
+                after++;
+            }
+            double angle = 0;
+            if (distance[i] - distance[before] >= TURN_WINDOW && distance[after] - distance[i] >= TURN_WINDOW) {
+                angle = Math.abs(direction(path, i, after) - direction(path, before, i));
+                angle = Math.min(angle, 360 - angle);
+            }
+            if (angle > TURN_ANGLE) {
+                if (turn < 0 || angle > turnAngle) {
+                    turn = i;
+                    turnAngle = angle;
+                }
+            } else if (turn >= 0) {
+                found[count++] = distance[turn];
+                turn = -1;
+            }
+        }
+        if (turn >= 0) {
+            found[count++] = distance[turn];
+        }
+        double[] turns = new double[count];
+        System.arraycopy(found, 0, turns, 0, count);
+        return turns;
+    }
+
+    /**
+     * Computes the direction from one point to another on an equirectangular projection.
+     *
+     * @return The direction in degrees, from -180 to 180, clockwise from north.
+     */
+    private static double direction(Trajectory path, int from, int to) {
+        double lat = Math.toRadians((path.getLatitude(from) + path.getLatitude(to)) / 2);
+        double dx = (path.getLongitude(to) - path.getLongitude(from)) * Math.cos(lat);
+        double dy = path.getLatitude(to) - path.getLatitude(from);
+        return Math.toDegrees(Math.atan2(dx, dy));
+    }
+
+    /**
+     * Gets the number of points of the path.
+     *
+     * @return The number of points.
+     */
+    public int size() {
+        return distance.length;
+    }
+
+    /**
+     * Gets the length of the path, measured along the path.
+     *
+     * @return The length in meters.
+     */
+    public double getLength() {
+        return distance[distance.length - 1];
+    }
+
+    /**
+     * Gets the time needed for the whole path.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getDuration() {
+        return elapsed[elapsed.length - 1];
+    }
+
+    /**
+     * Gets the along-track distance of a point from the start of the path.
+     *
+     * @param index The index of the point.
+     * @return The distance in meters.
+     */
+    public double getDistance(int index) {
+        return distance[index];
+    }
+
+    /**
+     * Gets the along-track distance of a position on a segment from the start of the path.
+     *
+     * @param segment  The index of the segment, which connects the points segment and segment + 1.
+     * @param fraction The position on the segment, from 0 (start) to 1 (end).
+     * @return The distance in meters.
+     */
+    public double getDistance(int segment, double fraction) {
+        int next = Math.min(segment + 1, distance.length - 1);
+        return distance[segment] + fraction * (distance[next] - distance[segment]);
+    }
+
+    /**
+     * Gets the along-track distance from a point to the end of the path.
+     *
+     * @param index The index of the point.
+     * @return The remaining distance in meters.
+     */
+    public double getRemainingDistance(int index) {
+        return getLength() - distance[index];
+    }
+
+    /**
+     * Gets the time elapsed between the start of the path and a point.
+     *
+     * @param index The index of the point.
+     * @return The elapsed time in milliseconds.
+     */
+    public long getElapsedTime(int index) {
+        return elapsed[index];
+    }
+
+    /**
+     * Gets the time needed from a point to the end of the path, i.e. the estimated time of
+     * arrival relative to the point.
+     *
+     * @param index The index of the point.
+     * @return The remaining time in milliseconds.
+     */
+    public long getRemainingTime(int index) {
+        return getDuration() - elapsed[index];
+    }
+
+    /**
+     * Gets the speed on a segment.
+     *
+     * @param segment The index of the segment, which connects the points segment and segment + 1.
+     * @return The speed in km/h, or 0 if the segment has no duration.
+     */
+    public double getSpeed(int segment) {
+        return speed[segment];
+    }
+
+    /**
+     * Gets the number of turns of the path, i.e. the points where its direction changes by more
+     * than 45 degrees within 20 meters.
+     *
+     * @return The number of turns.
+     */
+    public int getTurnCount() {
+        return turns.length;
+    }
+
+    /**
+     * Gets the along-track distance from a position on the path to the next turn ahead of it.
+     *
+     * @param distanceAlong The along-track distance of the position from the start of the path.
+     * @return The distance in meters, or infinity if there is no turn ahead.
+     */
+    public double getDistanceToNextTurn(double distanceAlong) {
+        int lo = 0;
+        int hi = turns.length;
+        // the first turn not before the position
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (turns[mid] < distanceAlong) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < turns.length ? turns[lo] - distanceAlong : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Gets the average speed between the start of the path and a point.
+     *
+     * @param index The index of the point.
+     * @return The speed in km/h, or 0 at the start of the path.
+     */
+    public double getAverageSpeed(int index) {
+        return elapsed[index] > 0 ? distance[index] / elapsed[index] * 3600 : 0;
+    }
+}
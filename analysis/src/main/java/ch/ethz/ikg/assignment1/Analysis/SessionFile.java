@@ -0,0 +1,542 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+/**
+ * A binary, append-only file format for recorded sessions. Every fix is stored as a fixed-width
+ * record, so writing a fix is a copy into a buffer instead of formatting text, and reading a fix
+ * is a direct access at a computed offset. A record needs 44 bytes, compared to about 100
+ * characters for the same values in a CSV line.
+ * <p>
+ * When a session is closed, a footer with an index is appended, holding the time of every
+ * {@link #BLOCK_SIZE}th record, so that the records around a given time are found by a binary
+ * search. Every record ends with a CRC32 checksum, so that files without a footer (e.g. after a
+ * crash) can still be read: all records up to the first incomplete or corrupt one are used, and
+ * {@link #recover(File)} truncates the file after them and appends the missing footer.
+ * <p>
+ * Layout (big endian): magic, version, record size, then the records (time (long), latitude
+ * and longitude (int, 1e-7 degrees), altitude, speed, bearing, accuracy, heading, temperature
+ * (float), checksum of the preceding 40 bytes (int)), then optionally the footer: the block times
+ * (long each), record count, block count, footer magic.
+ */
+public class SessionFile {
+    private static final int MAGIC = 0x53455331; // "SES1"
+    private static final int FOOTER_MAGIC = 0x53455346; // "SESF"
+    private static final int VERSION = 2;
+    static final int HEADER_SIZE = 4 + 4 + 4;
+    // the size of the values of a record, which are covered by the checksum
+    private static final int PAYLOAD_SIZE = 8 + 4 + 4 + 6 * 4;
+    static final int RECORD_SIZE = PAYLOAD_SIZE + 4;
+    private static final int FOOTER_TAIL_SIZE = 4 + 4 + 4;
+    /**
+     * The number of records per index entry.
+     */
+    static final int BLOCK_SIZE = 256;
+    private static final double FIXED_POINT = 1e7;
+    static final String CSV_HEADER =
+            "TimeStamp;Latitude;Longitude;Altitude;Speed;Bearing;Accuracy;Heading;Temperature\n";
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final long[] blockTimes;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer The content of the file, starting at index 0 of the buffer.
+     * @throws IOException If the buffer does not contain a session.
+     */
+    SessionFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a session file.");
+        }
+        if (buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Unsupported session file version " + buffer.getInt(4) + ".");
+        }
+
+        int count = footerCount(buffer);
+        if (count >= 0) {
+            int indexStart = HEADER_SIZE + count * RECORD_SIZE;
+            blockTimes = new long[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            for (int b = 0; b < blockTimes.length; b++) {
+                blockTimes[b] = buffer.getLong(indexStart + b * 8);
+            }
+        } else {
+            // No (valid) footer: the session was not closed properly, use all valid records.
+            count = validRecords(buffer);
+            blockTimes = new long[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            for (int b = 0; b < blockTimes.length; b++) {
+                blockTimes[b] = buffer.getLong(HEADER_SIZE + b * BLOCK_SIZE * RECORD_SIZE);
+            }
+        }
+        size = count;
+    }
+
+    /**
+     * Reads the record count from the footer.
+     *
+     * @return The number of records, or -1 if the buffer does not end with a valid footer.
+     */
+    private static int footerCount(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE + FOOTER_TAIL_SIZE || buffer.getInt(limit - 4) != FOOTER_MAGIC) {
+            return -1;
+        }
+        int count = buffer.getInt(limit - 12);
+        int blocks = buffer.getInt(limit - 8);
+        long expected = HEADER_SIZE + (long) count * RECORD_SIZE + blocks * 8L + FOOTER_TAIL_SIZE;
+        if (count < 0 || blocks != (count + BLOCK_SIZE - 1) / BLOCK_SIZE || expected != limit) {
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the records from the start of the buffer up to the first incomplete record or the
+     * first record whose checksum does not match, i.e. the records which were completely written.
+     */
+    private static int validRecords(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        ByteBuffer records = buffer.duplicate();
+        int count = 0;
+        for (int offset = HEADER_SIZE; offset + RECORD_SIZE <= buffer.limit(); offset += RECORD_SIZE) {
+            records.position(offset);
+            records.get(payload);
+            crc.reset();
+            crc.update(payload, 0, PAYLOAD_SIZE);
+            if ((int) crc.getValue() != records.getInt()) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Opens a session file by mapping it into memory.
+     *
+     * @param file The file.
+     * @return The opened file.
+     * @throws IOException If the file cannot be read, or is not a valid session file.
+     */
+    public static SessionFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SessionFile(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Repairs a session file which was not closed, e.g. because the app crashed while recording:
+     * everything after the last valid record (an incomplete or corrupt record) is cut off, and the
+     * footer is appended, so that the file can be opened quickly afterwards. Files which were
+     * closed properly are not changed.
+     *
+     * @param file The file.
+     * @return The number of valid records in the file.
+     * @throws IOException If the file cannot be read or written, or is not a session file.
+     */
+    public static int recover(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            SessionFile session = new SessionFile(buffer);
+            if (footerCount(buffer) >= 0) {
+                return session.size;
+            }
+            long end = HEADER_SIZE + (long) session.size * RECORD_SIZE;
+            channel.truncate(end);
+            channel.position(end);
+            ByteBuffer footer = footer(session.blockTimes, session.size);
+            while (footer.hasRemaining()) {
+                channel.write(footer);
+            }
+            return session.size;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates the footer for the given index, ready to be written.
+     */
+    private static ByteBuffer footer(long[] blockTimes, int size) {
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteBuffer footer = ByteBuffer.allocate(blocks * 8 + FOOTER_TAIL_SIZE);
+        for (int b = 0; b < blocks; b++) {
+            footer.putLong(blockTimes[b]);
+        }
+        footer.putInt(size).putInt(blocks).putInt(FOOTER_MAGIC);
+        footer.flip();
+        return footer;
+    }
+
+    /**
+     * Gets the number of records.
+     *
+     * @return The number of records in the file.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the time of a record.
+     *
+     * @param i The index of the record.
+     * @return The time in milliseconds.
+     */
+    public long getTime(int i) {
+        return buffer.getLong(offset(i));
+    }
+
+    /**
+     * Gets the latitude of a record.
+     *
+     * @param i The index of the record.
+     * @return The latitude.
+     */
+    public double getLatitude(int i) {
+        return buffer.getInt(offset(i) + 8) / FIXED_POINT;
+    }
+
+    /**
+     * Gets the longitude of a record.
+     *
+     * @param i The index of the record.
+     * @return The longitude.
+     */
+    public double getLongitude(int i) {
+        return buffer.getInt(offset(i) + 12) / FIXED_POINT;
+    }
+
+    /**
+     * Gets the altitude of a record.
+     *
+     * @param i The index of the record.
+     * @return The altitude in meters, or NaN if not known.
+     */
+    public float getAltitude(int i) {
+        return buffer.getFloat(offset(i) + 16);
+    }
+
+    /**
+     * Gets the speed of a record.
+     *
+     * @param i The index of the record.
+     * @return The speed in m/s, or NaN if not known.
+     */
+    public float getSpeed(int i) {
+        return buffer.getFloat(offset(i) + 20);
+    }
+
+    /**
+     * Gets the bearing (direction of movement) of a record.
+     *
+     * @param i The index of the record.
+     * @return The bearing in degrees, or NaN if not known.
+     */
+    public float getBearing(int i) {
+        return buffer.getFloat(offset(i) + 24);
+    }
+
+    /**
+     * Gets the accuracy of the position of a record.
+     *
+     * @param i The index of the record.
+     * @return The accuracy in meters, or NaN if not known.
+     */
+    public float getAccuracy(int i) {
+        return buffer.getFloat(offset(i) + 28);
+    }
+
+    /**
+     * Gets the heading (direction of the device, from the compass) of a record.
+     *
+     * @param i The index of the record.
+     * @return The heading in degrees, or NaN if not known.
+     */
+    public float getHeading(int i) {
+        return buffer.getFloat(offset(i) + 32);
+    }
+
+    /**
+     * Gets the ambient temperature of a record.
+     *
+     * @param i The index of the record.
+     * @return The temperature in degrees Celsius, or NaN if not known.
+     */
+    public float getTemperature(int i) {
+        return buffer.getFloat(offset(i) + 36);
+    }
+
+    /**
+     * Finds the first record at or after a time, assuming the records are ordered by time. Only
+     * one block of records is searched, which is found in the index.
+     *
+     * @param time The time in milliseconds.
+     * @return The index of the first record with a time not before the given time, or the number
+     * of records if there is none.
+     */
+    public int indexOf(long time) {
+        // the last block starting at or before the time
+        int lo = 0;
+        int hi = blockTimes.length - 1;
+        int block = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockTimes[mid] <= time) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int i = block * BLOCK_SIZE;
+        while (i < size && getTime(i) < time) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Loads all positions into a trajectory.
+     *
+     * @return The trajectory.
+     */
+    public Trajectory toTrajectory() {
+        return toTrajectory(0, size);
+    }
+
+    /**
+     * Loads a range of positions into a trajectory.
+     *
+     * @param from The first record (inclusive).
+     * @param to   The last record (exclusive).
+     * @return The trajectory.
+     */
+    public Trajectory toTrajectory(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") for size " + size);
+        }
+        Trajectory.Builder builder = new Trajectory.Builder(to - from);
+        for (int i = from; i < to; i++) {
+            builder.add(getLongitude(i), getLatitude(i), getTime(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Exports all records as CSV, with a header line and semicolons as separators.
+     *
+     * @param out The writer, which is not closed.
+     * @throws IOException If the writer fails.
+     */
+    public void exportCsv(Writer out) throws IOException {
+        out.write(CSV_HEADER);
+        exportCsvRecords(out);
+    }
+
+    /**
+     * Exports all records as CSV lines, without the header.
+     */
+    void exportCsvRecords(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        for (int i = 0; i < size; i++) {
+            line.setLength(0);
+            line.append(getTime(i)).append(';');
+            appendFixed(line, buffer.getInt(offset(i) + 8)).append(';');
+            appendFixed(line, buffer.getInt(offset(i) + 12));
+            float[] values = {getAltitude(i), getSpeed(i), getBearing(i), getAccuracy(i),
+                    getHeading(i), getTemperature(i)};
+            for (float value : values) {
+                line.append(';');
+                if (!Float.isNaN(value)) {
+                    line.append(value);
+                }
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    /**
+     * Exports all records as a GPX file with one track. Altitude and time are exported as well.
+     *
+     * @param out The writer, which is not closed.
+     * @throws IOException If the writer fails.
+     */
+    public void exportGpx(Writer out) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"Bikr\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<trk><trkseg>\n");
+        StringBuilder point = new StringBuilder(160);
+        for (int i = 0; i < size; i++) {
+            point.setLength(0);
+            point.append("<trkpt lat=\"");
+            appendFixed(point, buffer.getInt(offset(i) + 8)).append("\" lon=\"");
+            appendFixed(point, buffer.getInt(offset(i) + 12)).append("\">");
+            if (!Float.isNaN(getAltitude(i))) {
+                point.append("<ele>").append(getAltitude(i)).append("</ele>");
+            }
+            point.append("<time>").append(format.format(new Date(getTime(i)))).append("</time></trkpt>\n");
+            out.write(point.toString());
+        }
+        out.write("</trkseg></trk>\n</gpx>\n");
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of range for size " + size);
+        }
+        return HEADER_SIZE + i * RECORD_SIZE;
+    }
+
+    /**
+     * Appends a fixed-point coordinate with all 7 decimals, e.g. "47.4086897".
+     */
+    private static StringBuilder appendFixed(StringBuilder sb, int fixed) {
+        long value = fixed;
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        String decimals = Long.toString(value % (long) FIXED_POINT);
+        sb.append(value / (long) FIXED_POINT).append('.');
+        for (int k = decimals.length(); k < 7; k++) {
+            sb.append('0');
+        }
+        return sb.append(decimals);
+    }
+
+    /**
+     * Appends records to a new session file. The records are collected in a buffer, which is
+     * written to the file when it is full or {@link #flush()} is called. {@link #close()} writes
+     * the footer.
+     */
+    public static class Appender implements Closeable {
+        // the number of records buffered before they are written
+        private static final int BUFFERED_RECORDS = 64;
+
+        private final FileOutputStream out;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+        private final CRC32 crc = new CRC32();
+        private long[] blockTimes = new long[16];
+        private int size = 0;
+
+        /**
+         * Constructor. Creates (or truncates) the file and writes the header.
+         *
+         * @param file The file.
+         * @throws IOException If the file cannot be created.
+         */
+        public Appender(File file) throws IOException {
+            out = new FileOutputStream(file);
+            channel = out.getChannel();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        }
+
+        /**
+         * Appends a record. Unknown values may be given as NaN.
+         *
+         * @param time        The time in milliseconds.
+         * @param latitude    The latitude.
+         * @param longitude   The longitude.
+         * @param altitude    The altitude in meters.
+         * @param speed       The speed in m/s.
+         * @param bearing     The bearing (direction of movement) in degrees.
+         * @param accuracy    The accuracy of the position in meters.
+         * @param heading     The heading of the device in degrees.
+         * @param temperature The ambient temperature in degrees Celsius.
+         * @throws IOException If the buffer cannot be written.
+         */
+        public void append(long time, double latitude, double longitude, float altitude, float speed,
+                           float bearing, float accuracy, float heading, float temperature)
+                throws IOException {
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            if (size % BLOCK_SIZE == 0) {
+                int block = size / BLOCK_SIZE;
+                if (block == blockTimes.length) {
+                    blockTimes = Arrays.copyOf(blockTimes, block * 2);
+                }
+                blockTimes[block] = time;
+            }
+            int start = buffer.position();
+            buffer.putLong(time)
+                    .putInt((int) Math.round(latitude * FIXED_POINT))
+                    .putInt((int) Math.round(longitude * FIXED_POINT))
+                    .putFloat(altitude).putFloat(speed).putFloat(bearing).putFloat(accuracy)
+                    .putFloat(heading).putFloat(temperature);
+            crc.reset();
+            crc.update(buffer.array(), start, PAYLOAD_SIZE);
+            buffer.putInt((int) crc.getValue());
+            size++;
+        }
+
+        /**
+         * Writes the buffered records to the file.
+         *
+         * @throws IOException If the file cannot be written.
+         */
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Gets the number of records appended so far.
+         *
+         * @return The number of records.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the remaining records and the footer, and closes the file.
+         *
+         * @throws IOException If the file cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer footer = footer(blockTimes, size);
+                while (footer.hasRemaining()) {
+                    channel.write(footer);
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A directory of recorded sessions, each stored in one or more segments (i.e. {@link SessionFile}s).
+ * A recording starts a new segment for every session and whenever the current segment reaches
+ * its maximum number of records, so no file grows without bound, even when recording all day.
+ * Segments are named "session-&lt;start&gt;-&lt;number&gt;.bin", where start is the start time of
+ * the session in milliseconds.
+ * <p>
+ * A segment which was being written when the app was killed has no footer and may end with a
+ * partial record. {@link #recover()} repairs all such segments, which should be done before a new
+ * recording is started.
+ */
+public class SessionLog {
+    /**
+     * The default maximum number of records per segment, about 2.3 hours at one fix per second
+     * and 360 kB per file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 8192;
+    private static final String PREFIX = "session-";
+    private static final String SUFFIX = ".bin";
+    // appended to the name of segments which cannot be repaired, which hides them from the log
+    private static final String QUARANTINE_SUFFIX = ".bad";
+
+    private final File directory;
+    private final int segmentSize;
+
+    /**
+     * Constructor, using segments of {@link #DEFAULT_SEGMENT_SIZE} records.
+     *
+     * @param directory The directory containing the segments.
+     */
+    public SessionLog(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory   The directory containing the segments.
+     * @param segmentSize The maximum number of records per segment.
+     */
+    public SessionLog(File directory, int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("The segment size must be positive.");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Repairs all segments which were not closed properly, see {@link SessionFile#recover(File)}.
+     * Segments which cannot be read at all because not even their header was written are deleted.
+     * Segments which cannot be repaired otherwise (e.g. with a corrupt header) are renamed to
+     * "session-&lt;start&gt;-&lt;number&gt;.bin.bad", so that they are kept for inspection but do
+     * not prevent new recordings.
+     *
+     * @return The number of segments which were repaired, deleted or renamed.
+     */
+    public int recover() {
+        int repaired = 0;
+        for (File segment : listSegments()) {
+            long length = segment.length();
+            try {
+                SessionFile.recover(segment);
+            } catch (IOException e) {
+                if (segment.length() < SessionFile.HEADER_SIZE) {
+                    segment.delete();
+                } else {
+                    segment.renameTo(new File(directory, segment.getName() + QUARANTINE_SUFFIX));
+                }
+                repaired++;
+                continue;
+            }
+            if (segment.length() != length) {
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+
+    /**
+     * Gets the start times of all sessions.
+     *
+     * @return The start times in milliseconds, in ascending order.
+     */
+    public long[] getSessions() {
+        List<File> segments = listSegments();
+        long[] sessions = new long[segments.size()];
+        int count = 0;
+        for (File segment : segments) {
+            long start = parse(segment)[0];
+            if (count == 0 || sessions[count - 1] != start) {
+                sessions[count++] = start;
+            }
+        }
+        return Arrays.copyOf(sessions, count);
+    }
+
+    /**
+     * Gets the segments of a session.
+     *
+     * @param session The start time of the session.
+     * @return The segment files, in the order they were written.
+     */
+    public List<File> getSegments(long session) {
+        List<File> segments = new ArrayList<File>();
+        for (File segment : listSegments()) {
+            if (parse(segment)[0] == session) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Loads all positions of a session into a trajectory.
+     *
+     * @param session The start time of the session.
+     * @return The trajectory.
+     * @throws IOException If a segment cannot be read.
+     */
+    public Trajectory load(long session) throws IOException {
+        List<SessionFile> files = new ArrayList<SessionFile>();
+        int size = 0;
+        for (File segment : getSegments(session)) {
+            SessionFile file = SessionFile.open(segment);
+            files.add(file);
+            size += file.size();
+        }
+        Trajectory.Builder builder = new Trajectory.Builder(size);
+        for (SessionFile file : files) {
+            for (int i = 0; i < file.size(); i++) {
+                builder.add(file.getLongitude(i), file.getLatitude(i), file.getTime(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Exports all records of a session as one CSV file, see {@link SessionFile#exportCsv(Writer)}.
+     *
+     * @param session The start time of the session.
+     * @param out     The writer, which is not closed.
+     * @throws IOException If a segment cannot be read or the writer fails.
+     */
+    public void exportCsv(long session, Writer out) throws IOException {
+        out.write(SessionFile.CSV_HEADER);
+        for (File segment : getSegments(session)) {
+            SessionFile.open(segment).exportCsvRecords(out);
+        }
+    }
+
+    /**
+     * Starts recording a new session.
+     *
+     * @param session The start time of the session, which identifies it.
+     * @return The recording, which must be closed at the end of the session.
+     * @throws IOException If the first segment cannot be created.
+     */
+    public Recording start(long session) throws IOException {
+        directory.mkdirs();
+        return new Recording(session);
+    }
+
+    private File segmentFile(long session, int number) {
+        return new File(directory, PREFIX + session + "-" + number + SUFFIX);
+    }
+
+    /**
+     * Lists all segments of all sessions, ordered by session and number.
+     */
+    private List<File> listSegments() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX) && parse(name) != null;
+            }
+        });
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long[] pa = parse(a);
+                long[] pb = parse(b);
+                if (pa[0] != pb[0]) {
+                    return pa[0] < pb[0] ? -1 : 1;
+                }
+                return pa[1] < pb[1] ? -1 : (pa[1] == pb[1] ? 0 : 1);
+            }
+        });
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+
+    private static long[] parse(File segment) {
+        return parse(segment.getName());
+    }
+
+    /**
+     * Parses the name of a segment.
+     *
+     * @return The start time of the session and the number of the segment, or null if the name
+     * is not the name of a segment.
+     */
+    private static long[] parse(String name) {
+        String id = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+        int dash = id.lastIndexOf('-');
+        try {
+            return new long[]{Long.parseLong(id.substring(0, dash)), Long.parseLong(id.substring(dash + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The recording of a session, which appends records to the current segment and starts the
+     * next segment when it is full.
+     */
+    public class Recording implements Closeable {
+        private final long session;
+        private int number = 0;
+        private SessionFile.Appender appender;
+
+        private Recording(long session) throws IOException {
+            this.session = session;
+            this.appender = new SessionFile.Appender(segmentFile(session, number));
+        }
+
+        /**
+         * Appends a record, see
+         * {@link SessionFile.Appender#append(long, double, double, float, float, float, float, float, float)}.
+         * If the current segment is full, it is closed and the record is appended to a new one.
+         *
+         * @throws IOException If a segment cannot be written.
+         */
+        public void append(long time, double latitude, double longitude, float altitude, float speed,
+                           float bearing, float accuracy, float heading, float temperature)
+                throws IOException {
+            if (appender.size() >= segmentSize) {
+                appender.close();
+                appender = new SessionFile.Appender(segmentFile(session, ++number));
+            }
+            appender.append(time, latitude, longitude, altitude, speed, bearing, accuracy, heading,
+                    temperature);
+        }
+
+        /**
+         * Writes the buffered records to the current segment.
+         *
+         * @throws IOException If the segment cannot be written.
+         */
+        public void flush() throws IOException {
+            appender.flush();
+        }
+
+        /**
+         * Gets the start time of the session.
+         *
+         * @return The start time in milliseconds.
+         */
+        public long getSession() {
+            return session;
+        }
+
+        /**
+         * Closes the current segment, which writes its footer.
+         *
+         * @throws IOException If the segment cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            appender.close();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the reference trajectories which are most similar to a query trajectory, using the cost of
+ * the dynamic time warping as similarity measure. To avoid computing the full (quadratic) dynamic
+ * time warping for every reference, cheap lower bounds are evaluated first:
+ * <ul>
+ * <li>LB_Kim: every warping path aligns the first and the last points of both trajectories.</li>
+ * <li>LB_Keogh: every query point is aligned with at least one reference point inside the window,
+ * so its distance to the bounding box (envelope) of these points is a lower bound.</li>
+ * </ul>
+ * References whose lower bound is already worse than the k-th best match found so far are skipped,
+ * and the remaining dynamic time warpings are abandoned as soon as they exceed it.
+ */
+public class SimilaritySearch {
+    private final List<Trajectory> references;
+    private final List<Projection> projections;
+    private final int radius;
+    private final DistanceMetric metric;
+
+    /**
+     * Constructor, using the haversine distance between points.
+     *
+     * @param references The reference trajectories to search in.
+     * @param radius     The radius of the Sakoe-Chiba band used for the dynamic time warping, or a
+     *                   negative value to use the unconstrained dynamic time warping.
+     */
+    public SimilaritySearch(List<Trajectory> references, int radius) {
+        this(references, radius, DistanceMetric.HAVERSINE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param references The reference trajectories to search in.
+     * @param radius     The radius of the Sakoe-Chiba band used for the dynamic time warping, or a
+     *                   negative value to use the unconstrained dynamic time warping.
+     * @param metric     The distance metric between points.
+     */
+    public SimilaritySearch(List<Trajectory> references, int radius, DistanceMetric metric) {
+        this.metric = metric;
+        this.references = new ArrayList<>(references);
+        this.projections = new ArrayList<>(references.size());
+        for (Trajectory reference : references) {
+            projections.add(new Projection(reference));
+        }
+        this.radius = radius;
+    }
+
+    /**
+     * Finds the k references most similar to the query.
+     *
+     * @param query The query trajectory, e.g. a freshly recorded ride.
+     * @param k     The number of references to return.
+     * @return The k best matches (or fewer, if there are less references), ordered by increasing
+     * cost.
+     */
+    public List<Match> nearest(Trajectory query, int k) {
+        if (k <= 0 || query.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Projection queryProjection = new Projection(query);
+
+        // Order the candidates by their cheapest lower bound, so that good matches are found early.
+        List<Match> candidates = new ArrayList<>(references.size());
+        for (int r = 0; r < references.size(); r++) {
+            if (!references.get(r).isEmpty()) {
+                candidates.add(new Match(r, lbKim(query, references.get(r), metric)));
+            }
+        }
+        Collections.sort(candidates, BY_COST);
+
+        // The k best matches so far, with the worst one on top.
+        PriorityQueue<Match> best = new PriorityQueue<>(k, Collections.reverseOrder(BY_COST));
+        for (Match candidate : candidates) {
+            double threshold = best.size() < k ? Double.POSITIVE_INFINITY : best.peek().getCost();
+            if (candidate.getCost() >= threshold) {
+                // All following candidates have an even higher lower bound.
+                break;
+            }
+
+            Trajectory reference = references.get(candidate.getIndex());
+            Window window = window(query.size(), reference.size());
+            double[] rowBounds = lbKeogh(queryProjection, projections.get(candidate.getIndex()), window, metric);
+            double[] remaining = new double[query.size()];
+            for (int i = query.size() - 2; i >= 0; i--) {
+                remaining[i] = remaining[i + 1] + rowBounds[i + 1];
+            }
+            double keogh = (remaining[0] + rowBounds[0]) / (query.size() + reference.size());
+            if (keogh >= threshold) {
+                continue;
+            }
+
+            double cost = DynamicTimeWarp.cost(query, reference, window, metric, threshold, remaining);
+            if (cost < threshold) {
+                if (best.size() == k) {
+                    best.poll();
+                }
+                best.add(new Match(candidate.getIndex(), cost));
+            }
+        }
+
+        List<Match> result = new ArrayList<>(best);
+        Collections.sort(result, BY_COST);
+        return result;
+    }
+
+    private Window window(int rows, int cols) {
+        return radius < 0 ? Window.full(rows, cols) : Window.sakoeChiba(rows, cols, radius);
+    }
+
+    /**
+     * Computes the LB_Kim lower bound, based on the first and last points.
+     *
+     * @param query     The query trajectory.
+     * @param reference The reference trajectory.
+     * @param metric    The distance metric.
+     * @return A lower bound of the normalized dynamic time warping cost.
+     */
+    static double lbKim(Trajectory query, Trajectory reference, DistanceMetric metric) {
+        int n = query.size();
+        int m = reference.size();
+        double bound = metric.distance(query.getLongitude(0), query.getLatitude(0),
+                reference.getLongitude(0), reference.getLatitude(0));
+        if (n > 1 || m > 1) {
+            bound += metric.distance(query.getLongitude(n - 1), query.getLatitude(n - 1),
+                    reference.getLongitude(m - 1), reference.getLatitude(m - 1));
+        }
+        return bound / (n + m);
+    }
+
+    /**
+     * Computes the LB_Keogh lower bound for every query point: the distance between the point and
+     * the envelope of all reference points it may be aligned with.
+     *
+     * @param query     The projected query trajectory.
+     * @param reference The projected reference trajectory.
+     * @param window    The window of the dynamic time warping.
+     * @param metric    The distance metric.
+     * @return For every query point, a lower bound of its contribution to the cost, in units of the
+     * metric.
+     */
+    static double[] lbKeogh(Projection query, Projection reference, Window window, DistanceMetric metric) {
+        int n = window.getRows();
+        // The metric scales the longitudes by (at most) the cosine of the latitude farthest from
+        // the equator, which makes sure that east-west distances are underestimated.
+        double maxAbsLat = Math.max(query.maxAbsLat, reference.maxAbsLat);
+        double[] minX = new double[n];
+        double[] maxX = new double[n];
+        double[] minY = new double[n];
+        double[] maxY = new double[n];
+        envelope(reference.x, window, minX, maxX);
+        envelope(reference.y, window, minY, maxY);
+
+        double[] bounds = new double[n];
+        for (int i = 0; i < n; i++) {
+            double dx = Math.max(0, Math.max(minX[i] - query.x[i], query.x[i] - maxX[i]));
+            double dy = Math.max(0, Math.max(minY[i] - query.y[i], query.y[i] - maxY[i]));
+            bounds[i] = metric.lowerBound(dx, dy, maxAbsLat);
+        }
+        return bounds;
+    }
+
+    /**
+     * Computes the minimum and maximum of the values inside the window for every row. Since the
+     * window bounds are increasing, this can be done in linear time with two monotonic queues.
+     */
+    private static void envelope(double[] values, Window window, double[] min, double[] max) {
+        int[] minQueue = new int[values.length];
+        int[] maxQueue = new int[values.length];
+        int minHead = 0, minTail = 0, maxHead = 0, maxTail = 0;
+        int next = 0;
+        for (int i = 0; i < window.getRows(); i++) {
+            // Add the new columns of this row.
+            for (; next <= window.getMax(i); next++) {
+                while (minTail > minHead && values[minQueue[minTail - 1]] >= values[next]) {
+                    minTail--;
+                }
+                minQueue[minTail++] = next;
+                while (maxTail > maxHead && values[maxQueue[maxTail - 1]] <= values[next]) {
+                    maxTail--;
+                }
+                maxQueue[maxTail++] = next;
+            }
+            // Remove the columns which are not part of this row anymore.
+            while (minQueue[minHead] < window.getMin(i)) {
+                minHead++;
+            }
+            while (maxQueue[maxHead] < window.getMin(i)) {
+                maxHead++;
+            }
+            min[i] = values[minQueue[minHead]];
+            max[i] = values[maxQueue[maxHead]];
+        }
+    }
+
+    private static final Comparator<Match> BY_COST = new Comparator<Match>() {
+        @Override
+        public int compare(Match a, Match b) {
+            return Double.compare(a.getCost(), b.getCost());
+        }
+    };
+
+    /**
+     * A trajectory projected to meters, where x still has to be multiplied by the cosine of the
+     * reference latitude.
+     */
+    static class Projection {
+        final double[] x;
+        final double[] y;
+        final double maxAbsLat;
+
+        Projection(Trajectory trajectory) {
+            int size = trajectory.size();
+            x = new double[size];
+            y = new double[size];
+            double maxLat = 0;
+            for (int i = 0; i < size; i++) {
+                double lat = Math.toRadians(trajectory.getLatitude(i));
+                x[i] = DistanceMetric.RADIUS * Math.toRadians(trajectory.getLongitude(i));
+                y[i] = DistanceMetric.RADIUS * lat;
+                maxLat = Math.max(maxLat, Math.abs(lat));
+            }
+            maxAbsLat = maxLat;
+        }
+    }
+
+    /**
+     * A reference trajectory found by the search.
+     */
+    public static class Match {
+        private final int index;
+        private final double cost;
+
+        /**
+         * Constructor.
+         *
+         * @param index The index of the reference trajectory.
+         * @param cost  The cost of the dynamic time warping between query and reference.
+         */
+        Match(int index, double cost) {
+            this.index = index;
+            this.cost = cost;
+        }
+
+        /**
+         * Gets the index of the reference trajectory, as passed to the constructor of the search.
+         *
+         * @return The index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the cost, or similarity value, between query and reference.
+         *
+         * @return The cost of the dynamic time warping.
+         */
+        public double getCost() {
+            return cost;
+        }
+    }
+}
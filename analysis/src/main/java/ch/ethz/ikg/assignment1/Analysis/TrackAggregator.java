@@ -0,0 +1,210 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Aggregates several trajectories into one "average" trajectory, based on the dynamic time warping.
+ * Two modes are supported:
+ * <ul>
+ * <li>{@link #average(List)} merges the trajectories pairwise in a balanced tree, i.e. in
+ * log2(n) rounds, where the merges of one round run in parallel.</li>
+ * <li>{@link #barycenter(List, int)} implements DTW barycenter averaging (DBA), which iteratively
+ * aligns all trajectories with the current average and moves every average point to the
+ * barycenter of the points aligned with it.</li>
+ * </ul>
+ */
+public class TrackAggregator {
+    private final DynamicTimeWarp.Strategy strategy;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor.
+     *
+     * @param strategy The strategy used to align two trajectories.
+     * @param executor The executor running the alignments. It is not shut down by the aggregator.
+     */
+    public TrackAggregator(DynamicTimeWarp.Strategy strategy, ExecutorService executor) {
+        this.strategy = strategy;
+        this.executor = executor;
+    }
+
+    /**
+     * Computes the average of all trajectories by a balanced pairwise tree reduction. Every
+     * merged trajectory is weighted by the number of input trajectories it represents, so that
+     * all inputs contribute equally to the result.
+     *
+     * @param tracks The trajectories to aggregate.
+     * @return The average trajectory, or null if no trajectories are given.
+     * @throws InterruptedException If the thread is interrupted while waiting for the merges.
+     */
+    public Trajectory average(List<Trajectory> tracks) throws InterruptedException {
+        List<Trajectory> level = new ArrayList<>(tracks);
+        List<Integer> weights = new ArrayList<>(tracks.size());
+        for (int i = 0; i < tracks.size(); i++) {
+            weights.add(1);
+        }
+
+        while (level.size() > 1) {
+            // Merge neighbours pairwise, all pairs of this round in parallel.
+            List<Callable<Trajectory>> merges = new ArrayList<>(level.size() / 2);
+            List<Integer> nextWeights = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                merges.add(mergeTask(level.get(i), weights.get(i), level.get(i + 1), weights.get(i + 1)));
+                nextWeights.add(weights.get(i) + weights.get(i + 1));
+            }
+
+            List<Trajectory> next = new ArrayList<>(nextWeights.size() + 1);
+            for (Future<Trajectory> future : executor.invokeAll(merges)) {
+                next.add(get(future));
+            }
+            // An odd trajectory is carried over to the next round.
+            if (level.size() % 2 == 1) {
+                next.add(level.get(level.size() - 1));
+                nextWeights.add(weights.get(weights.size() - 1));
+            }
+            level = next;
+            weights = nextWeights;
+        }
+        return level.isEmpty() ? null : level.get(0);
+    }
+
+    /**
+     * Computes the average of all trajectories by DTW barycenter averaging. The average is
+     * initialized with the first trajectory, and refined in the given number of iterations. The
+     * alignments of one iteration run in parallel.
+     *
+     * @param tracks     The trajectories to aggregate.
+     * @param iterations The number of refinement iterations.
+     * @return The average trajectory, or null if no trajectories are given.
+     * @throws InterruptedException If the thread is interrupted while waiting for the alignments.
+     */
+    public Trajectory barycenter(List<Trajectory> tracks, int iterations) throws InterruptedException {
+        if (tracks.isEmpty()) {
+            return null;
+        }
+        Trajectory average = tracks.get(0);
+        for (int it = 0; it < iterations; it++) {
+            final Trajectory current = average;
+            List<Callable<double[][]>> alignments = new ArrayList<>(tracks.size());
+            for (final Trajectory track : tracks) {
+                alignments.add(new Callable<double[][]>() {
+                    @Override
+                    public double[][] call() {
+                        return accumulate(current, track);
+                    }
+                });
+            }
+
+            // Sum up the aligned points of all trajectories for every average point.
+            int size = current.size();
+            double[] lon = new double[size];
+            double[] lat = new double[size];
+            double[] time = new double[size];
+            double[] count = new double[size];
+            for (Future<double[][]> future : executor.invokeAll(alignments)) {
+                double[][] sums = get(future);
+                for (int i = 0; i < size; i++) {
+                    lon[i] += sums[0][i];
+                    lat[i] += sums[1][i];
+                    time[i] += sums[2][i];
+                    count[i] += sums[3][i];
+                }
+            }
+
+            Trajectory.Builder builder = new Trajectory.Builder(size);
+            for (int i = 0; i < size; i++) {
+                builder.add(lon[i] / count[i], lat[i] / count[i], Math.round(time[i] / count[i]));
+            }
+            average = builder.build();
+        }
+        return average;
+    }
+
+    /**
+     * Merges two trajectories into their weighted average. For every point of t0, the points of
+     * t1 which are aligned with it are averaged, and the result is combined with the point of t0
+     * according to the weights.
+     *
+     * @param t0  The first trajectory, which determines the number of points of the result.
+     * @param w0  The weight of the first trajectory.
+     * @param t1  The second trajectory.
+     * @param w1  The weight of the second trajectory.
+     * @param res The dynamic time warping between t0 and t1.
+     * @return The averaged trajectory.
+     */
+    public static Trajectory merge(Trajectory t0, int w0, Trajectory t1, int w1, DynamicTimeWarp.DTWResult res) {
+        WarpPath path = res.getWarpPath();
+        Trajectory.Builder builder = new Trajectory.Builder(t0.size());
+        for (int j = 0; j < path.getSourceCount(); j++) {
+            double lon = 0;
+            double lat = 0;
+            double time = 0;
+            for (int id = path.getFirstTarget(j); id <= path.getLastTarget(j); id++) {
+                lon += t1.getLongitude(id);
+                lat += t1.getLatitude(id);
+                time += t1.getTime(id);
+            }
+            int n = path.getMappedCount(j);
+            double sum = w0 + w1;
+            builder.add((w0 * t0.getLongitude(j) + w1 * lon / n) / sum,
+                    (w0 * t0.getLatitude(j) + w1 * lat / n) / sum,
+                    Math.round((w0 * t0.getTime(j) + w1 * time / n) / sum));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Describes the aggregation including its parameters, e.g. to be used as part of a cache key.
+     *
+     * @return The description of the tree reduction and the alignment strategy.
+     */
+    @Override
+    public String toString() {
+        return "average(" + strategy + ")";
+    }
+
+    private Callable<Trajectory> mergeTask(final Trajectory t0, final int w0, final Trajectory t1, final int w1) {
+        return new Callable<Trajectory>() {
+            @Override
+            public Trajectory call() {
+                return merge(t0, w0, t1, w1, DynamicTimeWarp.compute(t0, t1, strategy));
+            }
+        };
+    }
+
+    /**
+     * Aligns a trajectory with the average, and sums up the aligned points for every average point.
+     *
+     * @return The sums of longitudes, latitudes, times and the number of aligned points.
+     */
+    private double[][] accumulate(Trajectory average, Trajectory track) {
+        WarpPath path = DynamicTimeWarp.compute(average, track, strategy).getWarpPath();
+        double[][] sums = new double[4][average.size()];
+        for (int i = 0; i < average.size(); i++) {
+            for (int id = path.getFirstTarget(i); id <= path.getLastTarget(i); id++) {
+                sums[0][i] += track.getLongitude(id);
+                sums[1][i] += track.getLatitude(id);
+                sums[2][i] += track.getTime(id);
+                sums[3][i]++;
+            }
+        }
+        return sums;
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -58,11 +58,25 @@ public class Trackpoint {
      * @return The distance.
      */
     public double distance(Trackpoint target) {
+        return distance(this.longitude, this.latitude, target.getLongitude(), target.getLatitude());
+    }
+
+    /**
+     * Calculates the great circle distance between two positions given in degrees, using the
+     * haversine formula. This allows the distance to be computed without creating Trackpoints.
+     *
+     * @param sLongitude The longitude of the first position.
+     * @param sLatitude  The latitude of the first position.
+     * @param tLongitude The longitude of the second position.
+     * @param tLatitude  The latitude of the second position.
+     * @return The distance in meters.
+     */
+    static double distance(double sLongitude, double sLatitude, double tLongitude, double tLatitude) {
         // Transform to RAD
-        double sLon = this.longitude * Math.PI / 180;
-        double sLat = this.latitude * Math.PI / 180;
-        double tLon = target.getLongitude() * Math.PI / 180;
-        double tLat = target.getLatitude() * Math.PI / 180;
+        double sLon = sLongitude * Math.PI / 180;
+        double sLat = sLatitude * Math.PI / 180;
+        double tLon = tLongitude * Math.PI / 180;
+        double tLat = tLatitude * Math.PI / 180;
         int radius = 6371000;
 
         // Calculate distance with haversine formula
@@ -77,8 +91,10 @@ public class Trackpoint {
      * @param O is the value on which the haversine function is calculated
      * @return The result of the haversine function is returned
      */
-    private double haversine(double O) {
-        return (1 - Math.cos(O)) / 2;
+    private static double haversine(double O) {
+        // sin^2(O/2) equals (1 - cos(O)) / 2, but does not lose precision for small angles
+        double sin = Math.sin(O / 2);
+        return sin * sin;
     }
 
     /**
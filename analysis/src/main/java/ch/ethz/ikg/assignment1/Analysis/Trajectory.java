@@ -0,0 +1,279 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trajectory, stored column-wise in three parallel primitive arrays (longitude, latitude and
+ * time). Compared to a list of {@link Trackpoint}s, this needs about 24 bytes per fix and allows
+ * constant time random access, which is what the analysis algorithms (e.g. dynamic time warping)
+ * rely on.
+ * <p>
+ * A trajectory is immutable. Sub-ranges created by {@link #slice(int, int)} are views sharing the
+ * underlying arrays, so they do not copy any data.
+ */
+public class Trajectory {
+    private final double[] lon;
+    private final double[] lat;
+    private final long[] time;
+    private final int offset;
+    private final int length;
+
+    /**
+     * Constructor. The arrays are not copied.
+     *
+     * @param lon    The longitudes.
+     * @param lat    The latitudes.
+     * @param time   The times, in milliseconds.
+     * @param offset The index of the first point of this trajectory within the arrays.
+     * @param length The number of points of this trajectory.
+     */
+    private Trajectory(double[] lon, double[] lat, long[] time, int offset, int length) {
+        this.lon = lon;
+        this.lat = lat;
+        this.time = time;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Creates a trajectory from a list of trackpoints.
+     *
+     * @param trackpoints The trackpoints to copy.
+     * @return A new trajectory containing all trackpoints in the same order.
+     */
+    public static Trajectory fromTrackpoints(List<Trackpoint> trackpoints) {
+        Builder builder = new Builder(trackpoints.size());
+        for (Trackpoint tp : trackpoints) {
+            builder.add(tp.getLongitude(), tp.getLatitude(), tp.getTime());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the number of points.
+     *
+     * @return The number of points of this trajectory.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Checks if the trajectory has no points.
+     *
+     * @return True if the trajectory is empty.
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Gets the longitude of a point.
+     *
+     * @param i The index of the point.
+     * @return The longitude.
+     */
+    public double getLongitude(int i) {
+        return lon[offset + checkIndex(i)];
+    }
+
+    /**
+     * Gets the latitude of a point.
+     *
+     * @param i The index of the point.
+     * @return The latitude.
+     */
+    public double getLatitude(int i) {
+        return lat[offset + checkIndex(i)];
+    }
+
+    /**
+     * Gets the time of a point.
+     *
+     * @param i The index of the point.
+     * @return The time, in milliseconds.
+     */
+    public long getTime(int i) {
+        return time[offset + checkIndex(i)];
+    }
+
+    /**
+     * Gets a point as a {@link Trackpoint}. Mainly meant for code that is not performance critical.
+     *
+     * @param i The index of the point.
+     * @return A new trackpoint.
+     */
+    public Trackpoint get(int i) {
+        return new Trackpoint(getLongitude(i), getLatitude(i), getTime(i));
+    }
+
+    /**
+     * Calculates the great circle distance between a point of this trajectory and a point of
+     * another trajectory, using the same haversine formula as {@link Trackpoint#distance(Trackpoint)}.
+     *
+     * @param i     The index of the point in this trajectory.
+     * @param other The other trajectory.
+     * @param j     The index of the point in the other trajectory.
+     * @return The distance in meters.
+     */
+    public double distance(int i, Trajectory other, int j) {
+        return Trackpoint.distance(getLongitude(i), getLatitude(i),
+                other.getLongitude(j), other.getLatitude(j));
+    }
+
+    /**
+     * Calculates the great circle distance between a point of this trajectory and a trackpoint.
+     *
+     * @param i     The index of the point in this trajectory.
+     * @param point The trackpoint.
+     * @return The distance in meters.
+     */
+    public double distance(int i, Trackpoint point) {
+        return Trackpoint.distance(getLongitude(i), getLatitude(i),
+                point.getLongitude(), point.getLatitude());
+    }
+
+    /**
+     * Returns a view of the points from {@code from} (inclusive) to {@code to} (exclusive). No
+     * data is copied.
+     *
+     * @param from The first index of the view.
+     * @param to   The index after the last point of the view.
+     * @return A trajectory sharing the data of this one.
+     */
+    public Trajectory slice(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") for size " + length);
+        }
+        return new Trajectory(lon, lat, time, offset + from, to - from);
+    }
+
+    /**
+     * Copies the longitudes into a new array.
+     *
+     * @return The longitudes of all points.
+     */
+    public double[] longitudes() {
+        return Arrays.copyOfRange(lon, offset, offset + length);
+    }
+
+    /**
+     * Copies the latitudes into a new array.
+     *
+     * @return The latitudes of all points.
+     */
+    public double[] latitudes() {
+        return Arrays.copyOfRange(lat, offset, offset + length);
+    }
+
+    /**
+     * Copies the times into a new array.
+     *
+     * @return The times of all points.
+     */
+    public long[] times() {
+        return Arrays.copyOfRange(time, offset, offset + length);
+    }
+
+    /**
+     * Converts this trajectory to a list of trackpoints.
+     *
+     * @return A new list containing one trackpoint per point.
+     */
+    public List<Trackpoint> toTrackpoints() {
+        List<Trackpoint> trackpoints = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            trackpoints.add(get(i));
+        }
+        return trackpoints;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("Index " + i + " for size " + length);
+        }
+        return i;
+    }
+
+    /**
+     * Builds a {@link Trajectory} point by point. The arrays grow as needed.
+     */
+    public static class Builder {
+        private double[] lon;
+        private double[] lat;
+        private long[] time;
+        private int size = 0;
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param capacity The expected number of points.
+         */
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            lon = new double[capacity];
+            lat = new double[capacity];
+            time = new long[capacity];
+        }
+
+        /**
+         * Appends a point.
+         *
+         * @param longitude The longitude of the point.
+         * @param latitude  The latitude of the point.
+         * @param t         The time of the point, in milliseconds.
+         * @return This builder.
+         */
+        public Builder add(double longitude, double latitude, long t) {
+            if (size == lon.length) {
+                int capacity = lon.length * 2;
+                lon = Arrays.copyOf(lon, capacity);
+                lat = Arrays.copyOf(lat, capacity);
+                time = Arrays.copyOf(time, capacity);
+            }
+            lon[size] = longitude;
+            lat[size] = latitude;
+            time[size] = t;
+            size++;
+            return this;
+        }
+
+        /**
+         * Gets the number of points added so far.
+         *
+         * @return The number of points.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Creates the trajectory. The builder must not be used afterwards, since the arrays are
+         * handed over. Arrays with unused capacity are trimmed first, so that the trajectory (and
+         * all its slices) only keep the memory of its points.
+         *
+         * @return The trajectory.
+         */
+        public Trajectory build() {
+            if (size < lon.length) {
+                lon = Arrays.copyOf(lon, size);
+                lat = Arrays.copyOf(lat, size);
+                time = Arrays.copyOf(time, size);
+            }
+            Trajectory trajectory = new Trajectory(lon, lat, time, 0, size);
+            lon = null;
+            lat = null;
+            time = null;
+            return trajectory;
+        }
+    }
+}
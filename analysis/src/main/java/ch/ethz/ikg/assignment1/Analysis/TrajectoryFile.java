@@ -0,0 +1,279 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A compact binary file format for trajectories, used to cache parsed GPX files. Positions are
+ * stored as fixed-point numbers with 7 decimals (about 1 cm), and both positions and times are
+ * delta- and varint-encoded, which usually needs 4 to 6 bytes per point.
+ * <p>
+ * The points are grouped into blocks. A header index stores the byte offset and the absolute
+ * values of the first point of every block, so a range of points can be decoded without reading
+ * the rest of the file. Files are opened with {@link FileChannel#map}, so only the pages which are
+ * actually decoded are loaded from storage.
+ * <p>
+ * Layout (big endian): magic, version, stamp (long), point count, block size, block count, then per
+ * block (offset, latitude, longitude, time), then the encoded deltas.
+ */
+public class TrajectoryFile {
+    private static final int MAGIC = 0x54524B31; // "TRK1"
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 256;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 4 + 8;
+    private static final double FIXED_POINT = 1e7;
+
+    private final ByteBuffer buffer;
+    private final long stamp;
+    private final int size;
+    private final int blockCount;
+    private final int dataStart;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer The encoded trajectory, starting at index 0 of the buffer.
+     * @throws IOException If the buffer does not contain a valid trajectory.
+     */
+    TrajectoryFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a trajectory file.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported trajectory file version " + buffer.getInt(4) + ".");
+        }
+        stamp = buffer.getLong(8);
+        size = buffer.getInt(16);
+        if (buffer.getInt(20) != BLOCK_SIZE) {
+            throw new IOException("Unsupported block size.");
+        }
+        blockCount = buffer.getInt(24);
+        dataStart = HEADER_SIZE + blockCount * INDEX_ENTRY_SIZE;
+        if (size < 0 || blockCount != (size + BLOCK_SIZE - 1) / BLOCK_SIZE || dataStart > buffer.limit()) {
+            throw new IOException("Corrupt trajectory file.");
+        }
+    }
+
+    /**
+     * Opens a trajectory file by mapping it into memory.
+     *
+     * @param file The file.
+     * @return The opened file.
+     * @throws IOException If the file cannot be read, or is not a valid trajectory file.
+     */
+    public static TrajectoryFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new TrajectoryFile(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes a trajectory to a file. The file is written under a temporary name first and then
+     * renamed, so readers never see a partially written file.
+     *
+     * @param file       The file to write.
+     * @param trajectory The trajectory.
+     * @param stamp      A value identifying the source of the trajectory (e.g. a modification
+     *                   time), which can be used to check if the file is still up to date.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File file, Trajectory trajectory, long stamp) throws IOException {
+        byte[] data = encode(trajectory, stamp);
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + file + ".");
+        }
+    }
+
+    /**
+     * Encodes a trajectory in the file format.
+     *
+     * @param trajectory The trajectory.
+     * @param stamp      The stamp to store in the header.
+     * @return The encoded bytes.
+     */
+    static byte[] encode(Trajectory trajectory, long stamp) {
+        int size = trajectory.size();
+        int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int dataStart = HEADER_SIZE + blockCount * INDEX_ENTRY_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(dataStart);
+        header.putInt(MAGIC).putInt(VERSION).putLong(stamp).putInt(size).putInt(BLOCK_SIZE).putInt(blockCount);
+
+        VarintOutput data = new VarintOutput(size * 6);
+        int prevLat = 0;
+        int prevLon = 0;
+        long prevTime = 0;
+        for (int i = 0; i < size; i++) {
+            int lat = toFixed(trajectory.getLatitude(i));
+            int lon = toFixed(trajectory.getLongitude(i));
+            long time = trajectory.getTime(i);
+            if (i % BLOCK_SIZE == 0) {
+                // The first point of every block is stored in the index.
+                header.putInt(data.size).putInt(lat).putInt(lon).putLong(time);
+            } else {
+                data.writeSigned(lat - prevLat);
+                data.writeSigned(lon - prevLon);
+                data.writeSigned(time - prevTime);
+            }
+            prevLat = lat;
+            prevLon = lon;
+            prevTime = time;
+        }
+
+        byte[] bytes = Arrays.copyOf(header.array(), dataStart + data.size);
+        System.arraycopy(data.bytes, 0, bytes, dataStart, data.size);
+        return bytes;
+    }
+
+    /**
+     * Gets the stamp, as passed to {@link #write(File, Trajectory, long)}.
+     *
+     * @return The stamp.
+     */
+    public long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Gets the number of points.
+     *
+     * @return The number of points stored in the file.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes the whole trajectory.
+     *
+     * @return The trajectory.
+     * @throws IOException If the file is corrupt.
+     */
+    public Trajectory read() throws IOException {
+        return read(0, size);
+    }
+
+    /**
+     * Decodes a range of points. Only the blocks containing the range are read.
+     *
+     * @param from The first point (inclusive).
+     * @param to   The last point (exclusive).
+     * @return A trajectory containing the points of the range.
+     * @throws IOException If the file is corrupt.
+     */
+    public Trajectory read(int from, int to) throws IOException {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") for size " + size);
+        }
+        Trajectory.Builder builder = new Trajectory.Builder(to - from);
+        if (from == to) {
+            return builder.build();
+        }
+        try {
+            ByteBuffer in = buffer.duplicate();
+            int block = from / BLOCK_SIZE;
+            int entry = HEADER_SIZE + block * INDEX_ENTRY_SIZE;
+            in.position(dataStart + buffer.getInt(entry));
+            int lat = buffer.getInt(entry + 4);
+            int lon = buffer.getInt(entry + 8);
+            long time = buffer.getLong(entry + 12);
+
+            for (int i = block * BLOCK_SIZE; i < to; i++) {
+                if (i % BLOCK_SIZE != 0) {
+                    lat += (int) readSigned(in);
+                    lon += (int) readSigned(in);
+                    time += readSigned(in);
+                } else if (i != block * BLOCK_SIZE) {
+                    // Start of the next block; the index holds the absolute values.
+                    entry += INDEX_ENTRY_SIZE;
+                    lat = buffer.getInt(entry + 4);
+                    lon = buffer.getInt(entry + 8);
+                    time = buffer.getLong(entry + 12);
+                }
+                if (i >= from) {
+                    builder.add(lon / FIXED_POINT, lat / FIXED_POINT, time);
+                }
+            }
+        } catch (RuntimeException e) {
+            // e.g. a BufferUnderflowException for truncated files
+            throw new IOException("Corrupt trajectory file.", e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Rounds a coordinate to the fixed-point resolution of the file.
+     *
+     * @param degrees The coordinate, in degrees.
+     * @return The coordinate, in 1e-7 degrees.
+     */
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * FIXED_POINT);
+    }
+
+    /**
+     * Reads a zigzag encoded, variable length number.
+     */
+    private static long readSigned(ByteBuffer in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IOException("Malformed varint.");
+            }
+        }
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A growable byte array, which writes zigzag encoded, variable length numbers.
+     */
+    private static class VarintOutput {
+        byte[] bytes;
+        int size = 0;
+
+        VarintOutput(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeSigned(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            if (size + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((zigzag & ~0x7fL) != 0) {
+                bytes[size++] = (byte) ((zigzag & 0x7f) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[size++] = (byte) zigzag;
+        }
+    }
+}
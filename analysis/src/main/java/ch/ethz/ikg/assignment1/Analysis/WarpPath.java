@@ -0,0 +1,257 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The warping path of a dynamic time warping, i.e. the cells of the cost matrix which align source
+ * and target points, from the first to the last cell. Every step of the path moves to the next
+ * source point, the next target point, or both, so the target points aligned with one source
+ * point always form a contiguous range. The path is stored as these ranges, i.e. two ints per
+ * source point, without any boxing.
+ * <p>
+ * The path can be read per source point ({@link #getFirstTarget(int)}, {@link #getLastTarget(int)}),
+ * as an array of (source, target) pairs ({@link #toPairs()}), or as runs of steps in the same
+ * direction ({@link #iterator()}), which is the most compact form for the mostly diagonal paths
+ * of similar trajectories.
+ */
+public final class WarpPath implements Iterable<WarpPath.Run> {
+    private final int[] first;
+    private final int[] last;
+    private final int targetCount;
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param first       For every source point, the first target point aligned with it.
+     * @param last        For every source point, the last target point aligned with it.
+     * @param targetCount The number of target points.
+     */
+    WarpPath(int[] first, int[] last, int targetCount) {
+        this.first = first;
+        this.last = last;
+        this.targetCount = targetCount;
+        int cells = 0;
+        for (int i = 0; i < first.length; i++) {
+            cells += last[i] - first[i] + 1;
+        }
+        this.size = cells;
+    }
+
+    /**
+     * Gets the number of source points.
+     *
+     * @return The number of source points.
+     */
+    public int getSourceCount() {
+        return first.length;
+    }
+
+    /**
+     * Gets the number of target points.
+     *
+     * @return The number of target points.
+     */
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    /**
+     * Gets the number of cells of the path, i.e. of aligned pairs of points.
+     *
+     * @return The number of cells.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the first target point aligned with a source point.
+     *
+     * @param source The index of the source point.
+     * @return The index of the target point.
+     */
+    public int getFirstTarget(int source) {
+        return first[source];
+    }
+
+    /**
+     * Gets the last target point aligned with a source point.
+     *
+     * @param source The index of the source point.
+     * @return The index of the target point.
+     */
+    public int getLastTarget(int source) {
+        return last[source];
+    }
+
+    /**
+     * Gets the number of target points aligned with a source point.
+     *
+     * @param source The index of the source point.
+     * @return The number of target points, at least one.
+     */
+    public int getMappedCount(int source) {
+        return last[source] - first[source] + 1;
+    }
+
+    /**
+     * Gets all cells of the path as pairs of indices.
+     *
+     * @return The source and target index of every cell, interleaved, i.e. cell k is
+     * (pairs[2 * k], pairs[2 * k + 1]).
+     */
+    public int[] toPairs() {
+        int[] pairs = new int[2 * size];
+        int k = 0;
+        for (int i = 0; i < first.length; i++) {
+            for (int j = first[i]; j <= last[i]; j++) {
+                pairs[k++] = i;
+                pairs[k++] = j;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Gets the path as lists, the representation of {@link DynamicTimeWarp.DTWResult#getPath()}.
+     *
+     * @return For every source point, the list of target points mapped to it.
+     */
+    public List<List<Integer>> toLists() {
+        List<List<Integer>> lists = new ArrayList<>(first.length);
+        for (int i = 0; i < first.length; i++) {
+            List<Integer> targets = new ArrayList<>(last[i] - first[i] + 1);
+            for (int j = first[i]; j <= last[i]; j++) {
+                targets.add(j);
+            }
+            lists.add(targets);
+        }
+        return lists;
+    }
+
+    /**
+     * Iterates over the runs of the path, i.e. the maximal sequences of steps in the same
+     * direction, starting in the first cell. A path of a single cell has no runs.
+     *
+     * @return The iterator over the runs.
+     */
+    @Override
+    public Iterator<Run> iterator() {
+        return new Iterator<Run>() {
+            // the cell at which the next run starts
+            private int i = 0;
+            private int j = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < first.length - 1 || j < last[i];
+            }
+
+            @Override
+            public Run next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int direction = direction(i, j);
+                int startSource = i;
+                int startTarget = j;
+                int length = 0;
+                do {
+                    if (direction != Run.TARGET) {
+                        i++;
+                    }
+                    if (direction != Run.SOURCE) {
+                        j++;
+                    }
+                    length++;
+                } while (hasNext() && direction(i, j) == direction);
+                return new Run(direction, startSource, startTarget, length);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Gets the direction of the step leaving a cell of the path, which must not be the last one.
+     */
+    private int direction(int i, int j) {
+        if (j < last[i]) {
+            return Run.TARGET;
+        }
+        return first[i + 1] == j ? Run.SOURCE : Run.DIAGONAL;
+    }
+
+    /**
+     * A sequence of steps of the path in the same direction.
+     */
+    public static final class Run {
+        /**
+         * Steps to the next source and the next target point.
+         */
+        public static final int DIAGONAL = 0;
+        /**
+         * Steps to the next source point, aligned with the same target point.
+         */
+        public static final int SOURCE = 1;
+        /**
+         * Steps to the next target point, aligned with the same source point.
+         */
+        public static final int TARGET = 2;
+
+        private final int direction;
+        private final int source;
+        private final int target;
+        private final int length;
+
+        Run(int direction, int source, int target, int length) {
+            this.direction = direction;
+            this.source = source;
+            this.target = target;
+            this.length = length;
+        }
+
+        /**
+         * Gets the direction of the steps.
+         *
+         * @return {@link #DIAGONAL}, {@link #SOURCE} or {@link #TARGET}.
+         */
+        public int getDirection() {
+            return direction;
+        }
+
+        /**
+         * Gets the source point of the cell at which the run starts.
+         *
+         * @return The index of the source point.
+         */
+        public int getSource() {
+            return source;
+        }
+
+        /**
+         * Gets the target point of the cell at which the run starts.
+         *
+         * @return The index of the target point.
+         */
+        public int getTarget() {
+            return target;
+        }
+
+        /**
+         * Gets the number of steps, each of which adds one cell to the path.
+         *
+         * @return The number of steps.
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+/**
+ * Describes which cells of the dynamic time warping cost matrix are evaluated. For every source
+ * index (row), the window stores the first and last target index (column) that may be aligned
+ * to it. Restricting the alignment to a band around the diagonal reduces both the time and the
+ * memory needed for the dynamic time warping from O(n*m) to O(n*w), where w is the band width.
+ * <p>
+ * All windows are normalized such that a warping path from the first to the last cell exists.
+ */
+public class Window {
+    private final int rows;
+    private final int cols;
+    private final int[] min;
+    private final int[] max;
+
+    /**
+     * Constructor. The bounds are normalized, i.e. widened where needed so that they are
+     * monotonically increasing and connected.
+     *
+     * @param cols The number of target points (columns).
+     * @param min  The first column of every row (inclusive).
+     * @param max  The last column of every row (inclusive).
+     */
+    Window(int cols, int[] min, int[] max) {
+        if (min.length == 0 || cols <= 0 || min.length != max.length) {
+            throw new IllegalArgumentException("A window needs at least one row and one column.");
+        }
+        this.rows = min.length;
+        this.cols = cols;
+        this.min = min;
+        this.max = max;
+        normalize();
+    }
+
+    /**
+     * Creates a window covering the whole cost matrix, i.e. an unconstrained dynamic time warping.
+     *
+     * @param rows The number of source points.
+     * @param cols The number of target points.
+     * @return The window.
+     */
+    public static Window full(int rows, int cols) {
+        checkSize(rows, cols);
+        int[] min = new int[rows];
+        int[] max = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            max[i] = cols - 1;
+        }
+        return new Window(cols, min, max);
+    }
+
+    /**
+     * Creates a Sakoe-Chiba band, which allows every source point to be aligned with target points
+     * at most {@code radius} positions away from the (scaled) diagonal.
+     *
+     * @param rows   The number of source points.
+     * @param cols   The number of target points.
+     * @param radius The radius of the band, in points.
+     * @return The window.
+     */
+    public static Window sakoeChiba(int rows, int cols, int radius) {
+        checkSize(rows, cols);
+        if (radius < 0) {
+            throw new IllegalArgumentException("The radius must not be negative.");
+        }
+        int[] min = new int[rows];
+        int[] max = new int[rows];
+        double scale = rows > 1 ? (double) (cols - 1) / (rows - 1) : 0;
+        for (int i = 0; i < rows; i++) {
+            double center = i * scale;
+            min[i] = Math.max(0, (int) Math.floor(center) - radius);
+            max[i] = Math.min(cols - 1, (int) Math.ceil(center) + radius);
+        }
+        return new Window(cols, min, max);
+    }
+
+    /**
+     * Creates an Itakura parallelogram. The warping path may locally deviate from the diagonal by
+     * at most the given slope, which results in a narrow window at the start and end of the
+     * trajectories and a wide one in the middle.
+     *
+     * @param rows  The number of source points.
+     * @param cols  The number of target points.
+     * @param slope The maximum slope of the parallelogram, must be greater than 1.
+     * @return The window.
+     */
+    public static Window itakura(int rows, int cols, double slope) {
+        checkSize(rows, cols);
+        if (!(slope > 1)) {
+            throw new IllegalArgumentException("The slope must be greater than 1.");
+        }
+        int[] min = new int[rows];
+        int[] max = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            // Work in normalized coordinates, where both trajectories range from 0 to 1.
+            double x = rows > 1 ? (double) i / (rows - 1) : 0;
+            double lower = Math.max(x / slope, 1 - slope * (1 - x));
+            double upper = Math.min(slope * x, 1 - (1 - x) / slope);
+            min[i] = Math.max(0, (int) Math.floor(lower * (cols - 1)));
+            max[i] = Math.min(cols - 1, (int) Math.ceil(upper * (cols - 1)));
+        }
+        return new Window(cols, min, max);
+    }
+
+    /**
+     * Gets the number of rows, i.e. source points.
+     *
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns, i.e. target points.
+     *
+     * @return The number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the first column of a row that lies inside the window.
+     *
+     * @param row The row.
+     * @return The first column (inclusive).
+     */
+    public int getMin(int row) {
+        return min[row];
+    }
+
+    /**
+     * Gets the last column of a row that lies inside the window.
+     *
+     * @param row The row.
+     * @return The last column (inclusive).
+     */
+    public int getMax(int row) {
+        return max[row];
+    }
+
+    /**
+     * Checks if a cell lies inside the window.
+     *
+     * @param row The row.
+     * @param col The column.
+     * @return True if the cell is evaluated by the dynamic time warping.
+     */
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < rows && col >= min[row] && col <= max[row];
+    }
+
+    /**
+     * Gets the number of cells inside the window.
+     *
+     * @return The number of cells.
+     */
+    public long getCellCount() {
+        long count = 0;
+        for (int i = 0; i < rows; i++) {
+            count += max[i] - min[i] + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the width of the widest row.
+     *
+     * @return The maximum number of cells in one row.
+     */
+    public int getMaxWidth() {
+        int width = 0;
+        for (int i = 0; i < rows; i++) {
+            width = Math.max(width, max[i] - min[i] + 1);
+        }
+        return width;
+    }
+
+    /**
+     * Widens the bounds such that they are monotonically increasing, start in the first and end in
+     * the last cell, and such that every row overlaps (or diagonally touches) the previous one.
+     * This guarantees that a warping path through the window exists.
+     */
+    private void normalize() {
+        min[0] = 0;
+        max[rows - 1] = cols - 1;
+        for (int i = 0; i < rows; i++) {
+            min[i] = Math.max(0, Math.min(min[i], cols - 1));
+            max[i] = Math.max(min[i], Math.min(max[i], cols - 1));
+        }
+        for (int i = 1; i < rows; i++) {
+            max[i] = Math.max(max[i], max[i - 1]);
+        }
+        for (int i = rows - 2; i >= 0; i--) {
+            min[i] = Math.min(min[i], min[i + 1]);
+        }
+        for (int i = 1; i < rows; i++) {
+            if (min[i] > max[i - 1] + 1) {
+                max[i - 1] = min[i] - 1;
+            }
+        }
+    }
+
+    private static void checkSize(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Both trajectories need at least one point.");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the cache of average paths.
+ */
+public class AverageCacheTest {
+
+    @Test
+    public void key_dependsOnContentOnly() throws Exception {
+        Trajectory a = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory b = GpxReaderTest.readAsset("T2_2.gpx");
+        String key = AverageCache.key(Arrays.asList(a, b), "average(exact)");
+
+        // The same content read again, or copied, gives the same key.
+        assertEquals(key, AverageCache.key(Arrays.asList(GpxReaderTest.readAsset("T2_1.gpx"),
+                Trajectory.fromTrackpoints(b.toTrackpoints())), "average(exact)"));
+        assertEquals(40, key.length());
+
+        // Other parameters, another order or a single moved point give another key.
+        assertFalse(key.equals(AverageCache.key(Arrays.asList(a, b), "average(fast(10))")));
+        assertFalse(key.equals(AverageCache.key(Arrays.asList(b, a), "average(exact)")));
+        Trajectory.Builder moved = new Trajectory.Builder(b.size());
+        for (int i = 0; i < b.size(); i++) {
+            moved.add(b.getLongitude(i) + (i == 100 ? 1e-7 : 0), b.getLatitude(i), b.getTime(i));
+        }
+        assertFalse(key.equals(AverageCache.key(Arrays.asList(a, moved.build()), "average(exact)")));
+        assertFalse(key.equals(AverageCache.key(Arrays.asList(a, b.slice(0, b.size() - 1)), "average(exact)")));
+    }
+
+    @Test
+    public void key_isStableAcrossTheTrackCache() throws Exception {
+        // More decimals than a cached track keeps.
+        String gpx = "<gpx><trk><trkseg>"
+                + "<trkpt lat=\"47.37614583\" lon=\"8.54775417\"><time>2017-05-11T10:26:19Z</time></trkpt>"
+                + "<trkpt lat=\"47.37622916\" lon=\"8.54791251\"><time>2017-05-11T10:26:21Z</time></trkpt>"
+                + "</trkseg></trk></gpx>";
+        Trajectory parsed = GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+        File file = File.createTempFile("track", ".trk");
+        try {
+            TrajectoryFile.write(file, parsed, 0);
+            Trajectory cached = TrajectoryFile.open(file).read();
+            assertFalse(parsed.getLatitude(0) == cached.getLatitude(0));
+            assertEquals(AverageCache.key(Arrays.asList(parsed), "average(exact)"),
+                    AverageCache.key(Arrays.asList(cached), "average(exact)"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws Exception {
+        File dir = createDirectory();
+        try {
+            Trajectory track = GpxReaderTest.readAsset("T2_3.gpx");
+            AverageCache cache = new AverageCache(dir, 2);
+            cache.put("a", track);
+            cache.put("b", track);
+            long now = System.currentTimeMillis();
+            assertTrue(new File(dir, "a.avg").setLastModified(now - 20000));
+            assertTrue(new File(dir, "b.avg").setLastModified(now - 10000));
+
+            // Reading a makes b the least recently used entry.
+            assertNotNull(cache.get("a"));
+            cache.put("c", track);
+            assertNotNull(cache.get("a"));
+            assertNull(cache.get("b"));
+            Trajectory cached = cache.get("c");
+            assertEquals(track.size(), cached.size());
+            for (int i = 0; i < track.size(); i++) {
+                assertEquals(track.getLongitude(i), cached.getLongitude(i), 1e-7);
+                assertEquals(track.getLatitude(i), cached.getLatitude(i), 1e-7);
+                assertEquals(track.getTime(i), cached.getTime(i));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void get_rejectsOtherVersionsAndCorruptEntries() throws Exception {
+        File dir = createDirectory();
+        try {
+            AverageCache cache = new AverageCache(dir, 8);
+            Trajectory track = GpxReaderTest.readAsset("T2_1.gpx");
+            // bytes 0-3: magic, 4-7: version, then the trajectory
+            long[][] corruptions = {{0, 'X'}, {7, 1}, {7, 99}, {8, 0}};
+            for (long[] corruption : corruptions) {
+                cache.put("key", track);
+                File file = new File(dir, "key.avg");
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.seek(corruption[0]);
+                    raf.write((int) corruption[1]);
+                } finally {
+                    raf.close();
+                }
+                assertNull(cache.get("key"));
+                assertFalse(file.exists());
+            }
+
+            // A truncated entry.
+            cache.put("key", track);
+            File file = new File(dir, "key.avg");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(raf.length() / 2);
+            } finally {
+                raf.close();
+            }
+            assertNull(cache.get("key"));
+            assertFalse(file.exists());
+            assertNull(cache.get("missing"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static File createDirectory() throws Exception {
+        File directory = File.createTempFile("averages", "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
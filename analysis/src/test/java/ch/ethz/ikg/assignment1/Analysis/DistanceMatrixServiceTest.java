@@ -0,0 +1,160 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the pairwise distance matrix.
+ */
+public class DistanceMatrixServiceTest {
+    private static final int RADIUS = 20;
+
+    @Test
+    public void compute_storesAllPairsAndResumes() throws Exception {
+        File dir = createDirectory();
+        List<Trajectory> tracks = tracks();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            DistanceMatrixService service = service(dir, Double.POSITIVE_INFINITY, executor);
+            DistanceMatrixService.DistanceMatrix matrix = service.compute(tracks.subList(0, 4));
+            assertEquals(6, matrix.getComputedCount());
+            assertEquals(0, matrix.getReusedCount());
+            service.close();
+
+            // Reopened with a new trajectory, in another order: only its row is computed.
+            List<Trajectory> more = new ArrayList<>(tracks);
+            Collections.reverse(more);
+            service = service(dir, Double.POSITIVE_INFINITY, executor);
+            matrix = service.compute(more);
+            assertEquals(4, matrix.getComputedCount());
+            assertEquals(6, matrix.getReusedCount());
+            for (int a = 0; a < more.size(); a++) {
+                for (int b = 0; b < a; b++) {
+                    assertEquals(expected(more.get(a), more.get(b)), matrix.getDistance(a, b), 1e-4);
+                    assertEquals(matrix.getDistance(a, b), matrix.getDistance(b, a), 0);
+                }
+                assertEquals(0, matrix.getDistance(a, a), 0);
+            }
+            service.close();
+
+            // Other parameters discard the matrix.
+            service = new DistanceMatrixService(dir, RADIUS + 1, DistanceMetric.HAVERSINE,
+                    Double.POSITIVE_INFINITY, executor);
+            assertEquals(10, service.compute(tracks).getComputedCount());
+            service.close();
+        } finally {
+            executor.shutdown();
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void compute_abandonsPairsAboveThreshold() throws Exception {
+        File dir = createDirectory();
+        List<Trajectory> tracks = tracks();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // A threshold between the costs of similar rides and of the partial ones.
+            double threshold = 60;
+            DistanceMatrixService service = service(dir, threshold, executor);
+            DistanceMatrixService.DistanceMatrix matrix = service.compute(tracks);
+            int abandoned = 0;
+            for (int a = 0; a < tracks.size(); a++) {
+                for (int b = 0; b < a; b++) {
+                    double cost = expected(tracks.get(a), tracks.get(b));
+                    if (cost > threshold) {
+                        assertEquals(Double.POSITIVE_INFINITY, matrix.getDistance(a, b), 0);
+                        abandoned++;
+                    } else {
+                        assertEquals(cost, matrix.getDistance(a, b), 1e-4);
+                    }
+                }
+            }
+            assertTrue(abandoned > 0 && abandoned < 10);
+            service.close();
+        } finally {
+            executor.shutdown();
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void open_initializesRowsLeftByACrash() throws Exception {
+        File dir = createDirectory();
+        List<Trajectory> tracks = tracks();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DistanceMatrixService service = service(dir, Double.POSITIVE_INFINITY, executor);
+            service.compute(tracks.subList(0, 3));
+            service.close();
+            // The matrix was cut back as if the last row had not been initialized, and a partial
+            // fingerprint was appended.
+            RandomAccessFile matrix = new RandomAccessFile(new File(dir, "matrix.bin"), "rw");
+            matrix.seek(8);
+            matrix.writeInt(2);
+            matrix.close();
+            RandomAccessFile ids = new RandomAccessFile(new File(dir, "matrix.ids"), "rw");
+            ids.seek(ids.length());
+            ids.write(new byte[7]);
+            ids.close();
+
+            service = service(dir, Double.POSITIVE_INFINITY, executor);
+            DistanceMatrixService.DistanceMatrix result = service.compute(tracks);
+            // The last old row, and the rows of the two new trajectories.
+            assertEquals(2 + 3 + 4, result.getComputedCount());
+            assertEquals(1, result.getReusedCount());
+            assertEquals(expected(tracks.get(2), tracks.get(0)), result.getDistance(2, 0), 1e-4);
+            service.close();
+        } finally {
+            executor.shutdown();
+            delete(dir);
+        }
+    }
+
+    /**
+     * The three rides, and two parts of them.
+     */
+    private static List<Trajectory> tracks() throws Exception {
+        Trajectory t1 = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory t2 = GpxReaderTest.readAsset("T2_2.gpx");
+        Trajectory t3 = GpxReaderTest.readAsset("T2_3.gpx");
+        return Arrays.asList(t1, t2, t3, t1.slice(0, t1.size() / 2), t3.slice(t3.size() / 3, t3.size()));
+    }
+
+    private static double expected(Trajectory a, Trajectory b) {
+        // The service aligns the longer trajectory as source.
+        if (a.size() < b.size()) {
+            return expected(b, a);
+        }
+        return DynamicTimeWarp.cost(a, b, Window.sakoeChiba(a.size(), b.size(), RADIUS));
+    }
+
+    private static DistanceMatrixService service(File dir, double threshold, ExecutorService executor)
+            throws Exception {
+        return new DistanceMatrixService(dir, RADIUS, DistanceMetric.HAVERSINE, threshold, executor);
+    }
+
+    private static File createDirectory() throws Exception {
+        File directory = File.createTempFile("matrix", "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
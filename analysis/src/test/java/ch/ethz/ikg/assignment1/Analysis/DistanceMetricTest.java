@@ -0,0 +1,193 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the distance metrics, documenting their accuracy compared to the great
+ * circle distance of {@link Trackpoint#distance(Trackpoint)}.
+ */
+public class DistanceMetricTest {
+
+    @Test
+    public void haversine_matchesTrackpointDistance() {
+        Random random = new Random(1);
+        for (int k = 0; k < 10000; k++) {
+            Trackpoint s = randomPoint(random, 80, 180);
+            Trackpoint t = randomPoint(random, 80, 180);
+            double expected = s.distance(t);
+            assertEquals(expected, distance(DistanceMetric.HAVERSINE, s, t), 1e-6 * Math.max(1, expected));
+        }
+    }
+
+    @Test
+    public void equirectangular_isAccurateForShortDistances() {
+        // Up to 10 km and 70 degrees latitude, the relative error is below 0.1%.
+        Random random = new Random(2);
+        double maxError = 0;
+        for (int k = 0; k < 10000; k++) {
+            Trackpoint s = randomPoint(random, 70, 170);
+            Trackpoint t = nearbyPoint(random, s, 10000);
+            double expected = s.distance(t);
+            double error = Math.abs(distance(DistanceMetric.EQUIRECTANGULAR, s, t) - expected) / expected;
+            maxError = Math.max(maxError, error);
+        }
+        assertTrue("max relative error " + maxError, maxError < 1e-3);
+    }
+
+    @Test
+    public void squaredPlanar_isAccurateNearReferenceLatitude() {
+        // Within 0.1 degrees (about 11 km) of the reference latitude, the root of the squared
+        // distance is within 0.5% of the great circle distance.
+        Random random = new Random(3);
+        DistanceMetric metric = DistanceMetric.squaredPlanar(47.4);
+        double maxError = 0;
+        for (int k = 0; k < 10000; k++) {
+            Trackpoint s = new Trackpoint(8.5 + random.nextDouble() * 0.1, 47.35 + random.nextDouble() * 0.1, 0);
+            Trackpoint t = nearbyPoint(random, s, 5000);
+            double expected = s.distance(t);
+            double error = Math.abs(Math.sqrt(distance(metric, s, t)) - expected) / expected;
+            maxError = Math.max(maxError, error);
+        }
+        assertTrue("max relative error " + maxError, maxError < 5e-3);
+    }
+
+    @Test
+    public void lowerBound_neverExceedsDistance() {
+        Random random = new Random(4);
+        DistanceMetric[] metrics = {DistanceMetric.HAVERSINE, DistanceMetric.EQUIRECTANGULAR,
+                DistanceMetric.squaredPlanar(47.4)};
+        for (DistanceMetric metric : metrics) {
+            // Short distances, as between a ride and its envelope.
+            for (int k = 0; k < 10000; k++) {
+                Trackpoint s = new Trackpoint(8.5 + random.nextDouble() * 0.1, 47.35 + random.nextDouble() * 0.1, 0);
+                assertLowerBound(metric, s, nearbyPoint(random, s, 5000));
+            }
+            // Continental distances, where the great circle is noticeably longer than the chord.
+            for (int k = 0; k < 10000; k++) {
+                assertLowerBound(metric, randomPoint(random, 70, 90), randomPoint(random, 70, 90));
+            }
+            assertLowerBound(metric, new Trackpoint(0, 45, 0), new Trackpoint(90, 45, 0));
+        }
+    }
+
+    @Test
+    public void distances_matchPairwiseDistances() throws Exception {
+        Trajectory source = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory target = GpxReaderTest.readAsset("T2_2.gpx");
+        DistanceMetric[] metrics = {DistanceMetric.HAVERSINE, DistanceMetric.EQUIRECTANGULAR,
+                DistanceMetric.squaredPlanar(47.4)};
+        for (DistanceMetric metric : metrics) {
+            DistanceMetric.Points s = metric.prepare(source);
+            DistanceMetric.Points t = metric.prepare(target);
+            double[] row = new double[target.size() + 5];
+            metric.distances(s, 7, t, 10, target.size(), row, 5);
+            for (int j = 10; j < target.size(); j++) {
+                assertEquals(metric.toString(), metric.distance(s, 7, t, j), row[j - 5], 0);
+            }
+        }
+    }
+
+    @Test
+    public void distance_matchesPreparedPoints() {
+        Random random = new Random(5);
+        DistanceMetric[] metrics = {DistanceMetric.HAVERSINE, DistanceMetric.EQUIRECTANGULAR,
+                DistanceMetric.squaredPlanar(47.4)};
+        for (DistanceMetric metric : metrics) {
+            for (int k = 0; k < 1000; k++) {
+                Trackpoint s = randomPoint(random, 80, 180);
+                Trackpoint t = k % 2 == 0 ? randomPoint(random, 80, 180) : nearbyPoint(random, s, 1000);
+                DistanceMetric.Points ps = metric.prepare(Trajectory.fromTrackpoints(Collections.singletonList(s)));
+                DistanceMetric.Points pt = metric.prepare(Trajectory.fromTrackpoints(Collections.singletonList(t)));
+                assertEquals(metric.toString(), metric.distance(ps, 0, pt, 0), distance(metric, s, t), 0);
+            }
+        }
+    }
+
+    @Test
+    public void dynamicTimeWarp_isStableAcrossMetrics() throws Exception {
+        Trajectory source = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory target = GpxReaderTest.readAsset("T2_2.gpx");
+        Window window = Window.full(source.size(), target.size());
+        double haversine = DynamicTimeWarp.compute(source, target, window, DistanceMetric.HAVERSINE).getCost();
+        double equirectangular = DynamicTimeWarp.compute(source, target, window,
+                DistanceMetric.EQUIRECTANGULAR).getCost();
+
+        assertEquals(DynamicTimeWarp.compute(source, target).getCost(), haversine, 1e-9);
+        assertEquals(haversine, equirectangular, haversine * 1e-3);
+    }
+
+    @Test
+    public void similaritySearch_findsSameMatchesWithEveryMetric() throws Exception {
+        List<Trajectory> references = new ArrayList<>();
+        for (String asset : new String[]{"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"}) {
+            Trajectory track = GpxReaderTest.readAsset(asset);
+            references.add(track.slice(0, track.size() / 2));
+            references.add(track.slice(track.size() / 2, track.size()));
+        }
+        Trajectory query = references.get(2);
+        DistanceMetric[] metrics = {DistanceMetric.HAVERSINE, DistanceMetric.EQUIRECTANGULAR,
+                DistanceMetric.squaredPlanar(47.4)};
+        for (DistanceMetric metric : metrics) {
+            List<SimilaritySearch.Match> matches = new SimilaritySearch(references, 20, metric).nearest(query, 3);
+            // The pruned search gives the same result as computing every warping.
+            for (SimilaritySearch.Match match : matches) {
+                Trajectory reference = references.get(match.getIndex());
+                Window window = Window.sakoeChiba(query.size(), reference.size(), 20);
+                assertEquals(metric.toString(), DynamicTimeWarp.cost(query, reference, window, metric,
+                        Double.POSITIVE_INFINITY), match.getCost(), 1e-9);
+            }
+            for (int r = 0; r < references.size(); r++) {
+                Trajectory reference = references.get(r);
+                Window window = Window.sakoeChiba(query.size(), reference.size(), 20);
+                double cost = DynamicTimeWarp.cost(query, reference, window, metric, Double.POSITIVE_INFINITY);
+                assertTrue(metric.toString(), cost >= matches.get(matches.size() - 1).getCost() - 1e-9
+                        || containsIndex(matches, r));
+            }
+            assertEquals(2, matches.get(0).getIndex());
+        }
+    }
+
+    private static boolean containsIndex(List<SimilaritySearch.Match> matches, int index) {
+        for (SimilaritySearch.Match match : matches) {
+            if (match.getIndex() == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertLowerBound(DistanceMetric metric, Trackpoint s, Trackpoint t) {
+        double dx = DistanceMetric.RADIUS * Math.toRadians(Math.abs(s.getLongitude() - t.getLongitude()));
+        double dy = DistanceMetric.RADIUS * Math.toRadians(Math.abs(s.getLatitude() - t.getLatitude()));
+        double maxAbsLat = Math.toRadians(Math.max(Math.abs(s.getLatitude()), Math.abs(t.getLatitude())));
+        // (up to rounding)
+        assertTrue(metric + " " + s + " " + t,
+                metric.lowerBound(dx, dy, maxAbsLat) <= distance(metric, s, t) * (1 + 1e-9) + 1e-9);
+    }
+
+    private static double distance(DistanceMetric metric, Trackpoint s, Trackpoint t) {
+        return metric.distance(s.getLongitude(), s.getLatitude(), t.getLongitude(), t.getLatitude());
+    }
+
+    private static Trackpoint randomPoint(Random random, double maxLat, double maxLon) {
+        return new Trackpoint((random.nextDouble() * 2 - 1) * maxLon, (random.nextDouble() * 2 - 1) * maxLat, 0);
+    }
+
+    /**
+     * Creates a point at most the given distance (roughly, in meters) away from another point.
+     */
+    private static Trackpoint nearbyPoint(Random random, Trackpoint p, double maxDistance) {
+        double degrees = maxDistance / 111000 * random.nextDouble();
+        double angle = random.nextDouble() * 2 * Math.PI;
+        double dLat = degrees * Math.sin(angle);
+        double dLon = degrees * Math.cos(angle) / Math.cos(Math.toRadians(p.getLatitude()));
+        return new Trackpoint(p.getLongitude() + dLon, p.getLatitude() + dLat, 0);
+    }
+}
@@ -0,0 +1,78 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the dynamic time warping, using the GPX tracks bundled in the assets.
+ */
+public class DynamicTimeWarpTest {
+    private static final String[] ASSETS = {"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"};
+
+    @Test
+    public void path_mapsEverySourcePoint() throws Exception {
+        Trajectory source = load("T2_1.gpx");
+        Trajectory target = load("T2_3.gpx");
+        DynamicTimeWarp.DTWResult res = DynamicTimeWarp.compute(source, target);
+
+        // Summing up the distances along the path gives the (normalized) cost again.
+        double sum = 0;
+        assertEquals(source.size(), res.getPath().size());
+        for (int i = 0; i < source.size(); i++) {
+            assertFalse(res.getPath().get(i).isEmpty());
+            for (int j : res.getPath().get(i)) {
+                sum += source.distance(i, target, j);
+            }
+        }
+        assertEquals(res.getCost(), sum / (source.size() + target.size()), 1e-6);
+    }
+
+    @Test
+    public void fastDtw_approximatesExactCost() throws Exception {
+        for (int a = 0; a < ASSETS.length; a++) {
+            for (int b = a + 1; b < ASSETS.length; b++) {
+                Trajectory source = load(ASSETS[a]);
+                Trajectory target = load(ASSETS[b]);
+                double exact = DynamicTimeWarp.compute(source, target).getCost();
+                double fast = DynamicTimeWarp.compute(source, target,
+                        DynamicTimeWarp.Strategy.fast(10)).getCost();
+
+                // The approximation can never be better than the optimum.
+                double error = (fast - exact) / exact;
+                String message = "FastDTW error " + ASSETS[a] + "/" + ASSETS[b] + ": " + error;
+                assertTrue(message, error >= -1e-9);
+                assertTrue(message, error < 0.05);
+            }
+        }
+    }
+
+    @Test
+    public void parallelCost_matchesSequentialCost() throws Exception {
+        Trajectory source = load("T2_1.gpx");
+        Trajectory target = load("T2_3.gpx");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Window[] windows = {
+                    Window.full(source.size(), target.size()),
+                    Window.sakoeChiba(source.size(), target.size(), 5),
+                    Window.itakura(source.size(), target.size(), 2)};
+            for (Window window : windows) {
+                double sequential = DynamicTimeWarp.cost(source, target, window);
+                // Tiles which do not divide the matrix evenly, and a tile size of a single cell.
+                for (int tileSize : new int[]{1, 7, 64, 1000}) {
+                    assertEquals(sequential, ParallelDynamicTimeWarp.cost(source, target, window,
+                            DistanceMetric.HAVERSINE, pool, tileSize, 0), 1e-9);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Trajectory load(String asset) throws Exception {
+        return GpxReaderTest.readAsset(asset);
+    }
+}
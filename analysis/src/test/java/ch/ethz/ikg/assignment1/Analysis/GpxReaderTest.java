@@ -0,0 +1,161 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the streaming GPX reader.
+ */
+public class GpxReaderTest {
+
+    @Test
+    public void read_matchesDomParser() throws Exception {
+        for (String asset : new String[]{"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"}) {
+            File file = new File("../app/src/main/assets", asset);
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            NodeList points = doc.getElementsByTagName("trkpt");
+
+            Trajectory trajectory = readAsset(asset);
+            assertEquals(points.getLength(), trajectory.size());
+            for (int i = 0; i < points.getLength(); i++) {
+                Element point = (Element) points.item(i);
+                String time = point.getElementsByTagName("time").item(0).getTextContent();
+                assertEquals(Double.parseDouble(point.getAttribute("lon")), trajectory.getLongitude(i), 1e-12);
+                assertEquals(Double.parseDouble(point.getAttribute("lat")), trajectory.getLatitude(i), 1e-12);
+                assertEquals(format.parse(time).getTime(), trajectory.getTime(i));
+            }
+        }
+    }
+
+    @Test
+    public void read_handlesVariousNotations() throws Exception {
+        String gpx = "<?xml version=\"1.0\"?>\n<!-- <trkpt lat=\"1\" lon=\"1\"> -->\n"
+                + "<gpx:gpx><gpx:trk><gpx:trkseg>"
+                + "<gpx:trkpt lon='-8.5' lat=\"4.75e1\"><gpx:time> 2017-05-11T10:26:19.25+02:00 </gpx:time></gpx:trkpt>"
+                + "<gpx:trkpt lat=\"47\" lon=\"8\"/>"
+                + "</gpx:trkseg></gpx:trk></gpx:gpx>";
+        Trajectory trajectory = GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+
+        assertEquals(2, trajectory.size());
+        assertEquals(-8.5, trajectory.getLongitude(0), 0);
+        assertEquals(47.5, trajectory.getLatitude(0), 0);
+        assertEquals(1494491179250L, trajectory.getTime(0));
+        assertEquals(8, trajectory.getLongitude(1), 0);
+        assertEquals(0, trajectory.getTime(1));
+    }
+
+    @Test
+    public void read_rejectsMissingNumbers() throws Exception {
+        for (String value : new String[]{"", "-", ".", "+.", " "}) {
+            String gpx = "<gpx><trk><trkseg><trkpt lat=\"" + value + "\" lon=\"8\"/></trkseg></trk></gpx>";
+            try {
+                GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+                fail("Accepted lat=\"" + value + "\"");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        // Zero itself is a valid coordinate.
+        String gpx = "<gpx><trk><trkseg><trkpt lat=\"0\" lon=\"-0.0\"/></trkseg></trk></gpx>";
+        Trajectory trajectory = GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+        assertEquals(0, trajectory.getLatitude(0), 0);
+        assertEquals(0, trajectory.getLongitude(0), 0);
+    }
+
+    @Test
+    public void read_rejectsTooLongValues() throws Exception {
+        StringBuilder digits = new StringBuilder("47.");
+        while (digits.length() < 80) {
+            digits.append('1');
+        }
+        String[] points = {
+                "<trkpt lat=\"" + digits + "\" lon=\"8\"/>",
+                "<trkpt lat=\"47\" lon=\"8\"><time>2017-05-11T10:26:19." + digits + "Z</time></trkpt>"};
+        for (String point : points) {
+            String gpx = "<gpx><trk><trkseg>" + point + "</trkseg></trk></gpx>";
+            try {
+                GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+                fail("Accepted " + point);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        // Trailing whitespace does not count.
+        String gpx = "<gpx><trk><trkseg><trkpt lat=\"47\" lon=\"8\"><time>2017-05-11T10:26:19Z"
+                + String.format("%100s", "") + "</time></trkpt></trkseg></trk></gpx>";
+        assertEquals(1494498379000L, GpxReader.read(new ByteArrayInputStream(gpx.getBytes("UTF-8"))).getTime(0));
+    }
+
+    @Test
+    public void write_isReadBack() throws Exception {
+        Trajectory trajectory = readAsset("T2_1.gpx");
+        StringWriter gpx = new StringWriter();
+        GpxWriter.write(trajectory, gpx);
+        Trajectory read = GpxReader.read(new ByteArrayInputStream(gpx.toString().getBytes("UTF-8")));
+
+        assertEquals(trajectory.size(), read.size());
+        for (int i = 0; i < trajectory.size(); i++) {
+            assertEquals(trajectory.getLongitude(i), read.getLongitude(i), 1e-7);
+            assertEquals(trajectory.getLatitude(i), read.getLatitude(i), 1e-7);
+            assertEquals(trajectory.getTime(i), read.getTime(i));
+        }
+    }
+
+    @Test
+    public void parseTime_decodesIso8601() throws Exception {
+        assertEquals(0L, parseTime("1970-01-01T00:00:00Z"));
+        assertEquals(1262304000000L, parseTime("2010-01-01T00:00:00Z"));
+        assertEquals(951782400123L, parseTime("2000-02-29T00:00:00.123456Z"));
+        assertEquals(-1000L, parseTime("1970-01-01T01:59:59+02:00"));
+        assertEquals(1800000L, parseTime("1969-12-31T23:00:00-0130"));
+    }
+
+    @Test
+    public void parseTime_rejectsTruncatedZone() throws Exception {
+        // The characters after the end of the timestamp must not be read.
+        byte[] bytes = "2017-05-11T10:26:19+1200".getBytes("US-ASCII");
+        for (int length : new int[]{20, 21}) {
+            try {
+                GpxReader.parseTime(bytes, 0, length);
+                fail("Accepted " + new String(bytes, 0, length, "US-ASCII"));
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertEquals(1494455179000L, GpxReader.parseTime(bytes, 0, bytes.length));
+    }
+
+    /**
+     * Reads a GPX file from the assets.
+     */
+    static Trajectory readAsset(String asset) throws Exception {
+        InputStream in = new FileInputStream(new File("../app/src/main/assets", asset));
+        try {
+            return GpxReader.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long parseTime(String time) throws Exception {
+        byte[] bytes = time.getBytes("US-ASCII");
+        return GpxReader.parseTime(bytes, 0, bytes.length);
+    }
+}
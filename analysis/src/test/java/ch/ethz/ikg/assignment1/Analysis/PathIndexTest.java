@@ -0,0 +1,95 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the spatial index over a path.
+ */
+public class PathIndexTest {
+
+    @Test
+    public void nearestPoint_matchesLinearScan() throws Exception {
+        Trajectory path = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory queries = GpxReaderTest.readAsset("T2_2.gpx");
+        PathIndex index = new PathIndex(path);
+
+        for (int q = 0; q < queries.size(); q++) {
+            int closest = index.nearestPoint(queries.getLongitude(q), queries.getLatitude(q));
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < path.size(); i++) {
+                min = Math.min(min, path.distance(i, queries.get(q)));
+            }
+            // The planar projection may pick another point only if it is (almost) as close.
+            assertEquals(min, path.distance(closest, queries.get(q)), 0.01);
+        }
+    }
+
+    @Test
+    public void nearestSegment_projectsOntoSegment() {
+        // A path going east, then north.
+        Trajectory.Builder builder = new Trajectory.Builder();
+        builder.add(8.500, 47.400, 0);
+        builder.add(8.510, 47.400, 1000);
+        builder.add(8.510, 47.410, 2000);
+        PathIndex index = new PathIndex(builder.build());
+
+        // Just north of the middle of the first segment: far from both of its end points.
+        PathIndex.SegmentMatch match = index.nearestSegment(8.505, 47.4001);
+        assertEquals(0, match.getSegment());
+        assertEquals(0.5, match.getFraction(), 1e-6);
+        assertEquals(11.1, match.getDistance(), 0.1);
+
+        match = index.nearestSegment(8.5101, 47.409);
+        assertEquals(1, match.getSegment());
+        assertEquals(2, match.getNearestPoint());
+    }
+
+    @Test
+    public void nearestSegment_matchesLinearScan() throws Exception {
+        // A ride with a gap of several kilometers in the middle, as after a lost GPS fix.
+        Trajectory ride = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory.Builder builder = new Trajectory.Builder();
+        for (int i = 0; i < ride.size(); i++) {
+            double shift = i < ride.size() / 2 ? 0 : 0.05;
+            builder.add(ride.getLongitude(i) + shift, ride.getLatitude(i), ride.getTime(i));
+        }
+        Trajectory path = builder.build();
+        PathIndex index = new PathIndex(path);
+
+        Random random = new Random(5);
+        double[] result = new double[2];
+        for (int q = 0; q < 2000; q++) {
+            int i = random.nextInt(path.size());
+            double lon = path.getLongitude(i) + (random.nextDouble() - 0.5) * 0.06;
+            double lat = path.getLatitude(i) + (random.nextDouble() - 0.5) * 0.02;
+            PathIndex.SegmentMatch match = index.nearestSegment(lon, lat);
+
+            double px = index.projectX(lon);
+            double py = index.projectY(lat);
+            double min = Double.POSITIVE_INFINITY;
+            int closest = -1;
+            for (int s = 0; s < path.size() - 1; s++) {
+                index.segmentDistance(s, px, py, result);
+                if (result[1] < min) {
+                    min = result[1];
+                    closest = s;
+                }
+            }
+            assertEquals(closest, match.getSegment());
+            assertEquals(Math.sqrt(min), match.getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    public void nearestSegment_ofSinglePoint() {
+        Trajectory.Builder builder = new Trajectory.Builder();
+        builder.add(8.5, 47.4, 0);
+        PathIndex.SegmentMatch match = new PathIndex(builder.build()).nearestSegment(8.5, 47.4001);
+        assertEquals(0, match.getSegment());
+        assertEquals(11.1, match.getDistance(), 0.1);
+    }
+}
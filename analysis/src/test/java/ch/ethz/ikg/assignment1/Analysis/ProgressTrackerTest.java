@@ -0,0 +1,62 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for following the progress along a path.
+ */
+public class ProgressTrackerTest {
+
+    @Test
+    public void update_followsOutAndBackPath() {
+        // A path going 20 steps east, and back on (almost) the same line.
+        Trajectory.Builder builder = new Trajectory.Builder();
+        for (int i = 0; i <= 20; i++) {
+            builder.add(8.5 + i * 1e-4, 47.4, i * 1000);
+        }
+        for (int i = 19; i >= 0; i--) {
+            builder.add(8.5 + i * 1e-4, 47.40001, (40 - i) * 1000);
+        }
+        Trajectory path = builder.build();
+        RouteProfile profile = new RouteProfile(path);
+        ProgressTracker tracker = new ProgressTracker(new PathIndex(path), profile);
+
+        // On the way back, every position is closer to the outbound segments, but the progress
+        // must not jump back.
+        double last = -1;
+        for (int i = 0; i < path.size(); i++) {
+            double progress = tracker.update(path.getLongitude(i), path.getLatitude(i) - 0.000004);
+            assertTrue("progress decreased at " + i, progress >= last);
+            last = progress;
+        }
+        assertEquals(profile.getLength(), last, 1e-6);
+        assertEquals(path.size() - 1, tracker.getNearestPoint());
+    }
+
+    @Test
+    public void update_relocatesAfterLeavingPath() throws Exception {
+        Trajectory path = GpxReaderTest.readAsset("T2_1.gpx");
+        PathIndex index = new PathIndex(path);
+        RouteProfile profile = new RouteProfile(path);
+        ProgressTracker tracker = new ProgressTracker(index, profile);
+
+        tracker.update(path.getLongitude(0), path.getLatitude(0));
+        assertEquals(0, tracker.getDistanceAlong(), 1e-6);
+        // Jumping far ahead falls back to the index.
+        int target = path.size() * 3 / 4;
+        tracker.update(path.getLongitude(target), path.getLatitude(target));
+        assertEquals(index.nearestPoint(path.getLongitude(target), path.getLatitude(target)),
+                tracker.getNearestPoint());
+        assertEquals(0, tracker.getOffset(), 1e-6);
+
+        // Following the track point by point matches every point exactly.
+        tracker.reset();
+        for (int i = 0; i < path.size(); i++) {
+            tracker.update(path.getLongitude(i), path.getLatitude(i));
+            assertEquals(0, tracker.getOffset(), 1e-6);
+        }
+        assertEquals(profile.getLength(), tracker.getDistanceAlong(), 1e-6);
+    }
+}
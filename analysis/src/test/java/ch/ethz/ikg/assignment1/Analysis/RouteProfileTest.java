@@ -0,0 +1,55 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the precomputed measures along a path.
+ */
+public class RouteProfileTest {
+
+    @Test
+    public void profile_matchesPointwiseMeasures() throws Exception {
+        Trajectory path = GpxReaderTest.readAsset("T2_1.gpx");
+        RouteProfile profile = new RouteProfile(path);
+
+        double length = 0;
+        for (int i = 1; i < path.size(); i++) {
+            length += path.get(i).distance(path.get(i - 1));
+            assertEquals(length, profile.getDistance(i), 1e-6);
+            assertEquals(path.getTime(i) - path.getTime(0), profile.getElapsedTime(i));
+            if (path.getTime(i) != path.getTime(i - 1)) {
+                assertEquals(path.get(i).speed(path.get(i - 1)), profile.getSpeed(i - 1), 1e-9);
+            }
+        }
+        assertEquals(length, profile.getLength(), 1e-6);
+        assertEquals(0, profile.getRemainingDistance(path.size() - 1), 1e-9);
+        assertEquals(path.getTime(path.size() - 1) - path.getTime(0), profile.getRemainingTime(0));
+        assertEquals(profile.getDistance(1), profile.getDistance(0, 1), 1e-9);
+        assertEquals(profile.getDistance(1) / 2, profile.getDistance(0, 0.5), 1e-9);
+    }
+
+    @Test
+    public void turns_areFoundOnceAndNotInNoise() throws Exception {
+        // 300 m north with 1 m of zigzag noise, then a right turn and 300 m east
+        double meter = 1 / 111195.0;
+        double lat = 47.4;
+        double lonMeter = meter / Math.cos(Math.toRadians(lat));
+        Trajectory.Builder builder = new Trajectory.Builder();
+        long time = 0;
+        for (int i = 0; i <= 60; i++) {
+            builder.add(8.5 + (i % 2) * lonMeter, lat + i * 5 * meter, time += 1000);
+        }
+        for (int i = 1; i <= 60; i++) {
+            builder.add(8.5 + i * 5 * lonMeter, lat + 300 * meter, time += 1000);
+        }
+        RouteProfile profile = new RouteProfile(builder.build());
+
+        assertEquals(1, profile.getTurnCount());
+        double turn = profile.getDistance(60);
+        assertEquals(turn, profile.getDistanceToNextTurn(0), 5);
+        assertEquals(50, profile.getDistanceToNextTurn(turn - 50), 5);
+        assertEquals(Double.POSITIVE_INFINITY, profile.getDistanceToNextTurn(turn + 10), 0);
+    }
+}
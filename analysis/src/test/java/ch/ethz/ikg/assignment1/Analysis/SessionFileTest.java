@@ -0,0 +1,108 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the binary session format.
+ */
+public class SessionFileTest {
+
+    @Test
+    public void appender_roundTripsAllRecords() throws Exception {
+        Trajectory track = GpxReaderTest.readAsset("T2_1.gpx");
+        File file = write(track);
+        try {
+            SessionFile session = SessionFile.open(file);
+            assertEquals(track.size(), session.size());
+            assertEquals(track.size() * SessionFile.RECORD_SIZE + 12 + 8 * 2 + 12, file.length());
+            Trajectory read = session.toTrajectory();
+            for (int i = 0; i < track.size(); i++) {
+                assertEquals(track.getTime(i), read.getTime(i));
+                assertEquals(track.getLatitude(i), read.getLatitude(i), 1e-7);
+                assertEquals(track.getLongitude(i), read.getLongitude(i), 1e-7);
+                assertEquals(i, session.getAltitude(i), 0);
+                assertTrue(Float.isNaN(session.getTemperature(i)));
+            }
+
+            // The index finds every record by its time.
+            for (int i = 0; i < track.size(); i++) {
+                int found = session.indexOf(track.getTime(i));
+                assertEquals(track.getTime(i), session.getTime(found));
+                assertTrue(found == 0 || session.getTime(found - 1) < track.getTime(i));
+            }
+            assertEquals(track.size(), session.indexOf(Long.MAX_VALUE));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void open_recoversSessionWithoutFooter() throws Exception {
+        Trajectory track = GpxReaderTest.readAsset("T2_2.gpx");
+        File file = write(track);
+        try {
+            // Cut off the footer and half of the last record, as after a crash.
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(12 + (track.size() - 1) * SessionFile.RECORD_SIZE + SessionFile.RECORD_SIZE / 2);
+            raf.close();
+
+            SessionFile session = SessionFile.open(file);
+            assertEquals(track.size() - 1, session.size());
+            assertEquals(track.getTime(track.size() - 2), session.getTime(track.size() - 2));
+            assertEquals(track.size() - 2, session.indexOf(track.getTime(track.size() - 2)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void export_writesReadableGpxAndCsv() throws Exception {
+        Trajectory track = GpxReaderTest.readAsset("T2_3.gpx");
+        File file = write(track);
+        try {
+            SessionFile session = SessionFile.open(file);
+            StringWriter gpx = new StringWriter();
+            session.exportGpx(gpx);
+            Trajectory exported = GpxReader.read(new ByteArrayInputStream(gpx.toString().getBytes("UTF-8")));
+            assertEquals(track.size(), exported.size());
+            for (int i = 0; i < track.size(); i++) {
+                assertEquals(track.getTime(i), exported.getTime(i));
+                assertEquals(track.getLatitude(i), exported.getLatitude(i), 1e-7);
+                assertEquals(track.getLongitude(i), exported.getLongitude(i), 1e-7);
+            }
+
+            StringWriter csv = new StringWriter();
+            session.exportCsv(csv);
+            String[] lines = csv.toString().split("\n");
+            assertEquals(track.size() + 1, lines.length);
+            String[] fields = lines[1].split(";", -1);
+            assertEquals(9, fields.length);
+            assertEquals(track.getTime(0), Long.parseLong(fields[0]));
+            assertEquals(track.getLatitude(0), Double.parseDouble(fields[1]), 1e-7);
+            assertEquals("", fields[8]);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a track as session, using the index of every point as altitude.
+     */
+    private static File write(Trajectory track) throws Exception {
+        File file = File.createTempFile("session", ".bin");
+        SessionFile.Appender appender = new SessionFile.Appender(file);
+        for (int i = 0; i < track.size(); i++) {
+            appender.append(track.getTime(i), track.getLatitude(i), track.getLongitude(i), i,
+                    Float.NaN, Float.NaN, 5, Float.NaN, Float.NaN);
+        }
+        appender.close();
+        return file;
+    }
+}
@@ -0,0 +1,128 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the segmented session log.
+ */
+public class SessionLogTest {
+
+    @Test
+    public void recording_rotatesSegments() throws Exception {
+        Trajectory track = GpxReaderTest.readAsset("T2_1.gpx");
+        File directory = createDirectory();
+        try {
+            SessionLog log = new SessionLog(directory, 100);
+            record(log, 1, track);
+            record(log, 2, track);
+
+            assertArrayEquals(new long[]{1, 2}, log.getSessions());
+            List<File> segments = log.getSegments(1);
+            assertEquals((track.size() + 99) / 100, segments.size());
+            for (File segment : segments) {
+                assertTrue(SessionFile.open(segment).size() <= 100);
+            }
+            Trajectory loaded = log.load(1);
+            assertEquals(track.size(), loaded.size());
+            for (int i = 0; i < track.size(); i++) {
+                assertEquals(track.getTime(i), loaded.getTime(i));
+                assertEquals(track.getLatitude(i), loaded.getLatitude(i), 1e-7);
+            }
+            assertEquals(0, log.recover());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void recover_truncatesPartialAndCorruptRecords() throws Exception {
+        Trajectory track = GpxReaderTest.readAsset("T2_2.gpx");
+        File directory = createDirectory();
+        try {
+            SessionLog log = new SessionLog(directory);
+            record(log, 1, track);
+            File segment = log.getSegments(1).get(0);
+
+            // Simulate a crash: the footer is missing, the last record is torn and the one
+            // before it was not written completely either.
+            int valid = track.size() - 2;
+            long corrupt = SessionFile.HEADER_SIZE + (long) valid * SessionFile.RECORD_SIZE;
+            RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+            raf.setLength(corrupt + SessionFile.RECORD_SIZE + SessionFile.RECORD_SIZE / 2);
+            raf.seek(corrupt + 10);
+            raf.write(0x55);
+            raf.close();
+            assertEquals(valid, SessionFile.open(segment).size());
+
+            assertEquals(1, log.recover());
+            long length = segment.length();
+            SessionFile recovered = SessionFile.open(segment);
+            assertEquals(valid, recovered.size());
+            assertEquals(track.getTime(valid - 1), recovered.getTime(valid - 1));
+            assertEquals(valid - 1, recovered.indexOf(track.getTime(valid - 1)));
+
+            // A recovered segment is closed, and is not changed again.
+            assertEquals(0, log.recover());
+            assertEquals(length, segment.length());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void recover_setsAsideUnreadableSegments() throws Exception {
+        Trajectory track = GpxReaderTest.readAsset("T2_1.gpx");
+        File directory = createDirectory();
+        try {
+            SessionLog log = new SessionLog(directory);
+            record(log, 1, track);
+            record(log, 2, track);
+            File segment = log.getSegments(1).get(0);
+            RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+            raf.writeInt(0);
+            raf.close();
+
+            // The corrupt segment is kept under another name, and the other session is unaffected.
+            assertEquals(1, log.recover());
+            assertFalse(segment.exists());
+            assertTrue(new File(segment.getPath() + ".bad").exists());
+            assertArrayEquals(new long[]{2}, log.getSessions());
+            assertEquals(track.size(), log.load(2).size());
+
+            record(log, 3, track);
+            assertEquals(0, log.recover());
+            assertArrayEquals(new long[]{2, 3}, log.getSessions());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void record(SessionLog log, long session, Trajectory track) throws Exception {
+        SessionLog.Recording recording = log.start(session);
+        for (int i = 0; i < track.size(); i++) {
+            recording.append(track.getTime(i), track.getLatitude(i), track.getLongitude(i),
+                    Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+        }
+        recording.close();
+    }
+
+    private static File createDirectory() throws Exception {
+        File directory = File.createTempFile("sessions", "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,96 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the k-nearest route search, comparing the pruned search with a ranking of
+ * all references by their dynamic time warping cost.
+ */
+public class SimilaritySearchTest {
+
+    @Test
+    public void nearest_matchesBruteForceRanking() throws Exception {
+        List<Trajectory> references = references();
+        // A ride which is not one of the references, but overlaps with several of them.
+        Trajectory track = GpxReaderTest.readAsset("T2_2.gpx");
+        Trajectory query = track.slice(track.size() / 5, track.size() / 5 + 60);
+
+        for (int radius : new int[]{-1, 10}) {
+            SimilaritySearch search = new SimilaritySearch(references, radius);
+            double[] costs = bruteForce(query, references, radius);
+            double[] sorted = costs.clone();
+            Arrays.sort(sorted);
+            for (int k : new int[]{1, 3, references.size(), references.size() + 5}) {
+                List<SimilaritySearch.Match> matches = search.nearest(query, k);
+                assertEquals(Math.min(k, references.size()), matches.size());
+                for (int n = 0; n < matches.size(); n++) {
+                    SimilaritySearch.Match match = matches.get(n);
+                    assertEquals(sorted[n], match.getCost(), 1e-9);
+                    assertEquals(costs[match.getIndex()], match.getCost(), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lowerBounds_neverExceedCost() throws Exception {
+        List<Trajectory> references = references();
+        Trajectory query = references.get(4);
+        SimilaritySearch.Projection queryProjection = new SimilaritySearch.Projection(query);
+        for (Trajectory reference : references) {
+            Window window = Window.sakoeChiba(query.size(), reference.size(), 10);
+            double cost = DynamicTimeWarp.cost(query, reference, window);
+            assertTrue(SimilaritySearch.lbKim(query, reference, DistanceMetric.HAVERSINE) <= cost + 1e-9);
+
+            double[] bounds = SimilaritySearch.lbKeogh(queryProjection,
+                    new SimilaritySearch.Projection(reference), window, DistanceMetric.HAVERSINE);
+            double keogh = 0;
+            for (double bound : bounds) {
+                keogh += bound;
+            }
+            assertTrue(keogh / (query.size() + reference.size()) <= cost + 1e-9);
+        }
+    }
+
+    @Test
+    public void nearest_findsItself() throws Exception {
+        List<Trajectory> references = references();
+        List<SimilaritySearch.Match> matches = new SimilaritySearch(references, 10).nearest(references.get(7), 2);
+        assertEquals(7, matches.get(0).getIndex());
+        assertEquals(0, matches.get(0).getCost(), 1e-12);
+        assertTrue(new SimilaritySearch(references, 10).nearest(references.get(7), 0).isEmpty());
+    }
+
+    /**
+     * Cuts the bundled rides into pieces of different lengths.
+     */
+    private static List<Trajectory> references() throws Exception {
+        List<Trajectory> references = new ArrayList<>();
+        for (String asset : new String[]{"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"}) {
+            Trajectory track = GpxReaderTest.readAsset(asset);
+            int from = 0;
+            for (int length = 40; from + length <= track.size(); length += 15) {
+                references.add(track.slice(from, from + length));
+                from += length;
+            }
+        }
+        return references;
+    }
+
+    private static double[] bruteForce(Trajectory query, List<Trajectory> references, int radius) {
+        double[] costs = new double[references.size()];
+        for (int r = 0; r < references.size(); r++) {
+            Trajectory reference = references.get(r);
+            Window window = radius < 0 ? Window.full(query.size(), reference.size())
+                    : Window.sakoeChiba(query.size(), reference.size(), radius);
+            costs[r] = DynamicTimeWarp.cost(query, reference, window);
+        }
+        return costs;
+    }
+}
@@ -0,0 +1,142 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the aggregation of trajectories, comparing the parallel tree reduction and
+ * the DTW barycenter averaging with sequential computations.
+ */
+public class TrackAggregatorTest {
+    private static final DynamicTimeWarp.Strategy STRATEGY = DynamicTimeWarp.Strategy.sakoeChiba(20);
+
+    @Test
+    public void average_ofThreeTracks_carriesOverTheOddTrack() throws Exception {
+        List<Trajectory> tracks = tracks();
+        Trajectory a = tracks.get(0), b = tracks.get(1), c = tracks.get(2);
+        // Round 1 merges a and b, c is carried over; round 2 merges (ab) with weight 2 and c.
+        Trajectory expected = merge(merge(a, 1, b, 1), 2, c, 1);
+
+        assertSameTrajectory(expected, average(tracks.subList(0, 3)));
+    }
+
+    @Test
+    public void average_ofFiveTracks_weightsByNumberOfInputs() throws Exception {
+        List<Trajectory> tracks = tracks();
+        Trajectory a = tracks.get(0), b = tracks.get(1), c = tracks.get(2), d = tracks.get(3), e = tracks.get(4);
+        // ((ab)(cd))e: e is carried over twice and joins last, with a fifth of the weight.
+        Trajectory expected = merge(merge(merge(a, 1, b, 1), 2, merge(c, 1, d, 1), 2), 4, e, 1);
+
+        Trajectory average = average(tracks);
+        assertSameTrajectory(expected, average);
+        // The weights matter: an unweighted fold gives a different average.
+        Trajectory unweighted = merge(merge(merge(a, 1, b, 1), 1, merge(c, 1, d, 1), 1), 1, e, 1);
+        assertNotEquals(Double.doubleToLongBits(unweighted.getLatitude(0)),
+                Double.doubleToLongBits(average.getLatitude(0)));
+    }
+
+    @Test
+    public void average_ofNoneOrOneTrack() throws Exception {
+        assertNull(average(Collections.<Trajectory>emptyList()));
+        Trajectory single = tracks().get(1);
+        assertSame(single, average(Collections.singletonList(single)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void average_rethrowsFailedMerges() throws Exception {
+        DynamicTimeWarp.Strategy failing = new DynamicTimeWarp.Strategy() {
+            @Override
+            DynamicTimeWarp.DTWResult compute(Trajectory source, Trajectory target, DistanceMetric metric) {
+                throw new IllegalStateException("failed");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            new TrackAggregator(failing, executor).average(tracks());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void barycenter_matchesSequentialIteration() throws Exception {
+        List<Trajectory> tracks = tracks().subList(0, 3);
+        // One iteration: every point of the first track moves to the mean of all points aligned
+        // with it, including itself.
+        Trajectory initial = tracks.get(0);
+        double[][] sums = new double[4][initial.size()];
+        for (Trajectory track : tracks) {
+            WarpPath path = DynamicTimeWarp.compute(initial, track, STRATEGY).getWarpPath();
+            for (int i = 0; i < initial.size(); i++) {
+                for (int j = path.getFirstTarget(i); j <= path.getLastTarget(i); j++) {
+                    sums[0][i] += track.getLongitude(j);
+                    sums[1][i] += track.getLatitude(j);
+                    sums[2][i] += track.getTime(j);
+                    sums[3][i]++;
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            TrackAggregator aggregator = new TrackAggregator(STRATEGY, executor);
+            Trajectory average = aggregator.barycenter(tracks, 1);
+            assertEquals(initial.size(), average.size());
+            for (int i = 0; i < initial.size(); i++) {
+                assertEquals(sums[0][i] / sums[3][i], average.getLongitude(i), 1e-12);
+                assertEquals(sums[1][i] / sums[3][i], average.getLatitude(i), 1e-12);
+                assertEquals(Math.round(sums[2][i] / sums[3][i]), average.getTime(i));
+            }
+
+            assertSame(initial, aggregator.barycenter(tracks, 0));
+            assertNull(aggregator.barycenter(Collections.<Trajectory>emptyList(), 3));
+            // The average of identical tracks is that track.
+            assertSameTrajectory(initial, aggregator.barycenter(Arrays.asList(initial, initial), 2));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The three bundled rides, and two more made of their halves.
+     */
+    private static List<Trajectory> tracks() throws Exception {
+        List<Trajectory> tracks = new ArrayList<>();
+        for (String asset : new String[]{"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"}) {
+            tracks.add(GpxReaderTest.readAsset(asset));
+        }
+        tracks.add(tracks.get(0).slice(0, tracks.get(0).size() / 2));
+        tracks.add(tracks.get(2).slice(tracks.get(2).size() / 2, tracks.get(2).size()));
+        return tracks;
+    }
+
+    private static Trajectory average(List<Trajectory> tracks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            return new TrackAggregator(STRATEGY, executor).average(tracks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Trajectory merge(Trajectory t0, int w0, Trajectory t1, int w1) {
+        return TrackAggregator.merge(t0, w0, t1, w1, DynamicTimeWarp.compute(t0, t1, STRATEGY));
+    }
+
+    private static void assertSameTrajectory(Trajectory expected, Trajectory actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLongitude(i), actual.getLongitude(i), 0);
+            assertEquals(expected.getLatitude(i), actual.getLatitude(i), 0);
+            assertEquals(expected.getTime(i), actual.getTime(i));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the binary trajectory format.
+ */
+public class TrajectoryFileTest {
+
+    @Test
+    public void write_isReadBack() throws Exception {
+        for (String asset : new String[]{"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"}) {
+            Trajectory trajectory = GpxReaderTest.readAsset(asset);
+            File file = File.createTempFile("track", ".trk");
+            try {
+                TrajectoryFile.write(file, trajectory, 1494491179000L);
+                assertFalse(new File(file.getPath() + ".tmp").exists());
+
+                TrajectoryFile read = TrajectoryFile.open(file);
+                assertEquals(1494491179000L, read.getStamp());
+                assertEquals(trajectory.size(), read.size());
+                assertSameTrajectory(trajectory, read.read());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void read_handlesNegativeCoordinatesAndBlocks() throws Exception {
+        // More than two blocks of points around (0, 0), west of Greenwich and south of the equator,
+        // with times running backwards and jumping.
+        Trajectory.Builder builder = new Trajectory.Builder();
+        for (int i = 0; i < 700; i++) {
+            builder.add(-179.9999999 + i * 0.51234567, 1e-7 * (i % 7) - (i % 3) * 33.3333333,
+                    (i % 2 == 0 ? -1 : 1) * 1000L * i * i);
+        }
+        Trajectory trajectory = builder.build();
+        TrajectoryFile file = new TrajectoryFile(ByteBuffer.wrap(TrajectoryFile.encode(trajectory, -1)));
+
+        assertEquals(-1, file.getStamp());
+        assertSameTrajectory(trajectory, file.read());
+        // Ranges within a block, across block borders, and starting at a block border.
+        int[][] ranges = {{0, 0}, {3, 17}, {250, 260}, {256, 257}, {100, 700}, {511, 513}, {699, 700}};
+        for (int[] range : ranges) {
+            assertSameTrajectory(trajectory.slice(range[0], range[1]), file.read(range[0], range[1]));
+        }
+    }
+
+    @Test
+    public void open_rejectsTruncatedFiles() throws Exception {
+        Trajectory trajectory = GpxReaderTest.readAsset("T2_1.gpx");
+        byte[] data = TrajectoryFile.encode(trajectory, 0);
+        // Truncated within the header, within the index, and within the deltas.
+        for (int length : new int[]{0, 10, 40, data.length / 2, data.length - 1}) {
+            try {
+                new TrajectoryFile(ByteBuffer.wrap(Arrays.copyOf(data, length))).read();
+                fail("Accepted a file truncated to " + length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void open_rejectsOtherFiles() throws Exception {
+        byte[] data = TrajectoryFile.encode(GpxReaderTest.readAsset("T2_2.gpx"), 0);
+        byte[] magic = data.clone();
+        magic[0] = 'X';
+        byte[] version = data.clone();
+        version[7] = 2;
+        for (byte[] bytes : new byte[][]{magic, version}) {
+            try {
+                new TrajectoryFile(ByteBuffer.wrap(bytes));
+                fail("Accepted an invalid header");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void assertSameTrajectory(Trajectory expected, Trajectory actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            // Positions are rounded to 7 decimals (up to the rounding of the doubles).
+            assertEquals(expected.getLongitude(i), actual.getLongitude(i), 0.51e-7);
+            assertEquals(expected.getLatitude(i), actual.getLatitude(i), 0.51e-7);
+            assertEquals(expected.getTime(i), actual.getTime(i));
+        }
+    }
+}
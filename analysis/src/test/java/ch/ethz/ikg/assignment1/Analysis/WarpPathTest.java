@@ -0,0 +1,80 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the compact warping path.
+ */
+public class WarpPathTest {
+
+    @Test
+    public void pairsAndRuns_describeTheSamePath() throws Exception {
+        Trajectory source = GpxReaderTest.readAsset("T2_2.gpx");
+        Trajectory target = GpxReaderTest.readAsset("T2_3.gpx");
+        DynamicTimeWarp.DTWResult res = DynamicTimeWarp.compute(source, target);
+        WarpPath path = res.getWarpPath();
+        List<List<Integer>> lists = res.getPath();
+        int[] pairs = path.toPairs();
+
+        assertEquals(source.size(), path.getSourceCount());
+        assertEquals(target.size(), path.getTargetCount());
+        assertEquals(2 * path.size(), pairs.length);
+        // The pairs are the cells of the lists, in order.
+        int k = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            assertEquals(lists.get(i).size(), path.getMappedCount(i));
+            for (int j : lists.get(i)) {
+                assertEquals(i, pairs[k++]);
+                assertEquals(j, pairs[k++]);
+            }
+        }
+
+        // Replaying the runs from the first cell visits the same cells.
+        int i = 0;
+        int j = 0;
+        k = 2;
+        int runs = 0;
+        int previous = -1;
+        for (WarpPath.Run run : path) {
+            assertEquals(i, run.getSource());
+            assertEquals(j, run.getTarget());
+            assertNotEquals(previous, run.getDirection());
+            for (int step = 0; step < run.getLength(); step++) {
+                i += run.getDirection() == WarpPath.Run.TARGET ? 0 : 1;
+                j += run.getDirection() == WarpPath.Run.SOURCE ? 0 : 1;
+                assertEquals(i, pairs[k++]);
+                assertEquals(j, pairs[k++]);
+            }
+            previous = run.getDirection();
+            runs++;
+        }
+        assertEquals(pairs.length, k);
+        assertTrue(runs < path.size());
+    }
+
+    @Test
+    public void singlePoints_areAlignedWithAllPoints() {
+        Trajectory.Builder builder = new Trajectory.Builder();
+        for (int i = 0; i < 5; i++) {
+            builder.add(8.5 + i * 1e-4, 47.4, i * 1000);
+        }
+        Trajectory line = builder.build();
+        Trajectory point = line.slice(2, 3);
+
+        WarpPath path = DynamicTimeWarp.compute(point, line).getWarpPath();
+        assertEquals(5, path.size());
+        assertEquals(0, path.getFirstTarget(0));
+        assertEquals(4, path.getLastTarget(0));
+        WarpPath.Run run = path.iterator().next();
+        assertEquals(WarpPath.Run.TARGET, run.getDirection());
+        assertEquals(4, run.getLength());
+
+        path = DynamicTimeWarp.compute(point, point).getWarpPath();
+        assertEquals(1, path.size());
+        assertFalse(path.iterator().hasNext());
+    }
+}
@@ -0,0 +1,109 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the windows of the banded dynamic time warping.
+ */
+public class WindowTest {
+
+    @Test
+    public void bandedCost_matchesFullMatrix() throws Exception {
+        Trajectory source = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory target = GpxReaderTest.readAsset("T2_2.gpx");
+        DynamicTimeWarp.DTWResult exact = DynamicTimeWarp.compute(source, target);
+        Window full = Window.full(source.size(), target.size());
+
+        assertEquals(exact.getCost(), DynamicTimeWarp.cost(source, target, full), 1e-9);
+        // A band which is wide enough does not change the result.
+        Window wide = Window.sakoeChiba(source.size(), target.size(), target.size());
+        assertEquals(exact.getCost(), DynamicTimeWarp.compute(source, target, wide).getCost(), 1e-9);
+        // A narrow band can only make the alignment more expensive.
+        Window narrow = Window.sakoeChiba(source.size(), target.size(), 5);
+        assertTrue(DynamicTimeWarp.cost(source, target, narrow) >= exact.getCost() - 1e-9);
+        Window itakura = Window.itakura(source.size(), target.size(), 2);
+        assertEquals(DynamicTimeWarp.compute(source, target, itakura).getCost(),
+                DynamicTimeWarp.cost(source, target, itakura), 1e-9);
+    }
+
+    @Test
+    public void singleRowOrColumn_coversAllCells() {
+        Window[] rows = {Window.full(1, 50), Window.sakoeChiba(1, 50, 0), Window.itakura(1, 50, 2)};
+        for (Window window : rows) {
+            assertConnected(window);
+            assertEquals(50, window.getCellCount());
+        }
+        Window[] cols = {Window.full(50, 1), Window.sakoeChiba(50, 1, 0), Window.itakura(50, 1, 2)};
+        for (Window window : cols) {
+            assertConnected(window);
+            assertEquals(50, window.getCellCount());
+            assertEquals(1, window.getMaxWidth());
+        }
+        assertConnected(Window.sakoeChiba(1, 1, 3));
+        assertEquals(1, Window.itakura(1, 1, 2).getCellCount());
+    }
+
+    @Test
+    public void singlePoint_costMatchesFullMatrix() throws Exception {
+        Trajectory target = GpxReaderTest.readAsset("T2_2.gpx");
+        Trajectory point = target.slice(10, 11);
+        Window band = Window.sakoeChiba(1, target.size(), 0);
+        assertEquals(DynamicTimeWarp.compute(point, target).getCost(),
+                DynamicTimeWarp.cost(point, target, band), 1e-9);
+        band = Window.sakoeChiba(target.size(), 1, 0);
+        assertEquals(DynamicTimeWarp.compute(target, point).getCost(),
+                DynamicTimeWarp.cost(target, point, band), 1e-9);
+    }
+
+    @Test
+    public void itakura_connectsVeryDifferentLengths() throws Exception {
+        // A slope of 2 cannot bridge a ratio of 20 between the lengths, so the parallelogram
+        // degenerates, but a warping path must still exist.
+        int[][] sizes = {{10, 200}, {200, 10}, {2, 1000}, {1000, 2}, {3, 7}};
+        for (int[] size : sizes) {
+            for (double slope : new double[]{1.01, 2, 10}) {
+                Window window = Window.itakura(size[0], size[1], slope);
+                assertConnected(window);
+                assertTrue(window.getCellCount() <= (long) size[0] * size[1]);
+            }
+        }
+
+        Trajectory source = GpxReaderTest.readAsset("T2_1.gpx");
+        Trajectory target = GpxReaderTest.readAsset("T2_3.gpx").slice(0, 10);
+        Window window = Window.itakura(source.size(), target.size(), 2);
+        double cost = DynamicTimeWarp.cost(source, target, window);
+        assertFalse(Double.isInfinite(cost));
+        assertEquals(DynamicTimeWarp.compute(source, target, window).getCost(), cost, 1e-9);
+        assertTrue(cost >= DynamicTimeWarp.compute(source, target).getCost() - 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itakura_rejectsSlopeOfOne() {
+        Window.itakura(10, 10, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sakoeChiba_rejectsEmptyTrajectory() {
+        Window.sakoeChiba(0, 10, 5);
+    }
+
+    /**
+     * Asserts that a window starts in the first and ends in the last cell, and that its rows are
+     * monotonic and connected, i.e. that a warping path through it exists.
+     */
+    private static void assertConnected(Window window) {
+        assertEquals(0, window.getMin(0));
+        assertEquals(window.getCols() - 1, window.getMax(window.getRows() - 1));
+        for (int i = 0; i < window.getRows(); i++) {
+            assertTrue(window.getMin(i) <= window.getMax(i));
+            assertTrue(window.getMin(i) >= 0 && window.getMax(i) < window.getCols());
+            if (i > 0) {
+                assertTrue(window.getMin(i) >= window.getMin(i - 1));
+                assertTrue(window.getMax(i) >= window.getMax(i - 1));
+                assertTrue(window.getMin(i) <= window.getMax(i - 1) + 1);
+            }
+        }
+    }
+}
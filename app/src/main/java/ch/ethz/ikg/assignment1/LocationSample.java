@@ -0,0 +1,92 @@
+package ch.ethz.ikg.assignment1;
+
+import android.location.Location;
+
+/**
+ * An immutable location fix as published by {@link LocationUpdates}. All values are kept as
+ * primitives in their units of measurement, so that listeners can compute with them directly and
+ * format them only if they are displayed. Values the fix does not have are NaN.
+ */
+final class LocationSample {
+    private final long time;
+    private final double latitude;
+    private final double longitude;
+    private final float altitude;
+    private final float speed;
+    private final float bearing;
+    private final float accuracy;
+    private final double acceleration;
+
+    /**
+     * Constructor.
+     *
+     * @param location     The fix.
+     * @param acceleration The acceleration since the previous fix, in m/s².
+     */
+    LocationSample(Location location, double acceleration) {
+        this.time = location.getTime();
+        this.latitude = location.getLatitude();
+        this.longitude = location.getLongitude();
+        this.altitude = location.hasAltitude() ? (float) location.getAltitude() : Float.NaN;
+        this.speed = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+        this.bearing = location.hasBearing() ? location.getBearing() : Float.NaN;
+        this.accuracy = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+        this.acceleration = acceleration;
+    }
+
+    /**
+     * @return The time of the fix, in milliseconds since the epoch.
+     */
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * @return The latitude in degrees.
+     */
+    double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return The longitude in degrees.
+     */
+    double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return The altitude in meters above sea level, or NaN.
+     */
+    float getAltitude() {
+        return altitude;
+    }
+
+    /**
+     * @return The speed in m/s, or NaN.
+     */
+    float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return The direction of movement in degrees east of north, or NaN.
+     */
+    float getBearing() {
+        return bearing;
+    }
+
+    /**
+     * @return The accuracy of the position in meters, or NaN.
+     */
+    float getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * @return The acceleration since the previous fix in m/s², or 0 for the first fix.
+     */
+    double getAcceleration() {
+        return acceleration;
+    }
+}
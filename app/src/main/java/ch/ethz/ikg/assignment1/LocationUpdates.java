@@ -10,41 +10,74 @@ import android.os.Bundle;
 import android.support.v4.app.ActivityCompat;
 import android.support.v7.app.AppCompatActivity;
 
-import java.util.Observable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * This class implements the LocationListener which receives updates from the GPS sensor. The class
- * implements the Observable interface so that the main activity can observe location changes.
- * The arguments needed in the MainActivity are passed as an String[5] with the form:
- * {Location, Speed, Acceleration, Height, Log} whose values can be directly shown in the
- * interface. Log contains a timestamp, longitude and latitude which can be written to a log
- * file directly.
+ * This class implements the LocationListener which receives updates from the GPS sensor.
+ * Registered {@link Listener}s are notified about every fix with a {@link LocationSample}, which
+ * carries the numeric values of the fix (position, speed, acceleration, altitude, ...), so that
+ * listeners can compute with them directly and format only what they display.
+ * <p>
+ * How often the GPS is read is decided by a {@link SamplingPolicy}; whenever its rate changes,
+ * the location updates are requested again with the new interval and distance.
  */
 
-class LocationUpdates extends Observable implements LocationListener {
+class LocationUpdates implements LocationListener, SamplingPolicy.Listener {
 
     // Create Location which stores last known location
     private Location oldLoc = null;
 
     // Create LocationManager to access GPS measurements
     private LocationManager locationManager;
+    // the current sampling rate, and whether location updates are requested at the moment
+    private SamplingPolicy.Rate rate = SamplingPolicy.Rate.NORMAL;
+    private boolean requesting = false;
 
-    // This Array will be passed to the observer as argument.
-    private String[] locationValues = new String[6];
+    // The registered listeners, which are notified in the order they were added.
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    /**
+     * Receives the fixes of a {@link LocationUpdates}. The method is called on the UI thread.
+     */
+    interface Listener {
+        /**
+         * Called for every new fix.
+         *
+         * @param sample The fix.
+         */
+        void onLocationChanged(LocationSample sample);
+    }
+
+    /**
+     * Registers a listener. Adding a listener which is registered already has no effect.
+     *
+     * @param listener The listener.
+     */
+    void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener.
+     */
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
 
     /**
      * This method is to be called by the MainActivity in its onStart() method.
-     * The method creates initializes the arguments that are provided to the observer, creates
-     * the locationManager and checks permissions. To do so, the current activity is passed so
-     * that the method has the context and necessary information for the permission check.
+     * The method creates the locationManager and checks permissions. To do so, the current
+     * activity is passed so that the method has the context and necessary information for the
+     * permission check.
      *
      * @param activity which uses locationupdates
      */
     void onStart(AppCompatActivity activity) {
-        //Initialize Array which is passed to the observer
-        for (int i = 0; i < 5; i++) {
-            locationValues[i] = "N/A";
-        }
         locationManager = (LocationManager) activity.getSystemService(Context.LOCATION_SERVICE);
 
         if (ActivityCompat.checkSelfPermission(activity,
@@ -61,7 +94,7 @@ class LocationUpdates extends Observable implements LocationListener {
         } else {
             // We have the necessary permissions, and can request the
             // location updates.
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 500, 2, this);
+            requestUpdates();
         }
     }
 
@@ -81,7 +114,7 @@ class LocationUpdates extends Observable implements LocationListener {
                         grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                     // Here we have the permission, and can request the
                     // location updates.
-                    locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 500, 2, this);
+                    requestUpdates();
                 }
             }
         }
@@ -91,31 +124,48 @@ class LocationUpdates extends Observable implements LocationListener {
      * This function prevents the app from further accessing the GPS sensors if it is stopped.
      */
     void onStop() {
+        requesting = false;
         locationManager.removeUpdates(this);
     }
 
     /**
-     * This function handles location changes incoming from the GPS sensor. The current location,
-     * altitude and speed are directly displayed to the user. Furthermore, the current location
-     * is stored after displaying it. It is used in a with the next location measurement to calculate
-     * the acceleration.
+     * Applies a new sampling rate. If location updates are requested at the moment, they are
+     * requested again with the new rate, which replaces the previous request.
+     *
+     * @param rate The new rate.
+     */
+    @Override
+    public void onRateChanged(SamplingPolicy.Rate rate) {
+        this.rate = rate;
+        if (requesting) {
+            requestUpdates();
+        }
+    }
+
+    /**
+     * Requests location updates from the GPS at the current rate. The permissions must be granted.
+     */
+    private void requestUpdates() {
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
+                rate.getLocationInterval(), rate.getLocationDistance(), this);
+        requesting = true;
+    }
+
+    /**
+     * This function handles location changes incoming from the GPS sensor. The listeners are
+     * notified about the new fix. Furthermore, the current location is stored. It is used with
+     * the next location measurement to calculate the acceleration.
      *
      * @param location (current location)
      */
     @Override
     public void onLocationChanged(Location location) {
-        // as soon as the location changed, mark this object as changed
-        setChanged();
-        locationValues[0] = String.valueOf(location.getLatitude());
-        locationValues[1] = String.valueOf(location.getLongitude());
-        // location.getSpeed returns speed in m/s and therefore *3.6 to get speed in km/h
-        locationValues[2] = String.format("%.1f km/h", location.getSpeed() * 3.6);
-        locationValues[3] = String.format("%.2f m/s²", getAcceleration(location));
-        locationValues[4] = String.format("%.1f m.a.s.l.", location.getAltitude());
-        locationValues[5] = String.format("%d;%.7f;%.7f", location.getTime(), location.getLatitude(), location.getLongitude());
+        LocationSample sample = new LocationSample(location, getAcceleration(location));
         oldLoc = location;
-        // notify the observers that the location values have changed
-        notifyObservers(locationValues);
+        // notify the listeners that the location values have changed
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onLocationChanged(sample);
+        }
     }
 
     /**
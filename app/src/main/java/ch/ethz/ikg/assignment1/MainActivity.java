@@ -36,13 +36,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
-import java.io.BufferedReader;
+import ch.ethz.ikg.assignment1.Analysis.SessionLog;
+
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.PrintWriter;
-import java.util.Observable;
-import java.util.Observer;
+import java.io.IOException;
 
 /**
  * This application was created in the context of the course Mobile GIS and Location Based Services
@@ -55,21 +52,23 @@ import java.util.Observer;
  * - Acceleration
  * - Location
  * - Temperature
- * The values are read in two additional classes which extend the Observable class. This class
- * implements the Observer interface which allows it to observe the LocationUpdates and
- * SensorUpdates so that the UI can be updated according to their changes.
+ * The values are read in two additional classes, LocationUpdates and SensorUpdates. This class
+ * listens to both of them, so that the UI can be updated according to their changes.
  *
  * @author Christoph Schönenberger
  * @version 1.2
  * @since 06.04.2017
  */
 
-public class MainActivity extends AppCompatActivity implements Observer {
+public class MainActivity extends AppCompatActivity
+        implements LocationUpdates.Listener, SensorUpdates.Listener {
 
     // create variable to store old bearing value, used for rotation
     float oldBearingDegree = 0f;
     private LocationUpdates locationUpdates = new LocationUpdates();
     private SensorUpdates sensorUpdates = new SensorUpdates();
+    // adapts the rates of the GPS and the sensors to the movement of the user
+    private SamplingPolicy samplingPolicy = new SamplingPolicy();
     // Create TextViews that display information
     private TextView headingTxtView;
     private TextView headingDegreeTxtView;
@@ -82,7 +81,11 @@ public class MainActivity extends AppCompatActivity implements Observer {
     private ToggleButton toggle;
     private ImageButton routingButton;
     private ImageButton navigateButton;
-    private boolean record;
+    // records the positions while the toggle button is checked, null otherwise
+    private TrackRecorder recorder;
+    // the last sensor values, which are recorded with every position
+    private OrientationSample orientation = OrientationSample.UNKNOWN;
+    private float temperature = Float.NaN;
 
     /**
      * Method that is called when activity is initialized. All UI elements are loaded and referenced.
@@ -98,8 +101,11 @@ public class MainActivity extends AppCompatActivity implements Observer {
         supportActionBar.setDisplayShowHomeEnabled(true);
         supportActionBar.setIcon(R.mipmap.ic_launcher);
 
-        locationUpdates.addObserver(this);
-        sensorUpdates.addObserver(this);
+        locationUpdates.addListener(this);
+        sensorUpdates.addListener(this);
+        locationUpdates.addListener(samplingPolicy);
+        samplingPolicy.addListener(locationUpdates);
+        samplingPolicy.addListener(sensorUpdates);
 
         // Reference UI elements
         headingTxtView = (TextView) findViewById(R.id.valueHeading);
@@ -119,12 +125,12 @@ public class MainActivity extends AppCompatActivity implements Observer {
                     Toast.makeText(getApplicationContext(), "Recording started", Toast.LENGTH_SHORT).show();
                     // haptic feedback when button is activated
                     toggle.performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
-                    record = isChecked;
+                    startRecording();
                 } else {
                     Toast.makeText(getApplicationContext(), "Recording stopped", Toast.LENGTH_SHORT).show();
                     // haptic feedback when button is deactivated
                     toggle.performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
-                    record = isChecked;
+                    stopRecording();
                 }
             }
         });
@@ -157,142 +163,122 @@ public class MainActivity extends AppCompatActivity implements Observer {
     }
 
     /**
-     * This method calls the onStart methods of all observables.
+     * This method calls the onStart methods of all updates. If no temperature sensor is
+     * available, a message (NOT_SUPPORTED) is displayed.
      */
     @Override
     protected void onStart() {
         super.onStart();
         locationUpdates.onStart(this);
         sensorUpdates.onStart(this);
+        temperatureTxtView.setText(sensorUpdates.hasTemperatureSensor() ? "N/A" : SensorUpdates.NOT_SUPPORTED);
     }
 
     /**
-     * This function prevents is called when the activity is stopped. The observables are
+     * This function prevents is called when the activity is stopped. The updates are
      * stopped as well.
      */
     @Override
     protected void onStop() {
         super.onStop();
         locationUpdates.onStop();
-        locationUpdates.deleteObserver(this);
+        locationUpdates.removeListener(this);
         sensorUpdates.onStop();
-        sensorUpdates.deleteObserver(this);
+        sensorUpdates.removeListener(this);
     }
 
     /**
-     * Pauses all the app and also the observables that can be paused.
+     * Pauses all the app and also the updates that can be paused. The GPS is read at a low rate
+     * until the activity is stopped, which removes the location updates.
      */
     protected void onPause() {
         super.onPause();
-        locationUpdates.deleteObserver(this);
+        locationUpdates.removeListener(this);
         sensorUpdates.onPause();
-        sensorUpdates.deleteObserver(this);
+        sensorUpdates.removeListener(this);
+        samplingPolicy.setVisible(false);
     }
 
     /**
-     * The method is called, when the activity is resumed. The onResume() Method of the Observables
+     * The method is called, when the activity is resumed. The onResume() Method of the updates
      * is called as well.
      */
     protected void onResume() {
         super.onResume();
-        locationUpdates.addObserver(this);
-        sensorUpdates.addObserver(this);
+        samplingPolicy.setVisible(true);
+        locationUpdates.addListener(this);
+        sensorUpdates.addListener(this);
         sensorUpdates.onResume();
     }
 
     /**
-     * This file writes all locations in a csv file which is stored on the SD card. If no SD card
-     * is available, the position cannot be logged.
-     *
-     * @param location the current location
+     * This function is called when the activity is destroyed. A running recording is finished.
      */
-    public void logPosition(String location) {
-        // check if SD card is mounted
-        if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
-            try {
-                // create directory on SD card in public folder documents. This way, the user can
-                // access the file using a computer or a file explorer.
-                File directory = new File(Environment.getExternalStorageDirectory() + "/Assignment1_Output");
-                directory.mkdir();
-                // create new file
-                File f = new File(directory, "GPSTrack.csv");
-                FileOutputStream outputStream = new FileOutputStream(f, true);
-                PrintWriter writer = new PrintWriter(outputStream);
-                // buffered reader to check if header is already written
-                BufferedReader br = new BufferedReader(new FileReader(f));
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        stopRecording();
+    }
 
-                //write header first if no logs have been written so far
-                if (br.readLine() == null) { //if the first line is null
-                    writer.print("TimeStamp"); //write header
-                    writer.print(";");
-                    writer.print("Latitude");
-                    writer.print(";");
-                    writer.println("Longitude");
-                }
-                //write data if location is not null, e.g. data is available
-                if (location != null) {
-                    writer.println(location);
+    /**
+     * Starts recording all locations in a csv file which is stored on the SD card. If no SD card
+     * is available, the positions cannot be logged. The session is written in the background by
+     * a {@link TrackRecorder} to segment files, which also contain the sensor values, and is
+     * exported to the csv file when the recording is stopped.
+     */
+    private void startRecording() {
+        // check if SD card is mounted
+        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            // log an error if no SD card is available
+            Log.e("FileLog", "SD card not mounted");
+            return;
+        }
+        // The directory is in the public storage. This way, the user can access the file using a
+        // computer or a file explorer.
+        File directory = new File(Environment.getExternalStorageDirectory() + "/Assignment1_Output");
+        long session = System.currentTimeMillis();
+        recorder = new TrackRecorder(new SessionLog(directory), session,
+                new File(directory, "GPSTrack-" + session + ".csv"), this, new TrackRecorder.Listener() {
+            @Override
+            public void onRecordingFailed(TrackRecorder failed, IOException e) {
+                Toast.makeText(getApplicationContext(), "Recording failed: " + e.getMessage(),
+                        Toast.LENGTH_LONG).show();
+                if (failed == recorder) {
+                    toggle.setChecked(false);
                 }
-                // close writer and output stream
-                writer.close();
-                outputStream.close();
-                // make file readable for system and force media scanner to index it
-                f.setReadable(true);
-                Intent intent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-                intent.setData(Uri.fromFile(f));
-                sendBroadcast(intent);
-            } catch (Exception e) { //Catch exception if any
-                // error message if exception is given.
-                System.err.println("Error: " + e.getMessage());
-                Log.e(getClass().toString(), Log.getStackTraceString(e));
             }
-        } else { // log an error if no SD card is available
-            Log.e("FileLog", "SD card not mounted");
+        });
+        recorder.start();
+    }
+
+    /**
+     * Stops recording. The remaining positions are written and exported in the background.
+     */
+    private void stopRecording() {
+        if (recorder != null) {
+            recorder.stop();
+            recorder = null;
         }
     }
 
     /**
-     * This function updates the UI when the observables change. Two possible observables are
-     * included: LocationUpdates & SensorUpdates. The method handles these two types accordingly.
+     * This function updates the UI when a new fix comes in, and records it if the recording is
+     * running.
      *
-     * @param o
-     * @param arg
+     * @param sample the new fix
      */
     @Override
-    public void update(Observable o, Object arg) {
+    public void onLocationChanged(LocationSample sample) {
         try {
-            if (o instanceof LocationUpdates) {
-                String[] locationValues = (String[]) arg;
-                locationTxtView.setText(String.format("%.5f N, %.5f E", new Float(locationValues[0]), new Float(locationValues[1])));
-                speedTxtView.setText(locationValues[2]);
-                accelerationTxtView.setText(locationValues[3]);
-                heightTxtView.setText(locationValues[4]);
-                if (record) {
-                    logPosition(locationValues[5]);
-                }
-            } else if (o instanceof SensorUpdates) {
-                String[] sensorValues = (String[]) arg;
-                headingTxtView.setText(sensorValues[0]);
-                headingDegreeTxtView.setText(sensorValues[1]);
-                temperatureTxtView.setText(sensorValues[3]);
-                Float bearingDegree = Float.valueOf(sensorValues[2]);
-                // Create rotate animation of imageViewHeading
-                RotateAnimation ra;
-                // the following conditional statement manages the turning direction of the rotation
-                // such that the rotation is not too large
-                if (oldBearingDegree - bearingDegree > 180 || oldBearingDegree - bearingDegree < -180) {
-                    ra = new RotateAnimation(bearingDegree, oldBearingDegree, Animation.RELATIVE_TO_SELF, 0.5f, Animation.RELATIVE_TO_SELF, 0.5f);
-                } else {
-                    ra = new RotateAnimation(oldBearingDegree, bearingDegree, Animation.RELATIVE_TO_SELF, 0.5f, Animation.RELATIVE_TO_SELF, 0.5f);
-                }
-                // Rotate heading image so that arrow always points north
-                ra.setDuration(210);
-                ra.setFillAfter(true);
-                headingImageView.startAnimation(ra);
-                // set old bearing
-                oldBearingDegree = bearingDegree;
-            } else {
-                throw new Exception("Invalid observable");
+            locationTxtView.setText(String.format("%.5f N, %.5f E", sample.getLatitude(), sample.getLongitude()));
+            // the speed is given in m/s and therefore *3.6 to get speed in km/h
+            speedTxtView.setText(String.format("%.1f km/h", sample.getSpeed() * 3.6));
+            accelerationTxtView.setText(String.format("%.2f m/s²", sample.getAcceleration()));
+            heightTxtView.setText(String.format("%.1f m.a.s.l.", sample.getAltitude()));
+            if (recorder != null) {
+                recorder.record(sample.getTime(), sample.getLatitude(), sample.getLongitude(),
+                        sample.getAltitude(), sample.getSpeed(), sample.getBearing(),
+                        sample.getAccuracy(), (float) orientation.getHeadingDegree(), temperature);
             }
         } catch (Exception e) {//Catch exception if any
             // error message if exception is given.
@@ -300,4 +286,48 @@ public class MainActivity extends AppCompatActivity implements Observer {
             Log.e(getClass().toString(), Log.getStackTraceString(e));
         }
     }
+
+    /**
+     * This function updates the heading and rotates the compass when the orientation changes.
+     *
+     * @param sample the new orientation
+     */
+    @Override
+    public void onOrientationChanged(OrientationSample sample) {
+        orientation = sample;
+        if (!sample.isKnown()) {
+            headingTxtView.setText("N/A");
+            headingDegreeTxtView.setText("N/A");
+        } else {
+            headingTxtView.setText(SensorUpdates.getHeading(sample.getBearing()));
+            headingDegreeTxtView.setText(String.format("%.0f°", sample.getHeadingDegree()));
+        }
+        float bearingDegree = sample.isKnown() ? (float) sample.getHeadingDegree() : 0f;
+        // Create rotate animation of imageViewHeading
+        RotateAnimation ra;
+        // the following conditional statement manages the turning direction of the rotation
+        // such that the rotation is not too large
+        if (oldBearingDegree - bearingDegree > 180 || oldBearingDegree - bearingDegree < -180) {
+            ra = new RotateAnimation(bearingDegree, oldBearingDegree, Animation.RELATIVE_TO_SELF, 0.5f, Animation.RELATIVE_TO_SELF, 0.5f);
+        } else {
+            ra = new RotateAnimation(oldBearingDegree, bearingDegree, Animation.RELATIVE_TO_SELF, 0.5f, Animation.RELATIVE_TO_SELF, 0.5f);
+        }
+        // Rotate heading image so that arrow always points north
+        ra.setDuration(210);
+        ra.setFillAfter(true);
+        headingImageView.startAnimation(ra);
+        // set old bearing
+        oldBearingDegree = bearingDegree;
+    }
+
+    /**
+     * This function displays the temperature when it was measured.
+     *
+     * @param sample the new temperature
+     */
+    @Override
+    public void onTemperatureChanged(TemperatureSample sample) {
+        temperature = sample.getCelsius();
+        temperatureTxtView.setText(String.format("%.1f° C", temperature));
+    }
 }
@@ -0,0 +1,115 @@
+package ch.ethz.ikg.assignment1;
+
+import android.hardware.SensorManager;
+
+/**
+ * Calculates the azimuth of the device from the accelerometer and the magnetic field sensor,
+ * without allocating anything per measurement, so that the sensors can be read at high rates.
+ * The measurements are copied into buffers which are reused (the arrays of a SensorEvent are
+ * reused by the system, so they must not be kept), and the rotation matrix is only calculated if
+ * one of the measurements changed.
+ * <p>
+ * The azimuth is smoothed by a low-pass filter whose state persists between measurements. The
+ * filter works on the sine and cosine of the azimuth instead of the angle, so that it does not
+ * jump when the azimuth wraps around between -180° and 180°.
+ */
+class OrientationEngine {
+    // the weight of a new measurement in the low-pass filter
+    static final float ALPHA = 0.25f;
+
+    private final float[] gravity = new float[3];
+    private final float[] geomagnetic = new float[3];
+    private final float[] rotation = new float[9];
+    private final float[] orientation = new float[3];
+    private boolean hasGravity = false;
+    private boolean hasGeomagnetic = false;
+    private boolean changed = false;
+
+    // the state of the low-pass filter
+    private boolean filtered = false;
+    private double sin;
+    private double cos;
+
+    /**
+     * Sets a new measurement of the accelerometer.
+     *
+     * @param values The values of the sensor event, which are copied.
+     */
+    void setGravity(float[] values) {
+        changed |= copy(values, gravity) || !hasGravity;
+        hasGravity = true;
+    }
+
+    /**
+     * Sets a new measurement of the magnetic field sensor.
+     *
+     * @param values The values of the sensor event, which are copied.
+     */
+    void setGeomagnetic(float[] values) {
+        changed |= copy(values, geomagnetic) || !hasGeomagnetic;
+        hasGeomagnetic = true;
+    }
+
+    /**
+     * Calculates the azimuth from the current measurements, if they changed since the last call,
+     * and feeds it to the low-pass filter.
+     *
+     * @return True if the azimuth was updated.
+     */
+    boolean update() {
+        if (!changed || !hasGravity || !hasGeomagnetic) {
+            return false;
+        }
+        changed = false;
+        // the inclination matrix is not needed
+        if (!SensorManager.getRotationMatrix(rotation, null, gravity, geomagnetic)) {
+            return false;
+        }
+        float azimuth = SensorManager.getOrientation(rotation, orientation)[0];
+        if (filtered) {
+            sin += ALPHA * (Math.sin(azimuth) - sin);
+            cos += ALPHA * (Math.cos(azimuth) - cos);
+        } else {
+            sin = Math.sin(azimuth);
+            cos = Math.cos(azimuth);
+            filtered = true;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the filtered azimuth.
+     *
+     * @return The azimuth in degrees, from -180 to 180, clockwise from north, or NaN if it is not
+     * known yet.
+     */
+    double getAzimuth() {
+        return filtered ? Math.toDegrees(Math.atan2(sin, cos)) : Double.NaN;
+    }
+
+    /**
+     * Forgets all measurements and the filter state, e.g. when the sensors were paused.
+     */
+    void reset() {
+        hasGravity = false;
+        hasGeomagnetic = false;
+        changed = false;
+        filtered = false;
+    }
+
+    /**
+     * Copies the first three values.
+     *
+     * @return True if any value changed.
+     */
+    private static boolean copy(float[] from, float[] to) {
+        boolean changed = false;
+        for (int i = 0; i < 3; i++) {
+            if (to[i] != from[i]) {
+                to[i] = from[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
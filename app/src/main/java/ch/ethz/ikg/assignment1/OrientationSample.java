@@ -0,0 +1,54 @@
+package ch.ethz.ikg.assignment1;
+
+/**
+ * An immutable orientation of the device as published by {@link SensorUpdates}, calculated from
+ * the accelerometer and the magnetic field sensor.
+ */
+final class OrientationSample {
+    /**
+     * The orientation before both sensors have delivered a measurement.
+     */
+    static final OrientationSample UNKNOWN = new OrientationSample(Double.NaN);
+
+    private final double azimuth;
+
+    /**
+     * Constructor.
+     *
+     * @param azimuth The azimuth in degrees, from -180 to 180, clockwise from north.
+     */
+    OrientationSample(double azimuth) {
+        this.azimuth = azimuth;
+    }
+
+    /**
+     * @return True if the orientation could be calculated.
+     */
+    boolean isKnown() {
+        return !Double.isNaN(azimuth);
+    }
+
+    /**
+     * @return The azimuth in degrees, from -180 to 180, clockwise from north, or NaN if unknown.
+     */
+    double getAzimuth() {
+        return azimuth;
+    }
+
+    /**
+     * @return The bearing in whole degrees, from -180 to 180, where 0 is north and positive
+     * values are west of north, or NaN if unknown.
+     */
+    double getBearing() {
+        return isKnown() ? Math.round(-azimuth) : Double.NaN;
+    }
+
+    /**
+     * @return The bearing converted to the range from 0 to 360, as it is displayed and used to
+     * rotate the compass, or NaN if unknown.
+     */
+    double getHeadingDegree() {
+        double bearing = getBearing();
+        return bearing < 0 ? 360 + bearing : bearing;
+    }
+}
@@ -1,5 +1,6 @@
 package ch.ethz.ikg.assignment1;
 
+import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
@@ -15,44 +16,27 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.esri.arcgisruntime.geometry.Point;
-import com.esri.arcgisruntime.geometry.PointCollection;
 import com.esri.arcgisruntime.geometry.Polyline;
-import com.esri.arcgisruntime.geometry.SpatialReferences;
 import com.esri.arcgisruntime.mapping.ArcGISMap;
 import com.esri.arcgisruntime.mapping.Basemap;
 import com.esri.arcgisruntime.mapping.view.Graphic;
 import com.esri.arcgisruntime.mapping.view.GraphicsOverlay;
 import com.esri.arcgisruntime.mapping.view.LocationDisplay;
 import com.esri.arcgisruntime.mapping.view.MapView;
-import com.esri.arcgisruntime.symbology.LineSymbol;
 import com.esri.arcgisruntime.symbology.SimpleLineSymbol;
 
-import net.danlew.android.joda.JodaTimeAndroid;
-
-import org.joda.time.DateTime;
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ch.ethz.ikg.assignment1.Analysis.*;
-import io.ticofab.androidgpxparser.parser.GPXParser;
-import io.ticofab.androidgpxparser.parser.domain.Gpx;
-import io.ticofab.androidgpxparser.parser.domain.Track;
-import io.ticofab.androidgpxparser.parser.domain.TrackPoint;
-import io.ticofab.androidgpxparser.parser.domain.TrackSegment;
 
 /**
  * This activity shows a map with all GPX files in the assets folder. The individual tracks as well
  * as an average path are displayed. Furthermore, the activity allows a comparison between the user
  * and the shown GPS tracks considering speed and time of the user and on average at this position.
  */
-public class Routing extends AppCompatActivity implements Observer {
+public class Routing extends AppCompatActivity implements LocationUpdates.Listener, TrackPipeline.Listener {
 
     // initialize map and graphics
     private ArcGISMap map = null;
@@ -63,9 +47,6 @@ public class Routing extends AppCompatActivity implements Observer {
     MenuItem mTopoMenuItem = null;
     MenuItem mGrayMenuItem = null;
 
-    // The GPX parser comes from the "io.ticofab.androidgpxparser:parser" library.
-    GPXParser mParser;
-
     // initialize buttons and other UI elements
     ImageButton centerButton = null;
     ImageButton northButton = null;
@@ -75,8 +56,29 @@ public class Routing extends AppCompatActivity implements Observer {
     private TextView youSpeedTxtView;
     private ProgressBar progressBar;
 
-    // initialize aggregated (average) path
-    private List<Trackpoint> aggPath;
+    // FastDTW is used to align the tracks, since the exact alignment is quadratic in the track length.
+    // The aligned points are close to each other, so the equirectangular distance is accurate enough.
+    private static final DynamicTimeWarp.Strategy DTW_STRATEGY = DynamicTimeWarp.Strategy.fast(10)
+            .withMetric(DistanceMetric.EQUIRECTANGULAR);
+
+    // aggregates the tracks on all cores
+    private ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private TrackAggregator trackAggregator = new TrackAggregator(DTW_STRATEGY, executor);
+
+    // loads the tracks and computes the average path in the background
+    private TrackPipeline trackPipeline;
+
+    // creates a style for all paths
+    private final SimpleLineSymbol allTracksSymbol = new
+            SimpleLineSymbol(SimpleLineSymbol.Style.SOLID, Color.argb(100, 205, 55, 0), 3);
+    // creates a style for the average path
+    private final SimpleLineSymbol aggrTrackSymbol = new
+            SimpleLineSymbol(SimpleLineSymbol.Style.DASH, Color.argb(255, 205, 55, 0), 5);
+
+    // distances, times and speeds along the aggregated (average) path
+    private RouteProfile aggProfile;
+    // follows the user along the aggregated path, which is null until the pipeline has computed it
+    private ProgressTracker progressTracker;
 
     // initialize starting time of app
     private long startTime = 0;
@@ -85,6 +87,8 @@ public class Routing extends AppCompatActivity implements Observer {
 
     // initialize locationUpdates to access user-speed and get according measures of aggregated path
     private LocationUpdates locationUpdates = new LocationUpdates();
+    // adapts the rate of the GPS to the speed of the user and the turns of the aggPath
+    private SamplingPolicy samplingPolicy = new SamplingPolicy();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -106,8 +110,10 @@ public class Routing extends AppCompatActivity implements Observer {
         locationDisplay.setAutoPanMode(LocationDisplay.AutoPanMode.COMPASS_NAVIGATION);
         locationDisplay.startAsync();
 
-        // add this activity as observer of LocationUpdates
-        locationUpdates.addObserver(this);
+        // add this activity as listener of LocationUpdates
+        locationUpdates.addListener(this);
+        locationUpdates.addListener(samplingPolicy);
+        samplingPolicy.addListener(locationUpdates);
 
         // Reference UI elements
         avTimeTxtView = (TextView) findViewById(R.id.avTime);
@@ -117,20 +123,15 @@ public class Routing extends AppCompatActivity implements Observer {
         progressBar = (ProgressBar) findViewById(R.id.progressBar);
 
         // Set starting time on creation
-        startTime = DateTime.now().getMillis();
+        startTime = System.currentTimeMillis();
         // start timer
         timerHandler.postDelayed(timerRunnable, 0);
 
-        // This is needed for the GPX parser.
-        JodaTimeAndroid.init(this);
-        mParser = new GPXParser();
-
-        // Load GPX tracks
-        List<Gpx> tracks = loadTracks();
-
-        // Draw tracks on the map.
+        // Load GPX tracks in the background, and draw them on the map as soon as they are ready.
         clearMap();
-        visualizeTracks(tracks);
+        trackPipeline = new TrackPipeline(getAssets(), new File(getCacheDir(), "tracks"),
+                getAssetStamp(), trackAggregator, this);
+        trackPipeline.start();
 
         // initialize button to recenter
         centerButton = (ImageButton) findViewById(R.id.centerButton2);
@@ -168,25 +169,16 @@ public class Routing extends AppCompatActivity implements Observer {
     }
 
     /**
-     * Loads some tracks from the "assets" folder.
+     * Gets a value which changes whenever the assets (i.e. the app) are updated.
      *
-     * @return A list of GPX tracks, namely all found in the "assets" folder (ending with
-     * ".gpx").
+     * @return The time the app was last updated, or 0 if it is not known.
      */
-    private List<Gpx> loadTracks() {
-        List<Gpx> tracks = new LinkedList<>();
+    private long getAssetStamp() {
         try {
-            for (String file : getAssets().list("")) {
-                if (file.endsWith(".gpx")) {
-                    InputStream in = getAssets().open(file);
-                    Log.d("tracks", "Loading: " + file);
-                    tracks.add(mParser.parse(in));
-                }
-            }
-        } catch (IOException | XmlPullParserException e) {
-            e.printStackTrace();
+            return getPackageManager().getPackageInfo(getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
         }
-        return tracks;
     }
 
     /**
@@ -199,100 +191,31 @@ public class Routing extends AppCompatActivity implements Observer {
     }
 
     /**
-     * Visualizes a list of GPX tracks, by drawing all tracks, and an "average" track, computed using
-     * the dynamic time warping algorithm.
-     *
-     * @param tracks The overall track list.
-     */
-    private void visualizeTracks(List<Gpx> tracks) {
-        // creates a style for all paths
-        SimpleLineSymbol allTracksSymbol = new
-                SimpleLineSymbol(SimpleLineSymbol.Style.SOLID, Color.argb(100, 205, 55, 0), 3);
-        // creates a style for the average path
-        SimpleLineSymbol aggrTrackSymbol = new
-                SimpleLineSymbol(SimpleLineSymbol.Style.DASH, Color.argb(255, 205, 55, 0), 5);
-
-        List<List<Trackpoint>> tracksAsTrackpoints = new LinkedList<>();
-        // This draws all tracks, and also stores all GPX tracks as Trackpoint tracks.
-        for (Gpx track : tracks) {
-            visualizeTrack(gpxToTrackpoint(track), allTracksSymbol);
-            tracksAsTrackpoints.add(gpxToTrackpoint(track));
-        }
-
-        // Finding "average" path, by using dynamic time warping.
-        while (tracksAsTrackpoints.size() > 1) {
-            List<Trackpoint> t0 = tracksAsTrackpoints.remove(0);
-            List<Trackpoint> t1 = tracksAsTrackpoints.remove(0);
-            DynamicTimeWarp.DTWResult res = DynamicTimeWarp.compute(t0, t1);
-            aggPath = new LinkedList<>();
-
-            // Basically, for every trackpoint of t0, we look which trackpoints of t1
-            // correspond to it, and take the average. We do this for all tracks in a cluster.
-            for (int j = 0; j < res.getPath().size(); j++) {
-                List<Integer> mapping = res.getPath().get(j);
-                if (mapping.size() > 0) {
-                    double lon = t0.get(j).getLongitude();
-                    double lat = t0.get(j).getLatitude();
-                    long time = t0.get(j).getTime();
-
-                    for (int id : mapping) {
-                        lon += t1.get(id).getLongitude();
-                        lat += t1.get(id).getLatitude();
-                        time += t1.get(id).getTime(); //sum up time in milliseconds
-                    }
-
-                    lon = lon / (mapping.size() + 1);
-                    lat = lat / (mapping.size() + 1);
-                    time = time / (mapping.size() + 1); // average time at point t0
-
-                    aggPath.add(new Trackpoint(lon, lat, time));
-                }
-            }
-            tracksAsTrackpoints.add(aggPath);
-            progressBar.setMax(getMaxDist()); //set distance from start to end as maxValue for progress bar
-        }
-
-        visualizeTrack(tracksAsTrackpoints.get(0), aggrTrackSymbol);
-    }
-
-    /**
-     * Visualizes a track with a given symbol.
+     * Draws a track loaded by the {@link TrackPipeline} on the map.
      *
-     * @param track  The track to draw, as a list of {@link Trackpoint}s.
-     * @param symbol The symbol to draw the track with.
+     * @param track    The track.
+     * @param geometry The geometry of the track.
      */
-    private void visualizeTrack(List<Trackpoint> track, LineSymbol symbol) {
-        PointCollection pointColl = new PointCollection(SpatialReferences.getWgs84());
-
-        for (Trackpoint t : track) {
-            pointColl.add(new Point(t.getLongitude(), t.getLatitude()));
-        }
-
-        Polyline polyline = new Polyline(pointColl);
-        Graphic routeGraphic = new Graphic(polyline, symbol);
-
-        graphicsOverlay.getGraphics().add(routeGraphic);
+    @Override
+    public void onTrackLoaded(Trajectory track, Polyline geometry) {
+        graphicsOverlay.getGraphics().add(new Graphic(geometry, allTracksSymbol));
     }
 
     /**
-     * Converts a {@link Gpx} to a list of {@link Trackpoint}s, which are internally used.
+     * Draws the average path computed by the {@link TrackPipeline} on the map, and starts
+     * comparing the user with it.
      *
-     * @param track The GPX track to convert.
-     * @return A list of trackpoints.
+     * @param average  The average path.
+     * @param index    The spatial index over the average path.
+     * @param profile  The distances, times and speeds along the average path.
+     * @param geometry The geometry of the average path.
      */
-    private List<Trackpoint> gpxToTrackpoint(Gpx track) {
-        List<Trackpoint> trackpoints = new LinkedList<>();
-
-        for (Track t : track.getTracks()) {
-            for (TrackSegment segment : t.getTrackSegments()) {
-                for (TrackPoint routePoint : segment.getTrackPoints()) {
-                    trackpoints.add(new Trackpoint(routePoint.getLongitude(), routePoint.getLatitude(),
-                            routePoint.getTime().getMillis()));
-                }
-            }
-        }
-
-        return trackpoints;
+    @Override
+    public void onAverageReady(Trajectory average, PathIndex index, RouteProfile profile, Polyline geometry) {
+        aggProfile = profile;
+        progressTracker = new ProgressTracker(index, profile);
+        progressBar.setMax((int) profile.getLength()); //set route length as maxValue for progress bar
+        graphicsOverlay.getGraphics().add(new Graphic(geometry, aggrTrackSymbol));
     }
 
     /**
@@ -329,21 +252,34 @@ public class Routing extends AppCompatActivity implements Observer {
     }
 
     /**
-     * Pauses the app and deletes this as observer.
+     * This function is called when the activity is destroyed. The loading of the tracks is
+     * cancelled, and the threads used for the aggregation are stopped.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        trackPipeline.cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Pauses the app and removes this as listener.
      */
     protected void onPause() {
         super.onPause();
-        locationUpdates.deleteObserver(this);
+        locationUpdates.removeListener(this);
+        samplingPolicy.setVisible(false);
         // stop timer
         timerHandler.removeCallbacks(timerRunnable);
     }
 
     /**
-     * The method is called, when the activity is resumed. Adds this as an observer.
+     * The method is called, when the activity is resumed. Adds this as a listener.
      */
     protected void onResume() {
         super.onResume();
-        locationUpdates.addObserver(this);
+        samplingPolicy.setVisible(true);
+        locationUpdates.addListener(this);
     }
 
     /**
@@ -388,57 +324,35 @@ public class Routing extends AppCompatActivity implements Observer {
     }
 
     /**
-     * This function updates the UI elements every time some new values from the LocationUpdates come
-     * in. Some values are directly received from the observable and some are calculated.
-     * @param o observable that should be of type LocationUpdates
-     * @param arg that are passed by observable on every update
+     * This function updates the UI elements every time a new fix from the LocationUpdates comes
+     * in. Some values are directly taken from the fix and some are calculated.
+     * @param sample the new fix
      */
     @Override
-    public void update(Observable o, Object arg) {
+    public void onLocationChanged(LocationSample sample) {
         try {
-            if (o instanceof LocationUpdates) {
-                String[] locationValues = (String[]) arg;
-                youSpeedTxtView.setText(locationValues[2]);
-                // current location is stored as trackpoint to ease further calculations
-                Trackpoint current = new Trackpoint(Double.valueOf(locationValues[1]), Double.valueOf(locationValues[0]), DateTime.now().getMillis());
-                // min distance is initialized
-                double min = Double.POSITIVE_INFINITY;
-                Trackpoint closest = null;
-                for (Trackpoint tp : aggPath) { //compares the distance between the current location
-                    // and every trackpoint in the aggPath to get the closest trackpoit
-                    if (current.distance(tp) < min) {
-                        min = current.distance(tp);
-                        closest = tp;
-                    }
-                }
-                // Average time is extracted from closest trackpoint
-                assert closest != null;
-                avTimeTxtView.setText(getTimeDiff(closest.getTime(), aggPath.get(0).getTime()));
-                int closestIndex = aggPath.indexOf(closest);
-                // Average speed at closest trackpoint is calculated
-                if (aggPath.get(closestIndex - 1) != null) {
-                    avSpeedTxtView.setText(String.format("%.2f km/h", closest.speed(aggPath.get(closestIndex - 1))));
-                }
-                // Current progress is calculated and updated.
-                int progress = (int) (getMaxDist() - current.distance(aggPath.get(aggPath.size() - 1)));
-                progressBar.setProgress(progress);
+            // location.getSpeed returns speed in m/s and therefore *3.6 to get speed in km/h
+            youSpeedTxtView.setText(String.format("%.1f km/h", sample.getSpeed() * 3.6));
+            // the average path is not available until the tracks are loaded
+            if (progressTracker == null) {
+                return;
             }
+            // the tracker matches the location to the aggPath, continuing from the last match
+            double distanceAlong = progressTracker.update(sample.getLongitude(), sample.getLatitude());
+            int closestIndex = progressTracker.getNearestPoint();
+            // sample faster when approaching a turn
+            samplingPolicy.setDistanceToTurn(aggProfile.getDistanceToNextTurn(distanceAlong));
+            // Average time and speed at the closest trackpoint are read from the profile
+            avTimeTxtView.setText(getTimeDiff(aggProfile.getElapsedTime(closestIndex), 0));
+            avSpeedTxtView.setText(String.format("%.2f km/h", aggProfile.getSpeed(progressTracker.getSegment())));
+            // Current progress is the distance covered along the aggPath.
+            progressBar.setProgress((int) distanceAlong);
         } catch (Exception e) {
             Log.e("Location Update", "Location update did not work.");
             Log.getStackTraceString(e);
         }
     }
 
-    /**
-     * This method calculates the distance between the first point of the aggregated path and the
-     * destination
-     *
-     * @return Distance between start and end
-     */
-    public int getMaxDist() {
-        return (int) aggPath.get(0).distance(aggPath.get(aggPath.size() - 1));
-    }
-
     /**
      * This object is the timer, which will update the user's time on the display every second.
      */
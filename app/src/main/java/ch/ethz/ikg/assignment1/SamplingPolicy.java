@@ -0,0 +1,242 @@
+package ch.ethz.ikg.assignment1;
+
+import android.hardware.SensorManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how often the GPS and the sensors are read. While the user moves fast or approaches a
+ * turn of the followed path, positions and heading are sampled often, so that the display stays
+ * smooth; while the user stands still or the app is paused, they are sampled rarely, so that the
+ * device wakes up less often.
+ * <p>
+ * The policy is fed with every fix (it is a {@link LocationUpdates.Listener}), with the distance
+ * to the next turn if a path is followed, and with the visibility of the app. Whenever the
+ * resulting {@link Rate} changes, the registered listeners (e.g. {@link LocationUpdates} and
+ * {@link SensorUpdates}) are notified and register their sensors again.
+ */
+class SamplingPolicy implements LocationUpdates.Listener {
+    // above this speed (in m/s), the user moves fast; below the lower speed not any more
+    private static final float FAST_SPEED = 6;
+    private static final float FAST_SPEED_EXIT = 4.5f;
+    // below this speed (in m/s) for STATIONARY_DELAY_MS, the user stands still; above the higher
+    // speed not any more
+    private static final float STATIONARY_SPEED = 0.5f;
+    private static final float STATIONARY_SPEED_EXIT = 1;
+    private static final long STATIONARY_DELAY_MS = 30000;
+    // if the next turn is closer than this (in meters), the user is near a turn
+    private static final double NEAR_TURN_DISTANCE = 50;
+
+    /**
+     * The sampling rates.
+     */
+    static final class Rate {
+        /**
+         * Moving fast or near a turn: positions every half second and the heading at game rate.
+         */
+        static final Rate FAST = new Rate("fast", 500, 2, SensorManager.SENSOR_DELAY_GAME, 0, 1000000);
+        /**
+         * Moving normally.
+         */
+        static final Rate NORMAL = new Rate("normal", 1000, 2, SensorManager.SENSOR_DELAY_UI, 0, 1000000);
+        /**
+         * Standing still: positions only after moving 5 meters, the heading rarely and batched.
+         */
+        static final Rate STATIONARY = new Rate("stationary", 5000, 5, SensorManager.SENSOR_DELAY_NORMAL, 1000000, 5000000);
+        /**
+         * The app is paused but not yet stopped, e.g. partly covered by a dialog or another window:
+         * positions rarely and no heading at all. Once the activity is stopped, the location
+         * updates are removed altogether, so nothing is sampled (or recorded) in the background.
+         */
+        static final Rate BACKGROUND = new Rate("background", 5000, 5, -1, 0, 10000000);
+
+        private final String name;
+        private final long locationInterval;
+        private final float locationDistance;
+        private final int orientationDelay;
+        private final int maxReportLatency;
+        private final int temperatureDelay;
+
+        private Rate(String name, long locationInterval, float locationDistance, int orientationDelay,
+                     int maxReportLatency, int temperatureDelay) {
+            this.name = name;
+            this.locationInterval = locationInterval;
+            this.locationDistance = locationDistance;
+            this.orientationDelay = orientationDelay;
+            this.maxReportLatency = maxReportLatency;
+            this.temperatureDelay = temperatureDelay;
+        }
+
+        /**
+         * Gets the minimum time between two fixes.
+         *
+         * @return The time in milliseconds.
+         */
+        long getLocationInterval() {
+            return locationInterval;
+        }
+
+        /**
+         * Gets the minimum distance between two fixes.
+         *
+         * @return The distance in meters.
+         */
+        float getLocationDistance() {
+            return locationDistance;
+        }
+
+        /**
+         * Gets the sampling period of the accelerometer and magnetometer, which determine the
+         * heading.
+         *
+         * @return The period in microseconds or as one of the SENSOR_DELAY constants, or -1 if the
+         * sensors are not needed.
+         */
+        int getOrientationDelay() {
+            return orientationDelay;
+        }
+
+        /**
+         * Gets the time the sensors may batch their events before reporting them.
+         *
+         * @return The time in microseconds, or 0 to report every event at once.
+         */
+        int getMaxReportLatency() {
+            return maxReportLatency;
+        }
+
+        /**
+         * Gets the sampling period of the temperature sensor.
+         *
+         * @return The period in microseconds.
+         */
+        int getTemperatureDelay() {
+            return temperatureDelay;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Receives the changes of the rate.
+     */
+    interface Listener {
+        /**
+         * Called when the rate changed, and when the listener is added.
+         *
+         * @param rate The new rate.
+         */
+        void onRateChanged(Rate rate);
+    }
+
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private Rate rate = Rate.NORMAL;
+
+    private boolean visible = true;
+    private boolean fast = false;
+    private boolean stationary = false;
+    private boolean nearTurn = false;
+    // the time since which the user moves slower than STATIONARY_SPEED, or -1
+    private long slowSince = -1;
+
+    /**
+     * Registers a listener, which is immediately notified about the current rate.
+     *
+     * @param listener The listener.
+     */
+    void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+            listener.onRateChanged(rate);
+        }
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener.
+     */
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the current rate.
+     *
+     * @return The rate.
+     */
+    Rate getRate() {
+        return rate;
+    }
+
+    /**
+     * Updates the movement state from the speed of a fix. Fast and stationary are left at lower
+     * (respectively higher) speeds than they are entered, so that the rate does not flip back and
+     * forth around a threshold.
+     *
+     * @param sample The fix.
+     */
+    @Override
+    public void onLocationChanged(LocationSample sample) {
+        float speed = sample.getSpeed();
+        if (Float.isNaN(speed)) {
+            return;
+        }
+        fast = speed > (fast ? FAST_SPEED_EXIT : FAST_SPEED);
+        if (speed >= (stationary ? STATIONARY_SPEED_EXIT : STATIONARY_SPEED)) {
+            slowSince = -1;
+            stationary = false;
+        } else if (slowSince < 0) {
+            slowSince = sample.getTime();
+        } else if (sample.getTime() - slowSince >= STATIONARY_DELAY_MS) {
+            stationary = true;
+        }
+        update();
+    }
+
+    /**
+     * Sets the distance to the next turn of the followed path.
+     *
+     * @param distance The distance in meters, or infinity if there is no turn ahead or no path
+     *                 is followed.
+     */
+    void setDistanceToTurn(double distance) {
+        nearTurn = distance < NEAR_TURN_DISTANCE;
+        update();
+    }
+
+    /**
+     * Sets whether the app is visible, i.e. between onResume and onPause. The screen being
+     * switched off pauses the activity as well.
+     *
+     * @param visible True if the app is visible.
+     */
+    void setVisible(boolean visible) {
+        this.visible = visible;
+        update();
+    }
+
+    private void update() {
+        Rate next;
+        if (!visible) {
+            next = Rate.BACKGROUND;
+        } else if (stationary) {
+            // standing still, e.g. at a traffic light, even if it is close to a turn
+            next = Rate.STATIONARY;
+        } else if (fast || nearTurn) {
+            next = Rate.FAST;
+        } else {
+            next = Rate.NORMAL;
+        }
+        if (next != rate) {
+            rate = next;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onRateChanged(rate);
+            }
+        }
+    }
+}
@@ -8,26 +8,31 @@ import android.hardware.SensorManager;
 import android.os.Build;
 import android.support.v7.app.AppCompatActivity;
 
-import java.util.Observable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class implements the SensorEventListener which receives updates from several sensors.
- * The class implements the Observable interface so that the main activity can observe sensor
- * changes. The arguments needed in the MainActivity are passed as an String[4] of the form:
- * {Heading, HeadingDegree, HeadingDegreeNumb, Temperature} The values Heading, HeadingDegree and
- * Temperature can be directly shown in the interface. The HeadingDegreeNumb will be converted
- * to float and used for the rotation animation of the imageview in the main activity.
+ * Registered {@link Listener}s are notified about the orientation of the device (an
+ * {@link OrientationSample}) and the ambient temperature (a {@link TemperatureSample}). The
+ * samples carry the numeric values; listeners format them only if they display them, e.g. with
+ * {@link #getHeading(double)}.
+ * <p>
+ * How often the sensors are read is decided by a {@link SamplingPolicy}; whenever its rate
+ * changes while the sensors are registered, they are registered again with the new rate.
  */
 
-public class SensorUpdates extends Observable implements SensorEventListener {
+public class SensorUpdates implements SensorEventListener, SamplingPolicy.Listener {
 
-    // the ALPHA value is needed for the low-pass filter
-    static final float ALPHA = 0.25f;
     // Message to be displayed if sensor is not available
-    private final static String NOT_SUPPORTED = "Sensor not available";
-    // Create arrays to store gravity and magnetic field sensor values that are used to calculate heading
-    float[] gravity;
-    float[] geomagnetic;
+    final static String NOT_SUPPORTED = "Sensor not available";
+    // Calculates the heading from the gravity and magnetic field sensor values
+    private final OrientationEngine engine = new OrientationEngine();
+    // the bearing of the last published orientation, a new one is only published when it changes
+    private double publishedBearing = Double.NaN;
+    // the current sampling rate, and whether the sensors are registered at the moment
+    private SamplingPolicy.Rate rate = SamplingPolicy.Rate.NORMAL;
+    private boolean registered = false;
 
     // Create SensorManager to access sensor measurements
     private SensorManager sensorManager;
@@ -37,117 +42,183 @@ public class SensorUpdates extends Observable implements SensorEventListener {
     private Sensor accelerometer;
     private Sensor magnetometer;
 
-    // This Array will be passed to the observer as argument.
-    private String[] sensorValues = new String[4];
+    // The registered listeners, which are notified in the order they were added.
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    /**
+     * Receives the samples of a {@link SensorUpdates}. The methods are called on the UI thread.
+     */
+    interface Listener {
+        /**
+         * Called when the orientation of the device changed.
+         *
+         * @param sample The new orientation.
+         */
+        void onOrientationChanged(OrientationSample sample);
+
+        /**
+         * Called when the ambient temperature was measured.
+         *
+         * @param sample The new temperature.
+         */
+        void onTemperatureChanged(TemperatureSample sample);
+    }
+
+    /**
+     * Registers a listener. Adding a listener which is registered already has no effect.
+     *
+     * @param listener The listener.
+     */
+    void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener.
+     */
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
 
     /**
      * This method is to be called by the MainActivity in its onStart() method. The method creates
-     * initializes the arguments that are provided to the observer, creates the sensorManager and
-     * initializes the needed sensors. Furthermore, the build version is checked for the
-     * temperature sensor. Furthermore, it checks if a temperature sensor is available and displays
-     * a message (NOT_SUPPORTED) if it is not.
+     * the sensorManager and initializes the needed sensors. Furthermore, the build version is
+     * checked for the temperature sensor.
      */
     protected void onStart(AppCompatActivity activity) {
-        //Initialize Array which is passed to the observer
-        for (int i = 0; i < 4; i++) {
-            sensorValues[i] = "N/A";
-        }
         // get temperature sensor, if it is supported by current version.
         sensorManager = (SensorManager) activity.getSystemService(Context.SENSOR_SERVICE);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
             tempSensor = sensorManager.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE);
         }
-        // set temperature textview to NOT_SUPPORTED if no temperature sensor is available
-        if (tempSensor == null) {
-            sensorValues[3] = NOT_SUPPORTED;
-        }
         // get accelerometer and magnetometer
         accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
     }
 
+    /**
+     * Checks if the device has a temperature sensor. Only valid after {@link #onStart}.
+     *
+     * @return True if temperature samples can be published.
+     */
+    boolean hasTemperatureSensor() {
+        return tempSensor != null;
+    }
+
     /**
      * This method is to be called by the MainActivity in its onStop() method. This function
      * prevents the app from further accessing any sensors if it is stopped.
      */
     protected void onStop() {
+        registered = false;
         sensorManager.unregisterListener(this);
     }
 
     /**
      * This method is to be called by the MainActivity in its onResume() method. It registers
-     * Listeners for all sensors on resume with a delay of one second.
+     * Listeners for all sensors on resume, at the current rate of the sampling policy.
      */
     protected void onResume() {
+        register();
+    }
+
+    /**
+     * Applies a new sampling rate. If the sensors are registered at the moment, they are
+     * registered again with the new rate.
+     *
+     * @param rate The new rate.
+     */
+    @Override
+    public void onRateChanged(SamplingPolicy.Rate rate) {
+        this.rate = rate;
+        if (registered) {
+            sensorManager.unregisterListener(this);
+            register();
+        }
+    }
+
+    /**
+     * Registers the sensors at the current rate. Where batching is supported (from KitKat), the
+     * events may be delayed by the maximum report latency of the rate, so that the device can
+     * sleep in between.
+     */
+    private void register() {
         if (tempSensor != null) {
-            sensorManager.registerListener(this, tempSensor, 1000000);
+            register(tempSensor, rate.getTemperatureDelay());
+        }
+        if (rate.getOrientationDelay() >= 0) {
+            register(accelerometer, rate.getOrientationDelay());
+            register(magnetometer, rate.getOrientationDelay());
+        }
+        registered = true;
+    }
+
+    private void register(Sensor sensor, int delay) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            sensorManager.registerListener(this, sensor, delay, rate.getMaxReportLatency());
+        } else {
+            sensorManager.registerListener(this, sensor, delay);
         }
-        sensorManager.registerListener(this, accelerometer, 3000000);
-        sensorManager.registerListener(this, magnetometer, 3000000);
     }
 
     /**
      * This method is to be called by the MainActivity in its onPause() method. It unregisters
-     * all sensors on pause
+     * all sensors on pause, and forgets the measurements, which are outdated on resume.
      */
     protected void onPause() {
+        registered = false;
         sensorManager.unregisterListener(this);
+        engine.reset();
+        publishedBearing = Double.NaN;
     }
 
     /**
      * This function handles incoming sensor measurements. It handles temperature measurements as
      * well as accelerometer and magnetic field measurements which are used to calculate the heading.
-     * The heading is directly displayed on the display as user readable text.
+     * The listeners are notified about the new temperature, or about the heading whenever it
+     * changed by at least a degree, so that measurements which do not change the display do not
+     * allocate anything.
      *
      * @param event
      */
     public void onSensorChanged(SensorEvent event) {
-        setChanged();
         Sensor sensor = event.sensor;
-        // Set temperature on display, if event is of type temperature
+        // Publish temperature, if event is of type temperature
         if (sensor.getType() == Sensor.TYPE_AMBIENT_TEMPERATURE) {
-            float temperature = event.values[0];
-            sensorValues[3] = String.format("%.1f° C", temperature);
-            // Get values of accelerometer and store them
+            TemperatureSample sample = new TemperatureSample(event.values[0]);
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onTemperatureChanged(sample);
+            }
+            return;
         } else if (sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            gravity = event.values;
-            // Get magnetic field values and store them
+            // Get values of accelerometer and store them
+            engine.setGravity(event.values);
         } else if (sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            geomagnetic = event.values;
+            // Get magnetic field values and store them
+            engine.setGeomagnetic(event.values);
         }
-        // Access accelerometer and magnetic field values
-        if (gravity != null && geomagnetic != null) {
-            float R[] = new float[9];
-            float I[] = new float[9];
-            // check if rotation matrix was calculated
-            boolean success = SensorManager.getRotationMatrix(R, I, gravity, geomagnetic);
-            if (success) {
-                // calculate azimuth, based on accelerometer and magnetic field sensors
-                float orientation[] = new float[3];
-                orientation = lowPass(SensorManager.getOrientation(R, orientation), orientation);
-                float azimuth = orientation[0];
-                // calculate bearing based on azimuth
-                double bearing = Math.round(-azimuth * 360 / (2 * Math.PI));
-                // display bearing on display as readable text using getHeading(bearing)
-                sensorValues[0] = getHeading(bearing);
-                double bearingDegree;
-                if (bearing < 0) {
-                    bearingDegree = 360 + bearing;
-                } else if (bearing > 0) {
-                    bearingDegree = bearing;
-                } else {
-                    bearingDegree = 0;
-                }
-                sensorValues[1] = String.format("%.0f°", bearingDegree);
-                sensorValues[2] = String.valueOf(bearingDegree);
-
-                notifyObservers(sensorValues);
+        // calculate azimuth, based on accelerometer and magnetic field sensors
+        if (engine.update()) {
+            // calculate bearing based on azimuth, in whole degrees as displayed
+            double azimuth = engine.getAzimuth();
+            double bearing = Math.round(-azimuth);
+            if (bearing != publishedBearing) {
+                publishedBearing = bearing;
+                publish(new OrientationSample(azimuth));
             }
-        } else {
-            sensorValues[0] = "N/A";
-            sensorValues[1] = "N/A";
-            sensorValues[2] = "0";
-            notifyObservers(sensorValues);
+        }
+    }
+
+    /**
+     * Notifies all listeners about a new orientation.
+     */
+    private void publish(OrientationSample sample) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onOrientationChanged(sample);
         }
     }
 
@@ -159,7 +230,7 @@ public class SensorUpdates extends Observable implements SensorEventListener {
      * @param bearing calculated based on azimuth (based on accelerometer and magnetic field sensor)
      * @return string heading as user-readable text (N/NW/W/SW/S/SE/E/NE)
      */
-    public String getHeading(double bearing) {
+    public static String getHeading(double bearing) {
         String heading = "N/A";
         if ((bearing >= -22.5 && bearing <= 0) || (bearing >= 0 && bearing <= 22.5)) {
             heading = "N";
@@ -182,22 +253,6 @@ public class SensorUpdates extends Observable implements SensorEventListener {
     }
 
 
-    /**
-     * The low-pass filter omits high frequencies in sensor measurements and allows for a smoother
-     * measuring process.
-     *
-     * @param input  measurement values directly from the sensor
-     * @param output variable, in which the filtered values are written
-     * @return filtered values
-     */
-    protected float[] lowPass(float[] input, float[] output) {
-        if (output == null) return input;
-        for (int i = 0; i < input.length; i++) {
-            output[i] = output[i] + ALPHA * (input[i] - output[i]);
-        }
-        return output;
-    }
-
     /**
      * Unused function
      *
@@ -0,0 +1,24 @@
+package ch.ethz.ikg.assignment1;
+
+/**
+ * An immutable measurement of the ambient temperature as published by {@link SensorUpdates}.
+ */
+final class TemperatureSample {
+    private final float celsius;
+
+    /**
+     * Constructor.
+     *
+     * @param celsius The temperature in degrees Celsius.
+     */
+    TemperatureSample(float celsius) {
+        this.celsius = celsius;
+    }
+
+    /**
+     * @return The temperature in degrees Celsius.
+     */
+    float getCelsius() {
+        return celsius;
+    }
+}
@@ -0,0 +1,321 @@
+package ch.ethz.ikg.assignment1;
+
+import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.esri.arcgisruntime.geometry.Point;
+import com.esri.arcgisruntime.geometry.PointCollection;
+import com.esri.arcgisruntime.geometry.Polyline;
+import com.esri.arcgisruntime.geometry.SpatialReferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ch.ethz.ikg.assignment1.Analysis.AverageCache;
+import ch.ethz.ikg.assignment1.Analysis.GpxReader;
+import ch.ethz.ikg.assignment1.Analysis.PathIndex;
+import ch.ethz.ikg.assignment1.Analysis.RouteProfile;
+import ch.ethz.ikg.assignment1.Analysis.TrackAggregator;
+import ch.ethz.ikg.assignment1.Analysis.Trajectory;
+import ch.ethz.ikg.assignment1.Analysis.TrajectoryFile;
+
+/**
+ * This class loads all GPX tracks from the assets folder and computes their average path in the
+ * background, so that the UI thread is never blocked. The work is done in stages:
+ * parse (GPX file, streamed directly into a {@link Trajectory}) -> build the {@link Polyline}
+ * geometry -> aggregate (average path). Every track is handed to the listener on the UI thread as
+ * soon as it is parsed, the average path as soon as all tracks are aggregated.
+ * <p>
+ * Every parsed GPX file is cached as a {@link TrajectoryFile}, so that later starts can skip the
+ * XML parsing entirely. Likewise, the average path is stored in an {@link AverageCache}, keyed by
+ * the fingerprints of all tracks, so that it is only computed once for a given set of tracks.
+ */
+class TrackPipeline {
+
+    // the number of parsed tracks which may wait for their geometry, before the parsing blocks
+    private static final int QUEUE_SIZE = 4;
+    // the number of average paths which are kept in the cache
+    private static final int AVERAGE_CACHE_SIZE = 8;
+
+    /**
+     * Receives the results of the pipeline. All methods are called on the UI thread.
+     */
+    interface Listener {
+        /**
+         * Called for every track, as soon as it is loaded.
+         *
+         * @param track    The track.
+         * @param geometry The geometry of the track, to be drawn on the map.
+         */
+        void onTrackLoaded(Trajectory track, Polyline geometry);
+
+        /**
+         * Called once, after all tracks are loaded and aggregated.
+         *
+         * @param average  The average path.
+         * @param index    The spatial index over the points of the average path.
+         * @param profile  The distances, times and speeds along the average path.
+         * @param geometry The geometry of the average path, to be drawn on the map.
+         */
+        void onAverageReady(Trajectory average, PathIndex index, RouteProfile profile, Polyline geometry);
+    }
+
+    private final AssetManager assets;
+    private final File cacheDir;
+    private final long assetStamp;
+    private final TrackAggregator aggregator;
+    private final AverageCache averageCache;
+    private final Listener listener;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+    // runs the parsing and drives all other stages
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    // builds the geometry of the parsed tracks. If the queue is full, the parsing thread does this
+    // itself, which keeps the number of parsed tracks in memory bounded.
+    private final ThreadPoolExecutor workers = new ThreadPoolExecutor(1,
+            Runtime.getRuntime().availableProcessors(), 10, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructor.
+     *
+     * @param assets     The assets containing the GPX files.
+     * @param cacheDir   The directory in which the parsed tracks are cached.
+     * @param assetStamp A value which changes whenever the assets change, e.g. the time the app
+     *                   was last updated. Cached tracks with another stamp are parsed again.
+     * @param aggregator The aggregator used to compute the average path.
+     * @param listener   The listener receiving the results on the UI thread.
+     */
+    TrackPipeline(AssetManager assets, File cacheDir, long assetStamp, TrackAggregator aggregator,
+                  Listener listener) {
+        this.averageCache = new AverageCache(new File(cacheDir, "averages"), AVERAGE_CACHE_SIZE);
+        this.assets = assets;
+        this.cacheDir = cacheDir;
+        this.assetStamp = assetStamp;
+        this.aggregator = aggregator;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts loading the tracks in the background.
+     */
+    void start() {
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    process();
+                } catch (InterruptedException e) {
+                    Log.d("tracks", "Loading of the tracks was cancelled.");
+                } catch (RuntimeException e) {
+                    // Once cancelled, the aggregation executor may be shut down, so that it rejects
+                    // the merges. Anything else must not kill the process either.
+                    if (cancelled) {
+                        Log.d("tracks", "Loading of the tracks was cancelled.");
+                    } else {
+                        Log.e("tracks", Log.getStackTraceString(e));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops all stages. No results are delivered to the listener afterwards.
+     */
+    void cancel() {
+        cancelled = true;
+        loader.shutdownNow();
+        workers.shutdownNow();
+        uiHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Runs all stages of the pipeline.
+     *
+     * @throws InterruptedException If the pipeline is cancelled.
+     */
+    private void process() throws InterruptedException {
+        List<Future<Trajectory>> published = new ArrayList<>();
+
+        // Stage 1: parse all GPX files, and hand them to the workers. A file which cannot be read
+        // is skipped, so that all other tracks are still published.
+        String[] files;
+        try {
+            files = assets.list("");
+        } catch (IOException e) {
+            Log.e("tracks", Log.getStackTraceString(e));
+            return;
+        }
+        for (String file : files) {
+            if (cancelled) {
+                return;
+            }
+            if (file.endsWith(".gpx")) {
+                Trajectory track;
+                try {
+                    track = loadTrack(file);
+                } catch (IOException e) {
+                    Log.e("tracks", "Skipping " + file + ": " + e.getMessage());
+                    continue;
+                }
+                published.add(workers.submit(publish(track)));
+            }
+        }
+
+        // Stage 2 (running on the workers): build the geometry and publish all tracks.
+        List<Trajectory> trajectories = new ArrayList<>(published.size());
+        for (Future<Trajectory> future : published) {
+            try {
+                Trajectory trajectory = future.get();
+                if (trajectory.size() > 0) {
+                    trajectories.add(trajectory);
+                }
+            } catch (ExecutionException e) {
+                Log.e("tracks", Log.getStackTraceString(e));
+            }
+        }
+
+        // Stage 3: aggregate all tracks (unless the result is cached), index and profile the average
+        // path, and publish it.
+        if (cancelled || trajectories.isEmpty()) {
+            return;
+        }
+        String key = AverageCache.key(trajectories, aggregator.toString());
+        Trajectory cached = averageCache.get(key);
+        final Trajectory average;
+        if (cached != null) {
+            Log.d("tracks", "Average path loaded from cache.");
+            average = cached;
+        } else {
+            // The cache lookup cannot be interrupted, so the pipeline may have been cancelled
+            // meanwhile.
+            if (cancelled) {
+                return;
+            }
+            average = aggregator.average(trajectories);
+            try {
+                averageCache.put(key, average);
+            } catch (IOException e) {
+                Log.w("tracks", "Could not cache the average path.", e);
+            }
+        }
+        final PathIndex index = new PathIndex(average);
+        final RouteProfile profile = new RouteProfile(average);
+        final Polyline geometry = toPolyline(average);
+        post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onAverageReady(average, index, profile, geometry);
+            }
+        });
+    }
+
+    /**
+     * Loads a track, either from the cache or by parsing the GPX file. Newly parsed tracks are
+     * written to the cache.
+     *
+     * @param file The name of the GPX file in the assets.
+     * @return The track.
+     * @throws IOException If the GPX file cannot be read.
+     */
+    private Trajectory loadTrack(String file) throws IOException {
+        File cached = new File(cacheDir, file + ".trk");
+        if (cached.exists()) {
+            try {
+                TrajectoryFile trajectoryFile = TrajectoryFile.open(cached);
+                if (trajectoryFile.getStamp() == assetStamp) {
+                    Log.d("tracks", "Loading from cache: " + file);
+                    return trajectoryFile.read();
+                }
+            } catch (IOException e) {
+                Log.w("tracks", "Ignoring invalid cache file " + cached, e);
+            }
+        }
+
+        Log.d("tracks", "Loading: " + file);
+        Trajectory trajectory;
+        InputStream in = assets.open(file);
+        try {
+            trajectory = GpxReader.read(in);
+        } finally {
+            in.close();
+        }
+        try {
+            cacheDir.mkdirs();
+            TrajectoryFile.write(cached, trajectory, assetStamp);
+        } catch (IOException e) {
+            Log.w("tracks", "Could not cache " + file, e);
+        }
+        return trajectory;
+    }
+
+    /**
+     * Creates the task building the geometry of a parsed track and publishing it.
+     *
+     * @param trajectory The parsed track.
+     * @return The task, which publishes the track and returns the trajectory.
+     */
+    private Callable<Trajectory> publish(final Trajectory trajectory) {
+        return new Callable<Trajectory>() {
+            @Override
+            public Trajectory call() {
+                if (trajectory.size() > 0) {
+                    final Polyline geometry = toPolyline(trajectory);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onTrackLoaded(trajectory, geometry);
+                        }
+                    });
+                }
+                return trajectory;
+            }
+        };
+    }
+
+    /**
+     * Posts a result to the UI thread, unless the pipeline is cancelled.
+     */
+    private void post(final Runnable result) {
+        uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled) {
+                    result.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the geometry of a track.
+     *
+     * @param track The track.
+     * @return A polyline through all points of the track.
+     */
+    private static Polyline toPolyline(Trajectory track) {
+        PointCollection pointColl = new PointCollection(SpatialReferences.getWgs84());
+
+        for (int i = 0; i < track.size(); i++) {
+            pointColl.add(new Point(track.getLongitude(i), track.getLatitude(i)));
+        }
+
+        return new Polyline(pointColl);
+    }
+}
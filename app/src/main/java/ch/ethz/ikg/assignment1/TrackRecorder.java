@@ -0,0 +1,266 @@
+package ch.ethz.ikg.assignment1;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import ch.ethz.ikg.assignment1.Analysis.SessionLog;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the positions of a session, without doing any I/O on the thread which receives the
+ * positions (the UI thread). The positions are handed over through a lock-free single-producer
+ * single-consumer ring buffer to a background thread, which appends every fix with its altitude,
+ * speed, bearing, accuracy and the sensor values of the moment to the segments of a
+ * {@link SessionLog}. The segments are flushed periodically or once enough positions are waiting,
+ * so a crash loses at most the last few seconds; segments left over by a crash are repaired before
+ * the recording starts.
+ * <p>
+ * At the end of the session, the background thread exports the session to a CSV file and notifies
+ * the media scanner once, so stopping does not block the calling thread either. If the log cannot
+ * be written, no further positions are accepted and the {@link Listener} is notified.
+ * <p>
+ * {@link #record(long, double, double, float, float, float, float, float, float)} must always be
+ * called from the same thread.
+ */
+class TrackRecorder {
+    // the number of positions the ring buffer can hold, must be a power of two
+    private static final int CAPACITY = 1024;
+    // the writer is woken up whenever another this many positions are waiting
+    private static final int WAKE_UP_SIZE = 64;
+    // the longest time positions stay in memory before they are written
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    /**
+     * Receives the failures of a recording. The method is called on the UI thread.
+     */
+    interface Listener {
+        /**
+         * Called once if the session cannot be written, e.g. because the storage is full or was
+         * removed. The recorder does not accept positions afterwards.
+         *
+         * @param recorder The recorder which failed.
+         * @param e        The cause.
+         */
+        void onRecordingFailed(TrackRecorder recorder, IOException e);
+    }
+
+    private final SessionLog log;
+    private final long session;
+    private final File csvFile;
+    private final Context context;
+    private final Listener listener;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+    // the positions, stored in parallel arrays; slot i % CAPACITY holds position i
+    private final long[] times = new long[CAPACITY];
+    private final double[] latitudes = new double[CAPACITY];
+    private final double[] longitudes = new double[CAPACITY];
+    private final float[] altitudes = new float[CAPACITY];
+    private final float[] speeds = new float[CAPACITY];
+    private final float[] bearings = new float[CAPACITY];
+    private final float[] accuracies = new float[CAPACITY];
+    private final float[] headings = new float[CAPACITY];
+    private final float[] temperatures = new float[CAPACITY];
+    // the number of positions ever recorded (written by the producer only)
+    private final AtomicLong head = new AtomicLong();
+    // the number of positions ever written (written by the writer only)
+    private final AtomicLong tail = new AtomicLong();
+    // the number of positions dropped because the writer did not keep up
+    private long dropped = 0;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    // set by the writer if the log cannot be written
+    private volatile boolean failed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param log      The log to which the session is written.
+     * @param session  The start time of the session, which identifies it in the log.
+     * @param csvFile  The CSV file to which the session is exported at its end.
+     * @param context  The context used to notify the media scanner at the end of the session.
+     * @param listener The listener notified if the recording fails.
+     */
+    TrackRecorder(SessionLog log, long session, File csvFile, Context context, Listener listener) {
+        this.log = log;
+        this.session = session;
+        this.csvFile = csvFile;
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "TrackRecorder");
+    }
+
+    /**
+     * Starts the background thread, which repairs the log and starts the session.
+     */
+    void start() {
+        writer.start();
+    }
+
+    /**
+     * Records a position. This only copies the values into the ring buffer, so it is cheap enough
+     * to be called for every fix on the UI thread. If the buffer is full or the recording failed,
+     * the position is dropped.
+     *
+     * @param time        The time of the fix, in milliseconds.
+     * @param latitude    The latitude.
+     * @param longitude   The longitude.
+     * @param altitude    The altitude in meters, or NaN if unknown.
+     * @param speed       The speed in m/s, or NaN if unknown.
+     * @param bearing     The bearing (direction of movement) in degrees, or NaN if unknown.
+     * @param accuracy    The accuracy of the fix in meters, or NaN if unknown.
+     * @param heading     The heading of the device in degrees, or NaN if unknown.
+     * @param temperature The ambient temperature in degrees Celsius, or NaN if unknown.
+     * @return True if the position was recorded, false if it was dropped.
+     */
+    boolean record(long time, double latitude, double longitude, float altitude, float speed,
+                   float bearing, float accuracy, float heading, float temperature) {
+        if (failed) {
+            return false;
+        }
+        long h = head.get();
+        long waiting = h - tail.get();
+        if (waiting >= CAPACITY) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) (h & (CAPACITY - 1));
+        times[slot] = time;
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        altitudes[slot] = altitude;
+        speeds[slot] = speed;
+        bearings[slot] = bearing;
+        accuracies[slot] = accuracy;
+        headings[slot] = heading;
+        temperatures[slot] = temperature;
+        // publishes the slot to the writer, which reads head before the slot
+        head.lazySet(h + 1);
+        if ((waiting + 1) % WAKE_UP_SIZE == 0) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Ends the session. Only signals the background thread, which writes the remaining positions,
+     * exports the session and notifies the media scanner on its own, so this returns immediately.
+     * Must be called from the thread calling record.
+     *
+     * @return False if the recording failed, i.e. the session was not written completely.
+     */
+    boolean stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        if (dropped > 0) {
+            Log.w("TrackRecorder", dropped + " positions were dropped.");
+        }
+        return !failed;
+    }
+
+    /**
+     * Makes a file readable for the system and forces the media scanner to index it.
+     */
+    private void scan(File file) {
+        file.setReadable(true);
+        Intent intent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
+        intent.setData(Uri.fromFile(file));
+        context.sendBroadcast(intent);
+    }
+
+    /**
+     * The loop of the background thread: sleeps until enough positions are waiting (or the flush
+     * interval has passed), and writes them. At the end, the session is exported and the files are
+     * handed to the media scanner.
+     */
+    private void write() {
+        SessionLog.Recording recording = null;
+        try {
+            int repaired = log.recover();
+            if (repaired > 0) {
+                Log.w("TrackRecorder", repaired + " segments were repaired, or renamed to .bad if unreadable.");
+            }
+            recording = log.start(session);
+            while (running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+                if (drain(recording) > 0) {
+                    recording.flush();
+                }
+            }
+            // write the positions recorded before stop was called
+            drain(recording);
+            recording.close();
+            recording = null;
+            export();
+            scan(csvFile);
+            for (File segment : log.getSegments(session)) {
+                scan(segment);
+            }
+        } catch (final IOException e) {
+            Log.e("TrackRecorder", Log.getStackTraceString(e));
+            failed = true;
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onRecordingFailed(TrackRecorder.this, e);
+                }
+            });
+        } finally {
+            if (recording != null) {
+                try {
+                    recording.close();
+                } catch (IOException e) {
+                    Log.e("TrackRecorder", Log.getStackTraceString(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Exports the session to the CSV file.
+     */
+    private void export() throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), "UTF-8"));
+        try {
+            log.exportCsv(session, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes all waiting positions to the log, and frees their slots.
+     *
+     * @return The number of positions written.
+     */
+    private int drain(SessionLog.Recording recording) throws IOException {
+        long t = tail.get();
+        long h = head.get();
+        for (long i = t; i < h; i++) {
+            int slot = (int) (i & (CAPACITY - 1));
+            recording.append(times[slot], latitudes[slot], longitudes[slot], altitudes[slot],
+                    speeds[slot], bearings[slot], accuracies[slot], headings[slot], temperatures[slot]);
+        }
+        tail.lazySet(h);
+        return (int) (h - t);
+    }
+}
@@ -0,0 +1,225 @@
+package ch.ethz.ikg.assignment1.Batch;
+
+import ch.ethz.ikg.assignment1.Analysis.DistanceMetric;
+import ch.ethz.ikg.assignment1.Analysis.DynamicTimeWarp;
+import ch.ethz.ikg.assignment1.Analysis.GpxReader;
+import ch.ethz.ikg.assignment1.Analysis.GpxWriter;
+import ch.ethz.ikg.assignment1.Analysis.TrackAggregator;
+import ch.ethz.ikg.assignment1.Analysis.Trajectory;
+import ch.ethz.ikg.assignment1.Analysis.TrajectoryFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Aggregates all GPX files of a directory into their average path, e.g. to precompute the average
+ * of thousands of rides along a route on a server and ship it to the phones. The files are read
+ * and aligned in parallel, with the same dynamic time warping as the app uses, so the result is
+ * the path the app would compute itself.
+ * <p>
+ * The average path is written as a GPX file, or as a {@link TrajectoryFile} if the name of the
+ * output ends with ".trk". Files which cannot be read are reported and skipped.
+ */
+public class BatchAggregator {
+    private static final String USAGE = "Usage: batch [options] <gpx directory> <output .gpx or .trk>\n"
+            + "Options:\n"
+            + "  --threads <n>      the number of threads (default: the number of processors)\n"
+            + "  --radius <r>       the radius of the FastDTW alignment (default: 10, as the app)\n"
+            + "  --barycenter <n>   use DTW barycenter averaging with n iterations instead of the\n"
+            + "                     pairwise merges";
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int radius = 10;
+    private int iterations = 0;
+    private File input;
+    private File output;
+
+    /**
+     * Runs the tool.
+     *
+     * @param args The command line arguments, see {@link #USAGE}.
+     */
+    public static void main(String[] args) {
+        BatchAggregator aggregator = new BatchAggregator();
+        try {
+            aggregator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            aggregator.run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted.");
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--threads".equals(arg)) {
+                threads = positive(arg, ++i < args.length ? args[i] : null);
+            } else if ("--radius".equals(arg)) {
+                radius = positive(arg, ++i < args.length ? args[i] : null);
+            } else if ("--barycenter".equals(arg)) {
+                iterations = positive(arg, ++i < args.length ? args[i] : null);
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg + ".");
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            throw new IllegalArgumentException("Expected a directory and an output file.");
+        }
+        input = new File(files.get(0));
+        output = new File(files.get(1));
+    }
+
+    static int positive(String option, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(option + " needs a positive number.");
+    }
+
+    private void run() throws IOException, InterruptedException {
+        // The order of the files determines the merge tree, so it must not depend on the file
+        // system.
+        File[] files = listRides(input);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.currentTimeMillis();
+            List<Trajectory> tracks = readAll(files, executor);
+            if (tracks.isEmpty()) {
+                throw new IOException("No rides found in " + input + ".");
+            }
+            long read = System.currentTimeMillis();
+            System.err.println("Read " + tracks.size() + " rides in " + (read - start) + " ms.");
+
+            TrackAggregator aggregator = new TrackAggregator(DynamicTimeWarp.Strategy.fast(radius)
+                    .withMetric(DistanceMetric.EQUIRECTANGULAR), executor);
+            Trajectory average = iterations > 0
+                    ? aggregator.barycenter(tracks, iterations)
+                    : aggregator.average(tracks);
+            System.err.println("Aggregated " + tracks.size() + " rides into " + average.size()
+                    + " points in " + (System.currentTimeMillis() - read) + " ms.");
+
+            write(average, newest(files));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists the GPX files of a directory.
+     *
+     * @param directory The directory.
+     * @return The files, ordered by name.
+     * @throws IOException If the directory cannot be listed.
+     */
+    static File[] listRides(File directory) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.toLowerCase(Locale.US).endsWith(".gpx");
+            }
+        });
+        if (files == null) {
+            throw new IOException(directory + " is not a directory.");
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Reads all GPX files in parallel. Files which cannot be read or contain no points are
+     * reported and skipped.
+     */
+    static List<Trajectory> readAll(File[] files, ExecutorService executor)
+            throws InterruptedException {
+        List<Callable<Trajectory>> reads = new ArrayList<>(files.length);
+        for (final File file : files) {
+            reads.add(new Callable<Trajectory>() {
+                @Override
+                public Trajectory call() throws IOException {
+                    InputStream in = new BufferedInputStream(new FileInputStream(file));
+                    try {
+                        return GpxReader.read(in);
+                    } finally {
+                        in.close();
+                    }
+                }
+            });
+        }
+        List<Future<Trajectory>> futures = executor.invokeAll(reads);
+        List<Trajectory> tracks = new ArrayList<>(files.length);
+        for (int i = 0; i < files.length; i++) {
+            try {
+                Trajectory track = futures.get(i).get();
+                if (track.size() > 1) {
+                    tracks.add(track);
+                } else {
+                    System.err.println("Skipping " + files[i] + ": fewer than two points.");
+                }
+            } catch (ExecutionException e) {
+                System.err.println("Skipping " + files[i] + ": " + e.getCause().getMessage());
+            }
+        }
+        return tracks;
+    }
+
+    private static long newest(File[] files) {
+        long newest = 0;
+        for (File file : files) {
+            newest = Math.max(newest, file.lastModified());
+        }
+        return newest;
+    }
+
+    /**
+     * Writes the average path as a GPX or, for a ".trk" output, as a trajectory file stamped with
+     * the modification time of the newest ride.
+     */
+    private void write(Trajectory average, long stamp) throws IOException {
+        if (output.getName().toLowerCase(Locale.US).endsWith(".trk")) {
+            TrajectoryFile.write(output, average, stamp);
+            return;
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+        try {
+            GpxWriter.write(average, out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ch.ethz.ikg.assignment1.Batch;
+
+import ch.ethz.ikg.assignment1.Analysis.DistanceMatrixService;
+import ch.ethz.ikg.assignment1.Analysis.DistanceMetric;
+import ch.ethz.ikg.assignment1.Analysis.Trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Updates the matrix of dynamic time warping costs between all GPX files of a directory, e.g. as a
+ * nightly job over the library of recorded rides. Only the pairs involving new rides are computed,
+ * see {@link DistanceMatrixService}.
+ */
+public class BatchDistances {
+    private static final String USAGE = "Usage: distances [options] <gpx directory> <matrix directory>\n"
+            + "Options:\n"
+            + "  --threads <n>      the number of threads (default: the number of processors)\n"
+            + "  --radius <r>       the radius of the Sakoe-Chiba band (default: 60), or -1 for none\n"
+            + "  --abandon <cost>   store pairs above this cost as infinite (default: none)";
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int radius = 60;
+    private double abandonAbove = Double.POSITIVE_INFINITY;
+    private File input;
+    private File output;
+
+    /**
+     * Runs the tool.
+     *
+     * @param args The command line arguments, see {@link #USAGE}.
+     */
+    public static void main(String[] args) {
+        BatchDistances distances = new BatchDistances();
+        try {
+            distances.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            distances.run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted.");
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--threads".equals(arg)) {
+                threads = BatchAggregator.positive(arg, ++i < args.length ? args[i] : null);
+            } else if ("--radius".equals(arg)) {
+                String value = ++i < args.length ? args[i] : null;
+                // -1 is the only way to ask for the unconstrained dynamic time warping.
+                radius = "-1".equals(value) ? -1 : BatchAggregator.positive(arg, value);
+            } else if ("--abandon".equals(arg)) {
+                abandonAbove = positiveCost(arg, ++i < args.length ? args[i] : null);
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg + ".");
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            throw new IllegalArgumentException("Expected a directory of rides and of the matrix.");
+        }
+        input = new File(files.get(0));
+        output = new File(files.get(1));
+    }
+
+    private static double positiveCost(String option, String value) {
+        try {
+            // Unlike Integer.parseInt, parseDouble does not accept null.
+            double cost = Double.parseDouble(String.valueOf(value));
+            if (cost > 0) {
+                return cost;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(option + " needs a positive cost.");
+    }
+
+    private void run() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.currentTimeMillis();
+            List<Trajectory> tracks = BatchAggregator.readAll(BatchAggregator.listRides(input), executor);
+            DistanceMatrixService service = new DistanceMatrixService(output, radius,
+                    DistanceMetric.EQUIRECTANGULAR, abandonAbove, executor);
+            try {
+                DistanceMatrixService.DistanceMatrix matrix = service.compute(tracks);
+                System.err.println("Computed " + matrix.getComputedCount() + " and reused "
+                        + matrix.getReusedCount() + " pairs of " + matrix.size() + " rides in "
+                        + (System.currentTimeMillis() - start) + " ms.");
+            } finally {
+                service.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the aggregation of several rides into the average path, as done by the app when a
+ * route is loaded: either the three recorded rides, or eight synthetic rides along the same route.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int SYNTHETIC_RIDES = 8;
+    private static final int SYNTHETIC_LENGTH = 3000;
+
+    @Param({"T2", "synthetic"})
+    public String rides;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private List<Trajectory> tracks;
+    private ExecutorService executor;
+    private TrackAggregator aggregator;
+
+    @Setup
+    public void setUp() throws Exception {
+        tracks = new ArrayList<>();
+        if ("T2".equals(rides)) {
+            for (String asset : Rides.ASSETS) {
+                tracks.add(Rides.asset(asset));
+            }
+        } else {
+            Trajectory route = Rides.synthetic(SYNTHETIC_LENGTH, 42);
+            for (int i = 0; i < SYNTHETIC_RIDES; i++) {
+                tracks.add(Rides.variant(route, 43 + i));
+            }
+        }
+        executor = Executors.newFixedThreadPool(threads);
+        aggregator = new TrackAggregator(
+                DynamicTimeWarp.Strategy.fast(10).withMetric(DistanceMetric.EQUIRECTANGULAR), executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Trajectory average() throws InterruptedException {
+        return aggregator.average(tracks);
+    }
+}
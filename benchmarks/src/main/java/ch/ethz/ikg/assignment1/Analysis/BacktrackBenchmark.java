@@ -0,0 +1,65 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the backtracking of the warp path through the recorded predecessors, on its own: the
+ * forward pass is run once per trial, so that only the walk back and the construction of the path
+ * are timed, and the conversion of the path to the boxed lists of {@link DynamicTimeWarp.DTWResult#getPath()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class BacktrackBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int length;
+
+    @Param({"10", "60"})
+    public int radius;
+
+    private Window window;
+    private long[] rowStart;
+    private long[] directions;
+    private WarpPath path;
+
+    @Setup
+    public void setUp() throws Exception {
+        Trajectory[] pair = Rides.pair("synthetic", length);
+        window = Window.sakoeChiba(pair[0].size(), pair[1].size(), radius);
+        rowStart = DynamicTimeWarp.rowStarts(window);
+        directions = new long[(int) ((rowStart[window.getRows()] + 31) / 32)];
+        DynamicTimeWarp.forward(pair[0], pair[1], window, DistanceMetric.HAVERSINE, rowStart, directions);
+        path = DynamicTimeWarp.backtrack(directions, rowStart, window);
+    }
+
+    @Benchmark
+    public WarpPath backtrack() {
+        return DynamicTimeWarp.backtrack(directions, rowStart, window);
+    }
+
+    @Benchmark
+    public int[] toPairs() {
+        return path.toPairs();
+    }
+
+    @Benchmark
+    public List<List<Integer>> toLists() {
+        return path.toLists();
+    }
+}
@@ -0,0 +1,109 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the distance kernels: the time per distance of {@link Trackpoint#distance(Trackpoint)},
+ * of {@link Trajectory#distance(int, Trajectory, int)}, and of the batched
+ * {@link DistanceMetric#distances} of every metric, over a row of the cost matrix as computed by
+ * the dynamic time warping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+    private static final int ROW = 1000;
+
+    @Param({"haversine", "equirectangular", "squaredPlanar"})
+    public String metricName;
+
+    private Trajectory source;
+    private Trajectory target;
+    private List<Trackpoint> sourcePoints;
+    private List<Trackpoint> targetPoints;
+    private DistanceMetric metric;
+    private DistanceMetric.Points preparedSource;
+    private DistanceMetric.Points preparedTarget;
+    private double[] row = new double[ROW];
+    private int i = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        Trajectory[] pair = Rides.pair("T2", ROW);
+        source = pair[0];
+        target = Rides.resample(pair[1], ROW);
+        sourcePoints = source.toTrackpoints();
+        targetPoints = target.toTrackpoints();
+        if ("haversine".equals(metricName)) {
+            metric = DistanceMetric.HAVERSINE;
+        } else if ("equirectangular".equals(metricName)) {
+            metric = DistanceMetric.EQUIRECTANGULAR;
+        } else {
+            metric = DistanceMetric.squaredPlanar(source.getLatitude(0));
+        }
+        preparedSource = metric.prepare(source);
+        preparedTarget = metric.prepare(target);
+    }
+
+    private int nextRow() {
+        i = i + 1 == ROW ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW)
+    public double trackpoint() {
+        Trackpoint s = sourcePoints.get(nextRow());
+        double sum = 0;
+        for (int j = 0; j < ROW; j++) {
+            sum += s.distance(targetPoints.get(j));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW)
+    public double trajectory() {
+        int s = nextRow();
+        double sum = 0;
+        for (int j = 0; j < ROW; j++) {
+            sum += source.distance(s, target, j);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW)
+    public double metricPairwise() {
+        int s = nextRow();
+        double sum = 0;
+        for (int j = 0; j < ROW; j++) {
+            sum += metric.distance(preparedSource, s, preparedTarget, j);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW)
+    public double[] metricBatch() {
+        metric.distances(preparedSource, nextRow(), preparedTarget, 0, ROW, row, 0);
+        return row;
+    }
+}
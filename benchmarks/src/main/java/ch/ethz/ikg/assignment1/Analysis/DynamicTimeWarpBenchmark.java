@@ -0,0 +1,76 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the banded and approximated dynamic time warping of two rides along the same route,
+ * from short snippets to rides of several hours. Both the full alignment (with the warp path) and
+ * the cost only are measured, as the similarity search needs only the latter.
+ * <p>
+ * The exact (unbanded) alignment is measured separately by {@link ExactDynamicTimeWarpBenchmark},
+ * with fewer iterations, as it takes several seconds for the longest rides.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class DynamicTimeWarpBenchmark {
+    // the radius of the band, about a minute of riding at one fix per second
+    private static final int RADIUS = 60;
+
+    @Param({"100", "1000", "5000", "20000"})
+    public int length;
+
+    @Param({"T2", "synthetic"})
+    public String ride;
+
+    private Trajectory source;
+    private Trajectory target;
+    private Window window;
+    private DynamicTimeWarp.Strategy sakoeChiba;
+    private DynamicTimeWarp.Strategy fast;
+
+    @Setup
+    public void setUp() throws Exception {
+        Trajectory[] pair = Rides.pair(ride, length);
+        source = pair[0];
+        target = pair[1];
+        window = Window.sakoeChiba(source.size(), target.size(), RADIUS);
+        sakoeChiba = DynamicTimeWarp.Strategy.sakoeChiba(RADIUS);
+        fast = DynamicTimeWarp.Strategy.fast(10);
+    }
+
+    @Benchmark
+    public DynamicTimeWarp.DTWResult sakoeChiba() {
+        return DynamicTimeWarp.compute(source, target, sakoeChiba);
+    }
+
+    @Benchmark
+    public DynamicTimeWarp.DTWResult sakoeChibaEquirectangular() {
+        return DynamicTimeWarp.compute(source, target, window, DistanceMetric.EQUIRECTANGULAR);
+    }
+
+    @Benchmark
+    public DynamicTimeWarp.DTWResult fast() {
+        return DynamicTimeWarp.compute(source, target, fast);
+    }
+
+    @Benchmark
+    public double costOnly() {
+        return DynamicTimeWarp.cost(source, target, window);
+    }
+}
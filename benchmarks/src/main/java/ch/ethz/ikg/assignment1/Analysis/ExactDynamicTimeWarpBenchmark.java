@@ -0,0 +1,56 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the exact dynamic time warping over the full matrix, the baseline of
+ * {@link DynamicTimeWarpBenchmark}. The predecessors of the 400 million cells of two rides of 20000
+ * points take 100 MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class ExactDynamicTimeWarpBenchmark {
+    @Param({"100", "1000", "5000", "20000"})
+    public int length;
+
+    @Param({"T2", "synthetic"})
+    public String ride;
+
+    private Trajectory source;
+    private Trajectory target;
+    private Window window;
+
+    @Setup
+    public void setUp() throws Exception {
+        Trajectory[] pair = Rides.pair(ride, length);
+        source = pair[0];
+        target = pair[1];
+        window = Window.full(source.size(), target.size());
+    }
+
+    @Benchmark
+    public DynamicTimeWarp.DTWResult exact() {
+        return DynamicTimeWarp.compute(source, target);
+    }
+
+    @Benchmark
+    public double costOnly() {
+        return DynamicTimeWarp.cost(source, target, window);
+    }
+}
@@ -0,0 +1,92 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookup of the user's position on the followed path, which is done for every fix:
+ * the k-d tree of {@link PathIndex} against a linear scan over all points, and the incremental
+ * matching of {@link ProgressTracker}. The positions are those of another ride along the route,
+ * visited in order, as they arrive in the app.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestPointBenchmark {
+    @Param({"1000", "20000"})
+    public int length;
+
+    private Trajectory path;
+    private Trajectory positions;
+    private PathIndex index;
+    private ProgressTracker tracker;
+    private int i = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        Trajectory[] pair = Rides.pair("synthetic", length);
+        path = pair[0];
+        positions = pair[1];
+        index = new PathIndex(path);
+        tracker = new ProgressTracker(index, new RouteProfile(path));
+    }
+
+    private int next() {
+        if (++i == positions.size()) {
+            i = 0;
+            tracker.reset();
+        }
+        return i;
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int k = next();
+        double lon = positions.getLongitude(k);
+        double lat = positions.getLatitude(k);
+        int nearest = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < path.size(); j++) {
+            double dx = (path.getLongitude(j) - lon) * Math.cos(Math.toRadians(lat));
+            double dy = path.getLatitude(j) - lat;
+            double d = dx * dx + dy * dy;
+            if (d < best) {
+                best = d;
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+
+    @Benchmark
+    public int nearestPoint() {
+        int k = next();
+        return index.nearestPoint(positions.getLongitude(k), positions.getLatitude(k));
+    }
+
+    @Benchmark
+    public PathIndex.SegmentMatch nearestSegment() {
+        int k = next();
+        return index.nearestSegment(positions.getLongitude(k), positions.getLatitude(k));
+    }
+
+    @Benchmark
+    public double progress() {
+        int k = next();
+        return tracker.update(positions.getLongitude(k), positions.getLatitude(k));
+    }
+}
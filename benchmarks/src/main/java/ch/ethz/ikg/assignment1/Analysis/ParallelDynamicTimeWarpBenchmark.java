@@ -0,0 +1,60 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the wavefront of {@link ParallelDynamicTimeWarp} scales with the number of threads,
+ * on the full matrix of two long synthetic rides. With one thread, the sequential kernel is used,
+ * which is the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ParallelDynamicTimeWarpBenchmark {
+    @Param({"5000", "20000", "50000"})
+    public int length;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Trajectory source;
+    private Trajectory target;
+    private Window window;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() throws Exception {
+        Trajectory[] pair = Rides.pair("synthetic", length);
+        source = pair[0];
+        target = pair[1];
+        window = Window.full(source.size(), target.size());
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public double cost() {
+        return ParallelDynamicTimeWarp.cost(source, target, window, DistanceMetric.EQUIRECTANGULAR, pool);
+    }
+}
@@ -0,0 +1,147 @@
+package ch.ethz.ikg.assignment1.Analysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * The input data of the benchmarks: the recorded rides bundled with the app, and synthetic rides
+ * of any length. All synthetic data is generated from fixed seeds, so every run measures the same
+ * input.
+ */
+final class Rides {
+    /**
+     * The recorded rides bundled with the app.
+     */
+    static final String[] ASSETS = {"T2_1.gpx", "T2_2.gpx", "T2_3.gpx"};
+
+    // meters per degree of latitude
+    private static final double METER = 1 / 111195.0;
+
+    private Rides() {
+    }
+
+    /**
+     * Reads a recorded ride.
+     *
+     * @param name The name of the GPX file, e.g. "T2_1.gpx".
+     * @return The ride.
+     * @throws IOException If the file cannot be read.
+     */
+    static Trajectory asset(String name) throws IOException {
+        InputStream in = Rides.class.getResourceAsStream("/" + name);
+        if (in == null) {
+            throw new IOException("Missing resource " + name);
+        }
+        try {
+            return GpxReader.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Generates a ride through Zurich: one fix per second at a varying speed of 3 to 9 m/s, a
+     * slowly drifting direction with a sharp turn now and then, and 2 meters of GPS noise.
+     *
+     * @param length The number of points.
+     * @param seed   The seed of the random numbers.
+     * @return The ride.
+     */
+    static Trajectory synthetic(int length, long seed) {
+        Random random = new Random(seed);
+        Trajectory.Builder builder = new Trajectory.Builder(length);
+        double lat = 47.3769;
+        double lon = 8.5417;
+        double direction = random.nextDouble() * 2 * Math.PI;
+        double speed = 6;
+        long time = 1491472800000L;
+        for (int i = 0; i < length; i++) {
+            double lonMeter = METER / Math.cos(Math.toRadians(lat));
+            builder.add(lon + random.nextGaussian() * 2 * lonMeter, lat + random.nextGaussian() * 2 * METER, time);
+            if (random.nextInt(120) == 0) {
+                direction += (random.nextBoolean() ? 1 : -1) * Math.PI / 2;
+            } else {
+                direction += random.nextGaussian() * 0.05;
+            }
+            speed = Math.max(3, Math.min(9, speed + random.nextGaussian() * 0.3));
+            lat += Math.cos(direction) * speed * METER;
+            lon += Math.sin(direction) * speed * lonMeter;
+            time += 1000;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Generates another ride along the same route: the route is followed at a speed varying
+     * between half and one and a half times the original one, with new GPS noise. The result is
+     * an input as the dynamic time warping sees it, with a different number of points which are
+     * shifted against the original ones.
+     *
+     * @param ride The original ride.
+     * @param seed The seed of the random numbers.
+     * @return The new ride.
+     */
+    static Trajectory variant(Trajectory ride, long seed) {
+        Random random = new Random(seed);
+        Trajectory.Builder builder = new Trajectory.Builder(ride.size());
+        double position = 0;
+        double step = 1;
+        long time = ride.getTime(0);
+        while (position < ride.size() - 1) {
+            int i = (int) position;
+            double f = position - i;
+            double lat = ride.getLatitude(i) + f * (ride.getLatitude(i + 1) - ride.getLatitude(i));
+            double lon = ride.getLongitude(i) + f * (ride.getLongitude(i + 1) - ride.getLongitude(i));
+            double lonMeter = METER / Math.cos(Math.toRadians(lat));
+            builder.add(lon + random.nextGaussian() * 2 * lonMeter, lat + random.nextGaussian() * 2 * METER, time);
+            step = Math.max(0.5, Math.min(1.5, step + random.nextGaussian() * 0.1));
+            position += step;
+            time += 1000;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Resamples a ride to a given number of points by linear interpolation, e.g. to align
+     * recorded rides of realistic shape at any length.
+     *
+     * @param ride   The ride, with at least two points.
+     * @param length The number of points of the result, at least two.
+     * @return The resampled ride.
+     */
+    static Trajectory resample(Trajectory ride, int length) {
+        Trajectory.Builder builder = new Trajectory.Builder(length);
+        double scale = (ride.size() - 1) / (double) (length - 1);
+        for (int k = 0; k < length; k++) {
+            double position = k * scale;
+            int i = Math.min((int) position, ride.size() - 2);
+            double f = position - i;
+            builder.add(ride.getLongitude(i) + f * (ride.getLongitude(i + 1) - ride.getLongitude(i)),
+                    ride.getLatitude(i) + f * (ride.getLatitude(i + 1) - ride.getLatitude(i)),
+                    ride.getTime(i) + Math.round(f * (ride.getTime(i + 1) - ride.getTime(i))));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets a pair of rides along the same route, as aligned by the dynamic time warping.
+     *
+     * @param source Either "T2" for the first two recorded rides, or "synthetic".
+     * @param length The number of points of the first ride; the second one has about as many.
+     * @return The two rides.
+     * @throws IOException If a recorded ride cannot be read.
+     */
+    static Trajectory[] pair(String source, int length) throws IOException {
+        if ("T2".equals(source)) {
+            Trajectory first = asset(ASSETS[0]);
+            Trajectory second = asset(ASSETS[1]);
+            int secondLength = (int) ((long) length * second.size() / first.size());
+            return new Trajectory[]{resample(first, length), resample(second, secondLength)};
+        } else if ("synthetic".equals(source)) {
+            Trajectory ride = synthetic(length, 42);
+            return new Trajectory[]{ride, variant(ride, 43)};
+        }
+        throw new IllegalArgumentException("Unknown source " + source);
+    }
+}